@@ -0,0 +1,102 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package bench;
+
+import net.daporkchop.mcworldlib.block.java.JavaBlockStateTable;
+import net.daporkchop.mcworldlib.registry.Registries;
+import net.daporkchop.mcworldlib.util.Identifier;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Measures how long it takes a fresh JVM to load the version list, registries and block state table for the latest version, both from the
+ * precompiled binary tables and from the bundled json.
+ * <p>
+ * Each sample is run in a separate JVM, as we're interested in cold startup time rather than steady-state throughput. Must be run with the
+ * output of the gradle build (rather than the raw resources) on the classpath, otherwise the binary tables won't be available.
+ *
+ * @author DaPorkchop_
+ */
+public class StartupBenchmark {
+    public static final int SAMPLES = 15;
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 1 && "child".equals(args[0])) {
+            child();
+            return;
+        }
+
+        long[] binary = new long[SAMPLES];
+        long[] json = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) { //interleave samples so that both modes are equally affected by any background noise
+            binary[i] = sample(false);
+            json[i] = sample(true);
+        }
+
+        System.out.printf("binary: median %.2fms, min %.2fms\n", median(binary) / 1000000.0d, Arrays.stream(binary).min().getAsLong() / 1000000.0d);
+        System.out.printf("json:   median %.2fms, min %.2fms\n", median(json) / 1000000.0d, Arrays.stream(json).min().getAsLong() / 1000000.0d);
+        System.out.printf("speedup: %.2fx\n", (double) median(json) / (double) median(binary));
+    }
+
+    private static void child() {
+        long start = System.nanoTime();
+
+        JavaVersion version = JavaVersion.latest();
+        Registries registries = version.registries();
+        int item = registries.get(Identifier.fromString("minecraft:item")).get(Identifier.fromString("minecraft:stone"));
+        int states = JavaBlockStateTable.latest().size();
+
+        long time = System.nanoTime() - start;
+        if (item < 0 || states <= 0) {
+            throw new IllegalStateException();
+        }
+        System.out.println(time);
+    }
+
+    private static long sample(boolean disableBinaryTables) throws Exception {
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separatorChar + "bin" + File.separatorChar + "java",
+                "-Dmcworldlib.disableBinaryTables=" + disableBinaryTables,
+                "-cp", System.getProperty("java.class.path"),
+                StartupBenchmark.class.getName(), "child")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("child process failed");
+        }
+        return Long.parseLong(line.trim());
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length >> 1];
+    }
+}
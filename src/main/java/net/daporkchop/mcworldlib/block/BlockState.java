@@ -30,6 +30,7 @@ import net.daporkchop.mcworldlib.util.Identifier;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 import static net.daporkchop.lib.common.math.PMath.*;
@@ -41,25 +42,76 @@ import static net.daporkchop.lib.common.math.PMath.*;
 public final class BlockState {
     private static final Map<Tuple<Identifier, Map<String, String>>, BlockState> VALUES = new ConcurrentHashMap<>();
 
+    private static final Object RUNTIME_ID_LOCK = new Object();
+    private static volatile AtomicReferenceArray<BlockState> BY_RUNTIME_ID = new AtomicReferenceArray<>(1024);
+    private static int NEXT_RUNTIME_ID = 0; //guarded by RUNTIME_ID_LOCK
+
     public static BlockState of(@NonNull Identifier id, @NonNull Map<String, String> properties) {
         BlockState state = VALUES.get(new Tuple<>(id, properties));
         if (state == null) { //need to register new state
-            if (properties.isEmpty()) {
-                properties = Collections.emptyMap();
-                state = new BlockState(id);
+            Map<String, String> interned = properties.isEmpty()
+                    ? Collections.emptyMap()
+                    : properties.entrySet().stream().collect(Collectors.toMap(e -> e.getKey().intern(), e -> e.getValue().intern()));
+
+            //computeIfAbsent ensures that only one instance is ever constructed for each state, so no runtime IDs are wasted on instances which lose a race
+            state = VALUES.computeIfAbsent(new Tuple<>(id, interned), k -> register(interned.isEmpty() ? new BlockState(id) : new BlockState(id, interned)));
+        }
+        return state;
+    }
+
+    /**
+     * Gets the block state with the given runtime ID.
+     * <p>
+     * This method is lock-free.
+     *
+     * @param runtimeId the runtime ID
+     * @return the block state with the given runtime ID, or {@code null} if no block state has been assigned the given runtime ID
+     * @see #runtimeId()
+     */
+    public static BlockState fromRuntimeId(int runtimeId) {
+        AtomicReferenceArray<BlockState> byRuntimeId = BY_RUNTIME_ID;
+        return runtimeId >= 0 && runtimeId < byRuntimeId.length() ? byRuntimeId.get(runtimeId) : null;
+    }
+
+    /**
+     * @return the number of block states which currently exist. All runtime IDs are less than this value
+     */
+    public static int count() {
+        synchronized (RUNTIME_ID_LOCK) {
+            return NEXT_RUNTIME_ID;
+        }
+    }
+
+    private static BlockState register(BlockState state) {
+        synchronized (RUNTIME_ID_LOCK) {
+            int runtimeId = state.runtimeId = NEXT_RUNTIME_ID++;
+
+            AtomicReferenceArray<BlockState> byRuntimeId = BY_RUNTIME_ID;
+            if (runtimeId >= byRuntimeId.length()) { //grow array
+                AtomicReferenceArray<BlockState> grown = new AtomicReferenceArray<>(byRuntimeId.length() << 1);
+                for (int i = 0; i < runtimeId; i++) {
+                    grown.lazySet(i, byRuntimeId.get(i));
+                }
+                grown.set(runtimeId, state);
+                BY_RUNTIME_ID = grown;
             } else {
-                properties = properties.entrySet().stream()
-                        .collect(Collectors.toMap(e -> e.getKey().intern(), e -> e.getValue().intern()));
-                state = new BlockState(id, properties);
+                byRuntimeId.set(runtimeId, state);
             }
-            state = PorkUtil.fallbackIfNull(VALUES.putIfAbsent(new Tuple<>(id, properties), state), state);
+            return state;
         }
-        return state;
     }
 
     protected final Identifier id;
     protected final Map<String, String> properties;
 
+    /**
+     * A dense, process-wide ID which uniquely identifies this block state.
+     * <p>
+     * Runtime IDs are assigned sequentially starting at {@code 0} as block states are first created, and therefore are not stable across
+     * restarts. They are intended for building lookup tables indexed directly by block state (e.g. {@code int[]} or bitsets).
+     */
+    private transient int runtimeId;
+
     private final transient String toString;
     private final transient int hashCode;
 
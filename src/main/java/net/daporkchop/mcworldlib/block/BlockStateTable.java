@@ -0,0 +1,59 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.block;
+
+import lombok.NonNull;
+import net.daporkchop.lib.common.math.BinMath;
+
+/**
+ * A dense mapping of {@link BlockState}s to numeric IDs, such as the global block state IDs used by a specific version of the game.
+ *
+ * @author DaPorkchop_
+ */
+public interface BlockStateTable {
+    /**
+     * Gets the ID of the given block state.
+     *
+     * @param state the block state
+     * @return the ID, or {@code -1} if the block state is not present in this table
+     */
+    int stateToId(@NonNull BlockState state);
+
+    /**
+     * Gets the block state with the given ID.
+     *
+     * @param id the ID
+     * @return the block state, or {@code null} if no block state has the given ID
+     */
+    BlockState idToState(int id);
+
+    /**
+     * @return the number of IDs in this table. All IDs are less than this value
+     */
+    int size();
+
+    /**
+     * @return the number of bits required to store any ID in this table
+     */
+    default int bits() {
+        return BinMath.getNumBitsNeededFor(Math.max(this.size() - 1, 0));
+    }
+}
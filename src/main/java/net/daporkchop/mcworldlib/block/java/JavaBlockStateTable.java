@@ -0,0 +1,220 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.block.java;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.NonNull;
+import net.daporkchop.lib.primitive.map.concurrent.ObjObjConcurrentHashMap;
+import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.block.BlockStateTable;
+import net.daporkchop.mcworldlib.util.Identifier;
+import net.daporkchop.mcworldlib.util.Util;
+import net.daporkchop.mcworldlib.version.java.DataVersion;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * The global block state IDs used by a specific version of Minecraft: Java Edition.
+ *
+ * @author DaPorkchop_
+ */
+public final class JavaBlockStateTable implements BlockStateTable {
+    private static final Map<String, JavaBlockStateTable> CACHE = new ObjObjConcurrentHashMap<>(); //this has a faster computeIfAbsent implementation
+
+    /**
+     * Gets the block state table for the given version.
+     * <p>
+     * Versions older than 1.12.2 use the table for 1.12.2, and versions newer than {@link JavaVersion#latest()} use the table for the latest version.
+     *
+     * @param versionIn the version
+     * @return the block state table
+     */
+    public static JavaBlockStateTable forVersion(@NonNull JavaVersion versionIn) {
+        if (versionIn.data() < DataVersion.DATA_1_12_2) {
+            versionIn = JavaVersion.fromName("1.12.2"); //1.12.2 is used as an intermediate translation point for all previous versions
+        } else if (versionIn.compareTo(JavaVersion.latest()) > 0) {
+            versionIn = JavaVersion.latest();
+        }
+        return CACHE.computeIfAbsent(versionIn.name(), version -> {
+            BlockState[] idToState = Util.readBinaryTable(JavaBlockStateTable.class, version + ".bin", JavaBlockStateTable::readBinary);
+            if (idToState == null) { //the precompiled table isn't available (e.g. when running from an IDE without the gradle build), fall back to parsing the json
+                idToState = fromJson(Util.parseJson(JavaBlockStateTable.class, new TypeReference<Map<String, JsonBlock>>() {}, version + ".json"));
+            }
+            return new JavaBlockStateTable(idToState);
+        });
+    }
+
+    /**
+     * @return the block state table for {@link JavaVersion#latest()}
+     */
+    public static JavaBlockStateTable latest() {
+        return forVersion(JavaVersion.latest());
+    }
+
+    private final BlockState[] idToState;
+    private final int[] stateToId; //indexed by runtime ID
+
+    /**
+     * Reads a block state table in the binary form generated by the {@code compileDataTables} gradle task.
+     * <p>
+     * Format (big-endian):
+     * <ul>
+     *     <li>{@code int}: the format version, currently {@code 1}</li>
+     *     <li>{@code int}: the number of strings, followed by that many strings written using {@link DataOutputStream#writeUTF(String)}</li>
+     *     <li>{@code int}: the number of block states, followed by the following for each state:
+     *     <ul>
+     *         <li>{@code int}: the state's ID</li>
+     *         <li>{@code unsigned short}: the index of the block's name in the string table</li>
+     *         <li>{@code unsigned byte}: the number of properties, followed by two {@code unsigned short}s for each property: the indices of the
+     *         property's name and value in the string table</li>
+     *     </ul>
+     *     </li>
+     * </ul>
+     */
+    private static BlockState[] readBinary(@NonNull DataInputStream data) throws IOException {
+        int format = data.readInt();
+        checkState(format == 1, "unsupported block state table format: %d", format);
+
+        String[] strings = new String[data.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = data.readUTF().intern();
+        }
+        Identifier[] identifiers = new Identifier[strings.length]; //lazily parsed, so that each block name is only parsed once
+
+        int count = data.readInt();
+        int[] ids = new int[count];
+        BlockState[] states = new BlockState[count];
+        int maxId = -1;
+        for (int i = 0; i < count; i++) {
+            maxId = Math.max(maxId, ids[i] = data.readInt());
+            checkState(ids[i] >= 0, "negative ID: %d", ids[i]);
+
+            int nameIndex = data.readUnsignedShort();
+            Identifier id = identifiers[nameIndex];
+            if (id == null) {
+                id = identifiers[nameIndex] = Identifier.fromString(strings[nameIndex]);
+            }
+
+            int propertyCount = data.readUnsignedByte();
+            Map<String, String> properties = propertyCount == 0 ? Collections.emptyMap() : new HashMap<>(propertyCount << 1);
+            for (int j = 0; j < propertyCount; j++) {
+                properties.put(strings[data.readUnsignedShort()], strings[data.readUnsignedShort()]);
+            }
+            states[i] = BlockState.of(id, properties);
+        }
+
+        BlockState[] idToState = new BlockState[maxId + 1];
+        for (int i = 0; i < count; i++) {
+            checkState(idToState[ids[i]] == null, "duplicate ID: %d", ids[i]);
+            idToState[ids[i]] = states[i];
+        }
+        return idToState;
+    }
+
+    private static BlockState[] fromJson(@NonNull Map<String, JsonBlock> blocks) {
+        int maxId = -1;
+        for (JsonBlock block : blocks.values()) {
+            for (JsonState state : block.states) {
+                maxId = Math.max(maxId, state.id);
+            }
+        }
+
+        BlockState[] idToState = new BlockState[maxId + 1];
+        blocks.forEach((name, block) -> {
+            Identifier id = Identifier.fromString(name);
+            for (JsonState jsonState : block.states) {
+                checkState(jsonState.id >= 0, "negative ID for %s: %d", name, jsonState.id);
+                checkState(idToState[jsonState.id] == null, "duplicate ID: %d", jsonState.id);
+                idToState[jsonState.id] = BlockState.of(id, jsonState.properties);
+            }
+        });
+        return idToState;
+    }
+
+    private JavaBlockStateTable(@NonNull BlockState[] idToState) {
+        this.idToState = idToState;
+
+        int maxRuntimeId = -1;
+        for (BlockState state : idToState) {
+            if (state != null) {
+                maxRuntimeId = Math.max(maxRuntimeId, state.runtimeId());
+            }
+        }
+        this.stateToId = new int[maxRuntimeId + 1];
+        Arrays.fill(this.stateToId, -1);
+        for (int i = idToState.length - 1; i >= 0; i--) { //iterate backwards so that the lowest ID wins if a state is present more than once
+            if (idToState[i] != null) {
+                this.stateToId[idToState[i].runtimeId()] = i;
+            }
+        }
+    }
+
+    @Override
+    public int stateToId(@NonNull BlockState state) {
+        int runtimeId = state.runtimeId();
+        return runtimeId < this.stateToId.length ? this.stateToId[runtimeId] : -1;
+    }
+
+    @Override
+    public BlockState idToState(int id) {
+        return id >= 0 && id < this.idToState.length ? this.idToState[id] : null;
+    }
+
+    @Override
+    public int size() {
+        return this.idToState.length;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class JsonBlock {
+        public final List<JsonState> states;
+
+        @JsonCreator
+        public JsonBlock(@JsonProperty("states") List<JsonState> states) {
+            this.states = states;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class JsonState {
+        public final int id;
+        public final Map<String, String> properties;
+
+        @JsonCreator
+        public JsonState(@JsonProperty("id") int id, @JsonProperty("properties") Map<String, String> properties) {
+            this.id = id;
+            this.properties = properties != null ? properties : Collections.emptyMap();
+        }
+    }
+}
@@ -21,8 +21,11 @@
 package net.daporkchop.mcworldlib.format.anvil;
 
 import lombok.experimental.UtilityClass;
+import net.daporkchop.mcworldlib.format.anvil.region.SectorAllocator;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.MappedWindowCache;
 import net.daporkchop.mcworldlib.format.java.JavaFixers;
 import net.daporkchop.mcworldlib.format.java.JavaSaveOptions;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.format.vanilla.VanillaSaveOptions;
 import net.daporkchop.mcworldlib.save.SaveOptions;
 
@@ -38,8 +41,20 @@ public class AnvilSaveOptions {
     public static final SaveOptions.Key<Integer> REGION_CACHE_SIZE = JavaSaveOptions.REGION_CACHE_SIZE;
     public static final SaveOptions.Key<Boolean> MMAP_REGIONS = JavaSaveOptions.MMAP_REGIONS;
     public static final SaveOptions.Key<Boolean> PREFETCH_REGIONS = JavaSaveOptions.PREFETCH_REGIONS;
+    public static final SaveOptions.Key<Boolean> MMAP_WINDOWED = JavaSaveOptions.MMAP_WINDOWED;
+    public static final SaveOptions.Key<MappedWindowCache> MMAP_WINDOW_CACHE = JavaSaveOptions.MMAP_WINDOW_CACHE;
+    public static final SaveOptions.Key<Boolean> ASYNC_REGIONS = JavaSaveOptions.ASYNC_REGIONS;
+    public static final SaveOptions.Key<Integer> ASYNC_REGION_THREADS = JavaSaveOptions.ASYNC_REGION_THREADS;
+    public static final SaveOptions.Key<Boolean> REGION_HEADER_INDEX = JavaSaveOptions.REGION_HEADER_INDEX;
+    public static final SaveOptions.Key<SectorAllocator.Policy> REGION_ALLOCATION_POLICY = JavaSaveOptions.REGION_ALLOCATION_POLICY;
+    public static final SaveOptions.Key<Boolean> REGION_JOURNAL = JavaSaveOptions.REGION_JOURNAL;
+    public static final SaveOptions.Key<Boolean> LAZY_SECTIONS = JavaSaveOptions.LAZY_SECTIONS;
+    public static final SaveOptions.Key<DecodeProfile> DECODE_PROFILE = JavaSaveOptions.DECODE_PROFILE;
+    public static final SaveOptions.Key<Boolean> FILTER_CHUNK_NBT = JavaSaveOptions.FILTER_CHUNK_NBT;
     public static final SaveOptions.Key<JavaFixers> FIXERS = JavaSaveOptions.FIXERS;
 
     public static final SaveOptions.Key<Integer> CHUNK_CACHE_SIZE = VanillaSaveOptions.CHUNK_CACHE_SIZE;
     public static final SaveOptions.Key<Long> MAX_CHUNK_CACHE_TIME = VanillaSaveOptions.MAX_CHUNK_CACHE_TIME;
+    public static final SaveOptions.Key<Long> CHUNK_CACHE_WEIGHT = VanillaSaveOptions.CHUNK_CACHE_WEIGHT;
+    public static final SaveOptions.Key<Long> CHUNK_PAYLOAD_CACHE_SIZE = VanillaSaveOptions.CHUNK_PAYLOAD_CACHE_SIZE;
 }
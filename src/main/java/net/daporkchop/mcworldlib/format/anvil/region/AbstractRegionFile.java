@@ -21,7 +21,6 @@
 package net.daporkchop.mcworldlib.format.anvil.region;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
@@ -35,6 +34,7 @@ import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -99,38 +99,141 @@ public abstract class AbstractRegionFile extends ReentrantReadWriteLock implemen
 
     protected abstract ByteBuf doRead(int x, int z, int offsetIndex, int offset) throws IOException;
 
+    @Override
+    public RawChunk[] readMany(@NonNull int[] coords) throws IOException {
+        checkArg((coords.length & 1) == 0, "coords must contain an even number of elements!");
+        int count = coords.length >> 1;
+        RawChunk[] chunks = new RawChunk[count];
+
+        this.readLock().lock();
+        try {
+            this.assertOpen();
+
+            //sort the requested chunks by their position in the file, packed as (sector << 32) | requestIndex
+            ByteBuf headers = this.headersBuf();
+            long[] sorted = new long[count];
+            int present = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = headers.getInt(getOffsetIndex(coords[(i << 1) + 0], coords[(i << 1) + 1]));
+                if (offset != 0) {
+                    sorted[present++] = ((long) (offset >>> 8) << 32L) | i;
+                }
+            }
+            Arrays.sort(sorted, 0, present);
+
+            this.doReadMany(headers, coords, sorted, present, chunks);
+            return chunks;
+        } catch (Throwable t) {
+            for (RawChunk chunk : chunks) {
+                if (chunk != null) {
+                    chunk.release();
+                }
+            }
+            throw t;
+        } finally {
+            this.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads multiple chunks at once.
+     * <p>
+     * The default implementation simply reads every chunk individually, in the order in which they are stored in the file.
+     *
+     * @param headers the headers buffer
+     * @param coords  the coordinates of all of the requested chunks
+     * @param sorted  the indices of the requested chunks which are present, packed as {@code (sector << 32) | index} and sorted in ascending order
+     * @param count   the number of valid entries in {@code sorted}
+     * @param chunks  the array to store the read chunks in, indexed by request index
+     */
+    protected void doReadMany(@NonNull ByteBuf headers, @NonNull int[] coords, @NonNull long[] sorted, int count, @NonNull RawChunk[] chunks) throws IOException {
+        for (int n = 0; n < count; n++) {
+            int i = (int) sorted[n];
+            int x = coords[(i << 1) + 0];
+            int z = coords[(i << 1) + 1];
+            ByteBuf data = this.doRead(x, z, getOffsetIndex(x, z), headers.getInt(getOffsetIndex(x, z)));
+            chunks[i] = new RawChunk(headers.getInt(getTimestampIndex(x, z)) * 1000L, data);
+        }
+    }
+
     @Override
     public boolean write(int x, int z, @NonNull ByteBuf data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
+        try {
+            this.assertWritable();
+            this.writeLock().lock();
+            try {
+                this.assertOpen();
+
+                int requiredSectors = getRequiredSectors(data);
+                if (this.shouldWrite(this.headersBuf(), x, z, timestamp, forceOverwrite)) {
+                    this.doWrite(x, z, data, version, timestamp, requiredSectors);
+                    return true;
+                } else {
+                    return false;
+                }
+            } finally {
+                this.writeLock().unlock();
+            }
+        } finally {
+            data.release();
+        }
+    }
+
+    protected abstract void doWrite(int x, int z, @NonNull ByteBuf data, int version, long timestamp, int requiredSectors) throws IOException;
+
+    @Override
+    public int writeMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
+        checkArg(coords.length == data.length << 1, "coords (%d) must contain exactly one X,Z pair for each of the %d chunks!", coords.length, data.length);
         this.assertWritable();
         this.writeLock().lock();
         try {
             this.assertOpen();
 
-            int requiredSectors = ((data.readableBytes() + 5 - 1) >> 12) + 1;
-            checkArg(requiredSectors < 256, "input data too large!");
-
+            //figure out which chunks actually need to be written before doing anything
             ByteBuf headers = this.headersBuf();
-            if (forceOverwrite || headers.getInt(getOffsetIndex(x, z)) == 0 || Integer.toUnsignedLong(headers.getInt(getTimestampIndex(x, z))) * 1000L < timestamp) {
-                ByteBuf composite = Unpooled.wrappedBuffer(
-                        Unpooled.directBuffer(5, 5)
-                                .writeInt(data.readableBytes() + 1)
-                                .writeByte(version),
-                        data);
-                try {
-                    this.doWrite(x, z, composite, timestamp, requiredSectors);
-                    return true;
-                } finally {
-                    composite.release();
+            int[] indices = new int[data.length];
+            int[] requiredSectors = new int[data.length];
+            int count = 0;
+            for (int i = 0; i < data.length; i++) {
+                requiredSectors[i] = getRequiredSectors(data[i]);
+                if (this.shouldWrite(headers, coords[(i << 1) + 0], coords[(i << 1) + 1], timestamp, forceOverwrite)) {
+                    indices[count++] = i;
                 }
-            } else {
-                return false;
             }
+
+            if (count > 0) {
+                this.doWriteMany(coords, data, version, timestamp, indices, requiredSectors, count);
+            }
+            return count;
         } finally {
             this.writeLock().unlock();
         }
     }
 
-    protected abstract void doWrite(int x, int z, @NonNull ByteBuf chunk, long timestamp, int requiredSectors) throws IOException;
+    /**
+     * Writes multiple chunks at once, and ensures that they have been made durable.
+     * <p>
+     * The default implementation simply writes every chunk individually, followed by a single flush.
+     *
+     * @param coords          the coordinates of all of the chunks
+     * @param data            the data of all of the chunks
+     * @param version         the compression version used for compressing the chunks' data
+     * @param timestamp       the new "last modified" value, in milliseconds since the UNIX epoch
+     * @param indices         the indices of the chunks which should actually be written
+     * @param requiredSectors the number of sectors required by each of the chunks
+     * @param count           the number of valid entries in {@code indices}
+     */
+    protected void doWriteMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, @NonNull int[] indices, @NonNull int[] requiredSectors, int count) throws IOException {
+        for (int n = 0; n < count; n++) {
+            int i = indices[n];
+            this.doWrite(coords[(i << 1) + 0], coords[(i << 1) + 1], data[i], version, timestamp, requiredSectors[i]);
+        }
+        this.doFlush();
+    }
+
+    protected boolean shouldWrite(@NonNull ByteBuf headers, int x, int z, long timestamp, boolean forceOverwrite) {
+        return forceOverwrite || headers.getInt(getOffsetIndex(x, z)) == 0 || Integer.toUnsignedLong(headers.getInt(getTimestampIndex(x, z))) * 1000L < timestamp;
+    }
 
     @Override
     public boolean delete(int x, int z) throws ReadOnlyException, IOException {
@@ -156,7 +259,52 @@ public abstract class AbstractRegionFile extends ReentrantReadWriteLock implemen
 
     @Override
     public boolean contains(int x, int z) throws IOException {
-        return false;
+        this.readLock().lock();
+        try {
+            this.assertOpen();
+
+            return this.headersBuf().getInt(getOffsetIndex(x, z)) != 0;
+        } finally {
+            this.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long[] presenceMask() throws IOException {
+        this.readLock().lock();
+        try {
+            this.assertOpen();
+
+            ByteBuf headers = this.headersBuf();
+            long[] mask = new long[16];
+            for (int i = 0; i < 1024; i++) {
+                if (headers.getInt(i << 2) != 0) {
+                    mask[i >> 6] |= 1L << i;
+                }
+            }
+            return mask;
+        } finally {
+            this.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long[] modifiedSince(long timestamp) throws IOException {
+        this.readLock().lock();
+        try {
+            this.assertOpen();
+
+            ByteBuf headers = this.headersBuf();
+            long[] mask = new long[16];
+            for (int i = 0; i < 1024; i++) {
+                if (headers.getInt(i << 2) != 0 && isModifiedSince(headers.getInt((i << 2) + SECTOR_BYTES), timestamp)) {
+                    mask[i >> 6] |= 1L << i;
+                }
+            }
+            return mask;
+        } finally {
+            this.readLock().unlock();
+        }
     }
 
     @Override
@@ -178,18 +326,24 @@ public abstract class AbstractRegionFile extends ReentrantReadWriteLock implemen
 
     @Override
     public void defrag() throws ReadOnlyException, IOException {
+        this.defrag(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int defrag(int maxChunks) throws ReadOnlyException, IOException {
+        checkArg(maxChunks > 0, "maxChunks (%d) must be positive!", maxChunks);
         this.assertWritable();
         this.writeLock().lock();
         try {
             this.assertOpen();
 
-            this.doDefrag();
+            return this.doDefrag(maxChunks);
         } finally {
             this.writeLock().unlock();
         }
     }
 
-    protected abstract void doDefrag() throws IOException;
+    protected abstract int doDefrag(int maxChunks) throws IOException;
 
     @Override
     public void flush() throws IOException {
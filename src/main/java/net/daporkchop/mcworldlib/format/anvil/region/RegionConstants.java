@@ -20,6 +20,8 @@
 
 package net.daporkchop.mcworldlib.format.anvil.region;
 
+import io.netty.buffer.ByteBuf;
+import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 
 import java.util.regex.Pattern;
@@ -53,6 +55,11 @@ public class RegionConstants {
      */
     public static final Pattern REGION_PATTERN = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.mca$");
 
+    /**
+     * The number of bytes preceding a chunk's data: a 4-byte length followed by a 1-byte compression version.
+     */
+    public static final int CHUNK_PREFIX_BYTES = 5;
+
     public static final byte ID_GZIP = 1; //official, no longer used by vanilla
     public static final byte ID_ZLIB = 2; //official
 
@@ -61,6 +68,33 @@ public class RegionConstants {
         checkIndex(z >= 0 && z < 32, "z");
     }
 
+    /**
+     * Gets the number of sectors required to store the given chunk data.
+     *
+     * @param data the chunk's (compressed) data
+     * @return the number of sectors required to store the chunk
+     * @throws IllegalArgumentException if the chunk is too large to be stored in a region
+     */
+    public static int getRequiredSectors(@NonNull ByteBuf data) {
+        int requiredSectors = ((data.readableBytes() + CHUNK_PREFIX_BYTES - 1) >> 12) + 1;
+        checkArg(requiredSectors < 256, "input data too large!");
+        return requiredSectors;
+    }
+
+    /**
+     * Checks whether or not a chunk with the given header timestamp may have been modified since the given time.
+     * <p>
+     * Header timestamps only have a resolution of one second, so a chunk saved during the same second as the given time is always considered to
+     * have been modified since then, even if it was actually saved slightly earlier.
+     *
+     * @param headerTimestamp the chunk's timestamp, as stored in the region's headers (in seconds since the UNIX epoch)
+     * @param timestamp       the time, in milliseconds since the UNIX epoch
+     * @return whether or not the chunk may have been modified since the given time
+     */
+    public static boolean isModifiedSince(int headerTimestamp, long timestamp) {
+        return Integer.toUnsignedLong(headerTimestamp) >= Math.floorDiv(timestamp, 1000L);
+    }
+
     public static int getOffsetIndex(int x, int z) {
         checkCoords(x, z);
         return (x << 2) | (z << 7);
@@ -27,6 +27,7 @@ import net.daporkchop.lib.common.util.exception.ReadOnlyException;
 import java.io.File;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 
@@ -47,12 +48,68 @@ public interface RegionFile extends ReadWriteLock, Flushable, AutoCloseable {
      */
     RawChunk read(int x, int z) throws IOException;
 
+    /**
+     * Asynchronously reads the chunk at the given coordinates into a buffer.
+     * <p>
+     * Implementations which support asynchronous I/O will not block the calling thread, and will not occupy a thread while the read is in flight. The
+     * default implementation simply delegates to {@link #read(int, int)} on the calling thread.
+     * <p>
+     * Care should be taken to ensure the chunk is released after use.
+     *
+     * @param x the chunk's X coordinate
+     * @param z the chunk's Z coordinate
+     * @return a {@link CompletableFuture} which will be completed with a {@link RawChunk} instance containing the chunk's data, or {@code null} if the
+     * chunk isn't present
+     */
+    default CompletableFuture<RawChunk> readAsync(int x, int z) {
+        CompletableFuture<RawChunk> future = new CompletableFuture<>();
+        try {
+            future.complete(this.read(x, z));
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    /**
+     * Reads multiple chunks at once.
+     * <p>
+     * Implementations may take advantage of knowing all of the chunks in advance in order to read them in the order in which they are stored on disk,
+     * or to merge the reads of chunks which are stored close to each other into a single larger read. This is likely to be significantly faster than
+     * calling {@link #read(int, int)} for each chunk individually.
+     * <p>
+     * Care should be taken to ensure that every returned chunk is released after use.
+     *
+     * @param coords the coordinates of the chunks to read, as a sequence of X,Z pairs
+     * @return an array containing a {@link RawChunk} for each of the requested chunks, in the same order as they were requested. Chunks which
+     * are not present will be {@code null}
+     */
+    RawChunk[] readMany(@NonNull int[] coords) throws IOException;
+
+    /**
+     * Reads every chunk in this region.
+     * <p>
+     * Care should be taken to ensure that every returned chunk is released after use.
+     *
+     * @return an array of 1024 {@link RawChunk}s, where the chunk at the given X,Z coordinates is at index {@code (z << 5) | x}. Chunks which are
+     * not present will be {@code null}
+     * @see #readMany(int[])
+     */
+    default RawChunk[] readAll() throws IOException {
+        int[] coords = new int[1024 << 1];
+        for (int i = 0; i < 1024; i++) {
+            coords[(i << 1) + 0] = i & 0x1F;
+            coords[(i << 1) + 1] = i >> 5;
+        }
+        return this.readMany(coords);
+    }
+
     /**
      * Writes the given chunk to disk.
      *
      * @param x              the chunk's X coordinate
      * @param z              the chunk's Z coordinate
-     * @param data           the chunk's data
+     * @param data           the chunk's data. The buffer will be released once this method returns, regardless of whether or not the chunk was written
      * @param version        the compression version used for compressing the chunk's data
      * @param timestamp      the new "last modified" value, in milliseconds since the UNIX epoch
      * @param forceOverwrite whether or not to forcibly overwrite the existing chunk, even if the existing timestamp is newer
@@ -61,6 +118,23 @@ public interface RegionFile extends ReadWriteLock, Flushable, AutoCloseable {
      */
     boolean write(int x, int z, @NonNull ByteBuf data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException;
 
+    /**
+     * Writes multiple chunks to disk at once, as a single commit group.
+     * <p>
+     * This is equivalent to calling {@link #write(int, int, ByteBuf, int, long, boolean)} for each chunk followed by {@link #flush()}, except that
+     * implementations may take advantage of knowing all of the chunks in advance in order to issue fewer, larger writes and to make all of the
+     * chunks durable at once. This method will block until all of the chunks have been completely written.
+     *
+     * @param coords         the coordinates of the chunks to write, as a sequence of X,Z pairs
+     * @param data           the data of each of the chunks. The buffers' reader indices will not be modified, and they will not be released
+     * @param version        the compression version used for compressing the chunks' data
+     * @param timestamp      the new "last modified" value, in milliseconds since the UNIX epoch
+     * @param forceOverwrite whether or not to forcibly overwrite the existing chunks, even if the existing timestamp is newer
+     * @return the number of chunks that were written
+     * @throws ReadOnlyException if this region is opened in read-only mode
+     */
+    int writeMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException;
+
     /**
      * Deletes the chunk from the region at the given region-local coordinates, either zeroing out any sectors previously occupied by the chunk or shifting
      * data around to fill up the gap.
@@ -81,6 +155,28 @@ public interface RegionFile extends ReadWriteLock, Flushable, AutoCloseable {
      */
     boolean contains(int x, int z) throws IOException;
 
+    /**
+     * Gets a bitmap indicating which chunks are present in this region.
+     * <p>
+     * This is answered entirely from the region's headers, and is therefore significantly faster than checking each chunk individually.
+     *
+     * @return a {@code long[]} of length 16, in which the bit at index {@code (z << 5) | x} is set if the chunk at the given X,Z coordinates is present
+     */
+    long[] presenceMask() throws IOException;
+
+    /**
+     * Gets a bitmap indicating which chunks in this region have been modified since the given time.
+     * <p>
+     * Like {@link #presenceMask()}, this is answered entirely from the region's headers. Note that the timestamps stored in the headers only have a
+     * resolution of one second, so chunks saved during the same second as the given time are always included (see
+     * {@link RegionConstants#isModifiedSince(int, long)}).
+     *
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return a {@code long[]} of length 16, in which the bit at index {@code (z << 5) | x} is set if the chunk at the given X,Z coordinates is present
+     * and may have been modified since the given time
+     */
+    long[] modifiedSince(long timestamp) throws IOException;
+
     /**
      * Gets the timestamp value for the chunk at the given coordinates.
      *
@@ -99,6 +195,18 @@ public interface RegionFile extends ReadWriteLock, Flushable, AutoCloseable {
      */
     void defrag() throws ReadOnlyException, IOException;
 
+    /**
+     * Attempts to incrementally defrag this region file.
+     * <p>
+     * Behaves like {@link #defrag()}, but will move at most the given number of chunks before returning. This allows a region to be defragmented
+     * over the course of multiple calls without holding the write lock for an extended period of time.
+     *
+     * @param maxChunks the maximum number of chunks to move
+     * @return the number of chunks that were moved. If less than {@code maxChunks}, the region is fully defragmented
+     * @throws ReadOnlyException if this region is opened in read-only mode
+     */
+    int defrag(int maxChunks) throws ReadOnlyException, IOException;
+
     /**
      * @return the underlying {@link File} that this region is stored in
      */
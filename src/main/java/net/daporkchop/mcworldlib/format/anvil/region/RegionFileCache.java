@@ -23,16 +23,20 @@ package net.daporkchop.mcworldlib.format.anvil.region;
 import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.experimental.Accessors;
-import net.daporkchop.lib.collections.map.MaxSizeLinkedHashMap;
+import lombok.RequiredArgsConstructor;
 import net.daporkchop.lib.common.function.io.IOConsumer;
 import net.daporkchop.lib.common.function.io.IOFunction;
+import net.daporkchop.lib.common.math.BinMath;
 import net.daporkchop.lib.common.misc.file.PFiles;
 import net.daporkchop.lib.common.misc.string.PStrings;
 import net.daporkchop.lib.common.util.exception.ReadOnlyException;
 import net.daporkchop.lib.concurrent.lock.NoopLock;
 import net.daporkchop.lib.math.vector.i.Vec2i;
+import net.daporkchop.lib.primitive.map.LongObjMap;
+import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
+import net.daporkchop.lib.unsafe.PUnsafe;
 import net.daporkchop.mcworldlib.format.anvil.AnvilSaveOptions;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.AsyncRegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.impl.EmptyRegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.impl.MemoryMappedRegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.impl.OverclockedRegionFile;
@@ -41,126 +45,596 @@ import net.daporkchop.mcworldlib.util.WriteAccess;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.ClosedChannelException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.regex.Matcher;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
  * A cache for {@link RegionFile}s to prevent having too many files open at once.
+ * <p>
+ * The cache exposes the per-chunk operations of {@link RegionFile}, but using absolute chunk coordinates which are mapped to the corresponding
+ * region. Operations on an entire region take the region's coordinates as additional parameters. The region-wide methods inherited from
+ * {@link RegionFile} (such as {@link #presenceMask()}) therefore cover chunks 0-31 on both axes, which is the region at 0,0.
+ * <p>
+ * Lookups are lock-free: regions are stored in a concurrent map keyed by their packed coordinates, and every access is done through a reference-counted
+ * lease on the region so that eviction can never close a region which another thread is still using. Eviction uses the CLOCK algorithm as an
+ * approximation of LRU, and is never performed by threads which only hit the cache.
  *
  * @author DaPorkchop_
  */
-//this has some pretty complex locking, i don't THINK it should be able to deadlock but don't quote me on that
 public class RegionFileCache implements RegionFile, IOFunction<Vec2i, RegionFile> {
-    protected static Vec2i toRegionCoords(int chunkX, int chunkZ) {
-        return new Vec2i(chunkX >> 5, chunkZ >> 5);
+    protected static long toRegionKey(int chunkX, int chunkZ) {
+        return BinMath.packXY(chunkX >> 5, chunkZ >> 5);
     }
 
     protected final SaveOptions options;
-    protected final Map<Vec2i, RegionFile> internalCache;
     protected final File root;
 
+    protected final LongObjMap<CachedRegion> regions = new LongObjConcurrentHashMap<>();
+    //only inserts an unopened placeholder, so that no I/O is ever done while the map is locked
+    protected final LongFunction<CachedRegion> placeholderFunction = CachedRegion::new;
+
+    //the CLOCK ring, containing every region that is currently in the cache
+    protected final Queue<CachedRegion> clock = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger size = new AtomicInteger();
+    protected final Lock evictionLock = new ReentrantLock();
+    protected final int maxSize;
+
     @Getter
     protected final boolean readOnly;
 
-    protected boolean closed = false;
+    //the number of threads which are currently inside of acquire(), with the sign bit set once the cache has been closed
+    protected final AtomicInteger acquiring = new AtomicInteger();
+
+    protected final boolean useHeaderIndex;
+    protected volatile RegionHeaderIndex headerIndex;
+
+    //serves the reads of every AsyncRegionFile opened by this cache, or null if they aren't used
+    protected final ExecutorService asyncExecutor;
 
     public RegionFileCache(@NonNull SaveOptions options, @NonNull File root) {
         this.options = options;
         this.readOnly = options.get(SaveOptions.ACCESS) == WriteAccess.READ_ONLY;
 
-        this.internalCache = new MaxSizeLinkedHashMap.Closing<>(options.get(AnvilSaveOptions.REGION_CACHE_SIZE), true);
+        this.maxSize = notNegative(options.get(AnvilSaveOptions.REGION_CACHE_SIZE), "REGION_CACHE_SIZE");
         this.root = PFiles.ensureDirectoryExists(root);
+        this.useHeaderIndex = options.get(AnvilSaveOptions.REGION_HEADER_INDEX);
+
+        this.asyncExecutor = this.readOnly && !options.get(AnvilSaveOptions.MMAP_REGIONS) && options.get(AnvilSaveOptions.ASYNC_REGIONS)
+                ? createAsyncExecutor(options.get(AnvilSaveOptions.ASYNC_REGION_THREADS))
+                : null;
+    }
+
+    /**
+     * Creates the executor used by {@link AsynchronousFileChannel}s opened by this cache.
+     * <p>
+     * Without an explicit executor, the JDK would fall back to a default thread pool which is shared by the entire JVM and has no upper bound on its
+     * size. The threads are daemons and time out once idle, so the executor never has to be shut down: doing so while any of the channels are still
+     * open would be unsafe, and regions may outlive the cache if they are still leased when it is closed.
+     *
+     * @param threads the maximum number of threads
+     */
+    protected static ExecutorService createAsyncExecutor(int threads) {
+        checkArg(threads > 0, "ASYNC_REGION_THREADS (%d) must be positive!", threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "Async region I/O #" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gets the {@link RegionHeaderIndex} for this cache's region directory, loading and refreshing it if necessary.
+     * <p>
+     * If {@link AnvilSaveOptions#REGION_HEADER_INDEX} is set, the index will also be used to answer {@link #contains(int, int)},
+     * {@link #presenceMask(int, int)} and {@link #timestamp(int, int)} without opening the regions.
+     *
+     * @return the header index
+     */
+    public RegionHeaderIndex headerIndex() throws IOException {
+        RegionHeaderIndex headerIndex = this.headerIndex;
+        if (headerIndex == null) {
+            synchronized (this) {
+                if ((headerIndex = this.headerIndex) == null) {
+                    headerIndex = new RegionHeaderIndex(this.root);
+                    if (headerIndex.refresh()) {
+                        this.saveHeaderIndex(headerIndex);
+                    }
+                    this.headerIndex = headerIndex;
+                }
+            }
+        }
+        return headerIndex;
+    }
+
+    protected void saveHeaderIndex(@NonNull RegionHeaderIndex headerIndex) throws IOException {
+        if (!this.readOnly) { //never modify a read-only world, the refreshed index will simply be kept in memory
+            headerIndex.save();
+        }
+    }
+
+    protected RegionHeaderIndex.Entry headerIndexEntry(int regionX, int regionZ) throws IOException {
+        return this.useHeaderIndex ? this.headerIndex().get(regionX, regionZ) : null;
+    }
+
+    protected void invalidateHeaderIndex(long key) {
+        RegionHeaderIndex headerIndex = this.headerIndex;
+        if (headerIndex != null) {
+            headerIndex.invalidate(BinMath.unpackX(key), BinMath.unpackY(key));
+        }
+    }
+
+    /**
+     * Acquires a lease on the region with the given key, opening it if it isn't already cached.
+     * <p>
+     * The region is guaranteed not to be closed until the lease is released using {@link CachedRegion#release()}.
+     *
+     * @param key the region's key
+     * @return the leased region
+     */
+    protected CachedRegion acquire(long key) throws IOException {
+        //register ourselves using the same CAS that close() uses to mark the cache as closed, so that close() can wait for us to finish
+        for (int acquiring; ; ) {
+            if ((acquiring = this.acquiring.get()) < 0) {
+                throw new ClosedChannelException();
+            } else if (this.acquiring.compareAndSet(acquiring, acquiring + 1)) {
+                break;
+            }
+        }
+
+        try {
+            CachedRegion region;
+            while (true) {
+                region = this.regions.computeIfAbsent(key, this.placeholderFunction);
+                if (region.tryClaim()) { //we inserted the placeholder, so we're responsible for opening the region
+                    this.open(region);
+                }
+                if (region.tryRetain()) {
+                    break;
+                }
+                //the region is currently being evicted, or failed to open. wait until it's been removed from the map
+                Thread.yield();
+            }
+
+            try {
+                region.awaitOpen();
+            } catch (Throwable t) {
+                region.release();
+                throw t;
+            }
+            if (!region.referenced) { //avoid writing to the field unless necessary, as it would cause needless cache line contention on hits
+                region.referenced = true;
+            }
+
+            if (this.size.get() > this.maxSize) {
+                this.evict();
+            }
+            return region;
+        } finally {
+            this.acquiring.decrementAndGet();
+        }
+    }
+
+    protected CachedRegion acquire(int regionX, int regionZ) throws IOException {
+        return this.acquire(BinMath.packXY(regionX, regionZ));
+    }
+
+    /**
+     * Evicts regions from the cache until it is no longer over capacity.
+     * <p>
+     * Regions which have been accessed since the clock hand last passed them are given a second chance, and regions which are currently leased are
+     * never evicted.
+     */
+    protected void evict() throws IOException {
+        if (!this.evictionLock.tryLock()) { //another thread is already evicting, there's no reason for us to wait
+            return;
+        }
+        try {
+            //limit the number of iterations so that we don't spin forever if every region is leased
+            for (int budget = this.size.get() << 1; budget > 0 && this.size.get() > this.maxSize; budget--) {
+                CachedRegion region = this.clock.poll();
+                if (region == null) {
+                    break;
+                } else if (region.referenced || !region.tryEvict()) { //give the region a second chance
+                    region.referenced = false;
+                    this.clock.add(region);
+                } else {
+                    try {
+                        region.region.close();
+                    } finally {
+                        this.regions.remove(region.key);
+                        this.size.decrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
     }
 
+    /**
+     * @see RegionFile#read(int, int)
+     */
     @Override
     public RawChunk read(int x, int z) throws IOException {
-        RegionFile region;
-        Lock lock;
-        synchronized (this.internalCache) {
-            region = this.internalCache.computeIfAbsent(toRegionCoords(x, z), this);
-            (lock = region.readLock()).lock();
+        CachedRegion region = this.acquire(toRegionKey(x, z));
+        try {
+            return region.region.read(x & 0x1F, z & 0x1F);
+        } finally {
+            region.release();
+        }
+    }
+
+    /**
+     * @see RegionFile#readMany(int[])
+     */
+    @Override
+    public RawChunk[] readMany(@NonNull int[] coords) throws IOException {
+        checkArg((coords.length & 1) == 0, "coords must contain an even number of elements!");
+
+        //group the requested chunks by region
+        Map<Long, List<Integer>> regions = new HashMap<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            regions.computeIfAbsent(toRegionKey(coords[i], coords[i + 1]), key -> new ArrayList<>()).add(i >> 1);
+        }
+
+        RawChunk[] chunks = new RawChunk[coords.length >> 1];
+        try {
+            for (Map.Entry<Long, List<Integer>> entry : regions.entrySet()) {
+                List<Integer> indices = entry.getValue();
+                int[] localCoords = new int[indices.size() << 1];
+                for (int j = 0; j < indices.size(); j++) {
+                    localCoords[(j << 1) + 0] = coords[(indices.get(j) << 1) + 0] & 0x1F;
+                    localCoords[(j << 1) + 1] = coords[(indices.get(j) << 1) + 1] & 0x1F;
+                }
+
+                RawChunk[] regionChunks;
+                CachedRegion region = this.acquire(entry.getKey());
+                try {
+                    regionChunks = region.region.readMany(localCoords);
+                } finally {
+                    region.release();
+                }
+                for (int j = 0; j < indices.size(); j++) {
+                    chunks[indices.get(j)] = regionChunks[j];
+                }
+            }
+            return chunks;
+        } catch (Throwable t) {
+            for (RawChunk chunk : chunks) {
+                if (chunk != null) {
+                    chunk.release();
+                }
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * @see RegionFile#readAsync(int, int)
+     */
+    @Override
+    public CompletableFuture<RawChunk> readAsync(int x, int z) {
+        CachedRegion region;
+        try {
+            region = this.acquire(toRegionKey(x, z));
+        } catch (Throwable t) {
+            CompletableFuture<RawChunk> future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+            return future;
         }
+
+        //the lease may only be released once the read has completed, otherwise the region could be closed while the read is still in flight
+        CompletableFuture<RawChunk> future = region.region.readAsync(x & 0x1F, z & 0x1F);
+        future.whenComplete((chunk, t) -> {
+            try {
+                region.release();
+            } catch (IOException e) {
+                PUnsafe.throwException(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reads every chunk in the region at 0,0.
+     *
+     * @see #readAll(int, int)
+     */
+    @Override
+    public RawChunk[] readAll() throws IOException {
+        return this.readAll(0, 0);
+    }
+
+    /**
+     * Reads every chunk in the given region.
+     *
+     * @param regionX the region's X coordinate
+     * @param regionZ the region's Z coordinate
+     * @return an array of 1024 {@link RawChunk}s, where the chunk at the given region-local X,Z coordinates is at index {@code (z << 5) | x}
+     * @see RegionFile#readAll()
+     */
+    public RawChunk[] readAll(int regionX, int regionZ) throws IOException {
+        CachedRegion region = this.acquire(regionX, regionZ);
         try {
-            return region.read(x & 0x1F, z & 0x1F);
+            return region.region.readAll();
         } finally {
-            lock.unlock();
+            region.release();
         }
     }
 
+    /**
+     * @see RegionFile#write(int, int, ByteBuf, int, long, boolean)
+     */
     @Override
     public boolean write(int x, int z, @NonNull ByteBuf data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
-        this.assertWritable();
-        RegionFile region;
-        Lock lock;
-        synchronized (this.internalCache) {
-            region = this.internalCache.computeIfAbsent(toRegionCoords(x, z), this);
-            (lock = region.writeLock()).lock();
+        CachedRegion region;
+        try {
+            this.assertWritable();
+            this.invalidateHeaderIndex(toRegionKey(x, z));
+            region = this.acquire(toRegionKey(x, z));
+        } catch (Throwable t) {
+            data.release();
+            throw t;
         }
         try {
-            return region.write(x & 0x1F, z & 0x1F, data, version, timestamp, forceOverwrite);
+            return region.region.write(x & 0x1F, z & 0x1F, data, version, timestamp, forceOverwrite);
         } finally {
-            lock.unlock();
+            region.release();
         }
     }
 
+    /**
+     * @see RegionFile#writeMany(int[], ByteBuf[], int, long, boolean)
+     */
     @Override
-    public boolean delete(int x, int z) throws ReadOnlyException, IOException {
+    public int writeMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
+        checkArg(coords.length == data.length << 1, "coords (%d) must contain exactly one X,Z pair for each of the %d chunks!", coords.length, data.length);
         this.assertWritable();
-        RegionFile region;
-        Lock lock;
-        synchronized (this.internalCache) {
-            region = this.internalCache.computeIfAbsent(toRegionCoords(x, z), this);
-            (lock = region.writeLock()).lock();
+
+        //group the chunks by region, so that each region can commit all of its chunks at once
+        Map<Long, List<Integer>> regions = new HashMap<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            regions.computeIfAbsent(toRegionKey(coords[i], coords[i + 1]), key -> new ArrayList<>()).add(i >> 1);
         }
+
+        int written = 0;
+        for (Map.Entry<Long, List<Integer>> entry : regions.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            int[] localCoords = new int[indices.size() << 1];
+            ByteBuf[] localData = new ByteBuf[indices.size()];
+            for (int j = 0; j < indices.size(); j++) {
+                localCoords[(j << 1) + 0] = coords[(indices.get(j) << 1) + 0] & 0x1F;
+                localCoords[(j << 1) + 1] = coords[(indices.get(j) << 1) + 1] & 0x1F;
+                localData[j] = data[indices.get(j)];
+            }
+
+            this.invalidateHeaderIndex(entry.getKey());
+            CachedRegion region = this.acquire(entry.getKey());
+            try {
+                written += region.region.writeMany(localCoords, localData, version, timestamp, forceOverwrite);
+            } finally {
+                region.release();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @see RegionFile#delete(int, int)
+     */
+    @Override
+    public boolean delete(int x, int z) throws ReadOnlyException, IOException {
+        this.assertWritable();
+        this.invalidateHeaderIndex(toRegionKey(x, z));
+        CachedRegion region = this.acquire(toRegionKey(x, z));
         try {
-            return region.delete(x & 0x1F, z & 0x1F);
+            return region.region.delete(x & 0x1F, z & 0x1F);
         } finally {
-            lock.unlock();
+            region.release();
         }
     }
 
+    /**
+     * @see RegionFile#contains(int, int)
+     */
     @Override
     public boolean contains(int x, int z) throws IOException {
-        RegionFile region;
-        Lock lock;
-        synchronized (this.internalCache) {
-            region = this.internalCache.computeIfAbsent(toRegionCoords(x, z), this);
-            (lock = region.readLock()).lock();
+        RegionHeaderIndex.Entry entry = this.headerIndexEntry(x >> 5, z >> 5);
+        if (entry != null) {
+            return entry.contains(x & 0x1F, z & 0x1F);
+        }
+
+        CachedRegion region = this.acquire(toRegionKey(x, z));
+        try {
+            return region.region.contains(x & 0x1F, z & 0x1F);
+        } finally {
+            region.release();
+        }
+    }
+
+    /**
+     * Gets a bitmap indicating which chunks are present in the region at 0,0.
+     *
+     * @see #presenceMask(int, int)
+     */
+    @Override
+    public long[] presenceMask() throws IOException {
+        return this.presenceMask(0, 0);
+    }
+
+    /**
+     * Gets a bitmap indicating which chunks are present in the given region.
+     *
+     * @param regionX the region's X coordinate
+     * @param regionZ the region's Z coordinate
+     * @return a {@code long[]} of length 16, in which the bit at index {@code (z << 5) | x} is set if the chunk at the given region-local X,Z
+     * coordinates is present
+     * @see RegionFile#presenceMask()
+     */
+    public long[] presenceMask(int regionX, int regionZ) throws IOException {
+        RegionHeaderIndex.Entry entry = this.headerIndexEntry(regionX, regionZ);
+        if (entry != null) {
+            return entry.presenceMask();
         }
+
+        CachedRegion region = this.acquire(regionX, regionZ);
         try {
-            return region.contains(x & 0x1F, z & 0x1F);
+            return region.region.presenceMask();
         } finally {
-            lock.unlock();
+            region.release();
         }
     }
 
+    /**
+     * Gets a bitmap indicating which chunks in the region at 0,0 have been modified since the given time.
+     *
+     * @see #modifiedSince(int, int, long)
+     */
+    @Override
+    public long[] modifiedSince(long timestamp) throws IOException {
+        return this.modifiedSince(0, 0, timestamp);
+    }
+
+    /**
+     * Gets a bitmap indicating which chunks in the given region have been modified since the given time.
+     * <p>
+     * Regions whose file hasn't been modified since the given time are skipped without being opened.
+     *
+     * @param regionX   the region's X coordinate
+     * @param regionZ   the region's Z coordinate
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return a {@code long[]} of length 16, in which the bit at index {@code (z << 5) | x} is set if the chunk at the given region-local X,Z
+     * coordinates is present and has been modified since the given time
+     * @see RegionFile#modifiedSince(long)
+     */
+    public long[] modifiedSince(int regionX, int regionZ, long timestamp) throws IOException {
+        if (!this.regionModifiedSince(regionX, regionZ, timestamp)) {
+            return new long[16];
+        }
+
+        RegionHeaderIndex.Entry entry = this.headerIndexEntry(regionX, regionZ);
+        if (entry != null) {
+            return entry.modifiedSince(timestamp);
+        }
+
+        CachedRegion region = this.acquire(regionX, regionZ);
+        try {
+            return region.region.modifiedSince(timestamp);
+        } finally {
+            region.release();
+        }
+    }
+
+    /**
+     * Checks whether or not the file of the given region may contain chunks which have been modified since the given time.
+     * <p>
+     * Writing a chunk always updates the file's modification time, so a region file which hasn't been modified since the given time cannot contain
+     * any such chunks.
+     *
+     * @param regionX   the region's X coordinate
+     * @param regionZ   the region's Z coordinate
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return whether or not the region file may contain chunks which have been modified since the given time
+     */
+    public boolean regionModifiedSince(int regionX, int regionZ, long timestamp) {
+        //File#lastModified returns 0 if the file doesn't exist. some filesystems only store modification times with a resolution of 2 seconds, so we
+        // allow for some slack in order to avoid skipping regions which were modified very shortly after the given time
+        long lastModified = new File(this.root, PStrings.fastFormat("r.%d.%d.mca", regionX, regionZ)).lastModified();
+        return lastModified != 0L && lastModified + 2000L > timestamp;
+    }
+
+    /**
+     * @see RegionFile#timestamp(int, int)
+     */
     @Override
     public long timestamp(int x, int z) throws IOException {
-        RegionFile region;
-        Lock lock;
-        synchronized (this.internalCache) {
-            region = this.internalCache.computeIfAbsent(toRegionCoords(x, z), this);
-            (lock = region.readLock()).lock();
+        RegionHeaderIndex.Entry entry = this.headerIndexEntry(x >> 5, z >> 5);
+        if (entry != null) {
+            return entry.timestamp(x & 0x1F, z & 0x1F);
         }
+
+        CachedRegion region = this.acquire(toRegionKey(x, z));
         try {
-            return region.timestamp(x & 0x1F, z & 0x1F);
+            return region.region.timestamp(x & 0x1F, z & 0x1F);
         } finally {
-            lock.unlock();
+            region.release();
         }
     }
 
+    /**
+     * @see RegionFile#defrag()
+     */
     @Override
     public void defrag() throws ReadOnlyException, IOException {
-        throw new UnsupportedOperationException();
+        this.defrag(Integer.MAX_VALUE);
     }
 
+    /**
+     * @see RegionFile#defrag(int)
+     */
+    @Override
+    public int defrag(int maxChunks) throws ReadOnlyException, IOException {
+        this.assertWritable();
+        int moved = 0;
+        for (File file : this.root.listFiles(f -> f.isFile() && RegionConstants.REGION_PATTERN.matcher(f.getName()).matches())) {
+            Matcher matcher = RegionConstants.REGION_PATTERN.matcher(file.getName());
+            checkState(matcher.matches(), file.getName());
+
+            long key = BinMath.packXY(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            this.invalidateHeaderIndex(key);
+            CachedRegion region = this.acquire(key);
+            try {
+                if ((moved += region.region.defrag(maxChunks - moved)) == maxChunks) {
+                    break;
+                }
+            } finally {
+                region.release();
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * @return the directory containing the regions
+     */
     @Override
     public File file() {
         return this.root;
     }
 
+    /**
+     * Ensures that this cache is writable.
+     */
+    @Override
+    public void assertWritable() throws ReadOnlyException {
+        if (this.readOnly) {
+            throw new ReadOnlyException(this.root.getAbsolutePath());
+        }
+    }
+
     @Override
     public Lock readLock() {
         return NoopLock.INSTANCE;
@@ -173,19 +647,68 @@ public class RegionFileCache implements RegionFile, IOFunction<Vec2i, RegionFile
 
     @Override
     public void flush() throws IOException {
-        synchronized (this.internalCache) {
-            this.internalCache.values().forEach((IOConsumer<RegionFile>) RegionFile::flush);
-        }
+        this.clock.forEach((IOConsumer<CachedRegion>) region -> {
+            if (region.tryRetain()) {
+                try {
+                    region.region.flush();
+                } finally {
+                    region.release();
+                }
+            }
+        });
     }
 
     @Override
     public void close() throws IOException {
-        synchronized (this.internalCache) {
-            for (Iterator<RegionFile> itr = this.internalCache.values().iterator(); itr.hasNext(); ) {
-                itr.next().close();
-                itr.remove();
+        this.evictionLock.lock();
+        try {
+            for (int acquiring; ; ) {
+                if ((acquiring = this.acquiring.get()) < 0) {
+                    throw new ClosedChannelException();
+                } else if (this.acquiring.compareAndSet(acquiring, acquiring | Integer.MIN_VALUE)) {
+                    break;
+                }
+            }
+            while (this.acquiring.get() != Integer.MIN_VALUE) { //wait for any threads which are still opening or retaining a region
+                Thread.yield();
+            }
+
+            //release the cache's reference to every region. any regions which are still leased will be closed once their last lease is released
+            for (CachedRegion region; (region = this.clock.poll()) != null; ) {
+                this.regions.remove(region.key);
+                this.size.decrementAndGet();
+                region.release();
             }
+        } finally {
+            this.evictionLock.unlock();
+        }
+
+        RegionHeaderIndex headerIndex = this.headerIndex;
+        if (headerIndex != null && headerIndex.refresh()) { //bring the index up-to-date with any regions that were modified
+            this.saveHeaderIndex(headerIndex);
+        }
+    }
+
+    /**
+     * Opens the region for a placeholder which was claimed by the current thread.
+     * <p>
+     * If the region can't be opened, the placeholder is removed from the cache again so that a later access may retry.
+     *
+     * @param cachedRegion the placeholder
+     */
+    protected void open(@NonNull CachedRegion cachedRegion) throws IOException {
+        try {
+            cachedRegion.region = this.openRegion(cachedRegion.key);
+        } catch (Throwable t) {
+            this.regions.remove(cachedRegion.key);
+            cachedRegion.opened.completeExceptionally(t);
+            cachedRegion.release(); //release the cache's reference
+            throw t;
         }
+
+        this.clock.add(cachedRegion);
+        this.size.incrementAndGet();
+        cachedRegion.opened.complete(null);
     }
 
     /**
@@ -198,25 +721,120 @@ public class RegionFileCache implements RegionFile, IOFunction<Vec2i, RegionFile
     @Override
     @Deprecated
     public RegionFile applyThrowing(Vec2i pos) throws IOException {
-        File file = new File(this.root, PStrings.fastFormat("r.%d.%d.mca", pos.getX(), pos.getY()));
+        return this.openRegion(BinMath.packXY(pos.getX(), pos.getY()));
+    }
+
+    protected RegionFile openRegion(long key) throws IOException {
+        File file = new File(this.root, PStrings.fastFormat("r.%d.%d.mca", BinMath.unpackX(key), BinMath.unpackY(key)));
+        RegionFile region;
         if (this.readOnly()) {
             if (PFiles.checkFileExists(file)) {
                 if (this.options.get(AnvilSaveOptions.MMAP_REGIONS)) {
-                    return new MemoryMappedRegionFile(file, this.options.get(AnvilSaveOptions.PREFETCH_REGIONS));
+                    region = new MemoryMappedRegionFile(file, this.options.get(AnvilSaveOptions.PREFETCH_REGIONS),
+                            this.options.get(AnvilSaveOptions.MMAP_WINDOWED) ? this.options.get(AnvilSaveOptions.MMAP_WINDOW_CACHE) : null);
+                } else if (this.options.get(AnvilSaveOptions.ASYNC_REGIONS)) {
+                    region = new AsyncRegionFile(file, this.options.get(SaveOptions.NETTY_ALLOC), this.asyncExecutor);
                 } else {
-                    return new OverclockedRegionFile(file, this.options.get(SaveOptions.NETTY_ALLOC), true);
+                    region = new OverclockedRegionFile(file, this.options.get(SaveOptions.NETTY_ALLOC), true);
                 }
             } else {
-                return EmptyRegionFile.INSTANCE;
+                region = EmptyRegionFile.INSTANCE;
             }
         } else {
-            return new OverclockedRegionFile(file, this.options.get(SaveOptions.NETTY_ALLOC), false);
+            region = new OverclockedRegionFile(file, this.options.get(SaveOptions.NETTY_ALLOC), false,
+                    this.options.get(AnvilSaveOptions.REGION_ALLOCATION_POLICY), this.options.get(AnvilSaveOptions.REGION_JOURNAL));
         }
+        return region;
     }
 
     protected void assertOpen() throws IOException {
-        if (this.closed) {
+        if (this.acquiring.get() < 0) {
             throw new ClosedChannelException();
         }
     }
+
+    /**
+     * A {@link RegionFile} stored in a {@link RegionFileCache}.
+     * <p>
+     * Instances are inserted into the cache as placeholders before the region is opened, and the first thread to {@link #tryClaim() claim} a
+     * placeholder opens the region while any other threads wait for it using {@link #awaitOpen()}.
+     * <p>
+     * The cache itself holds one reference to the region, and every lease holds an additional one. Once the reference count reaches zero, the region
+     * is closed and may not be retained again.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static final class CachedRegion {
+        protected static final AtomicIntegerFieldUpdater<CachedRegion> REFCNT_UPDATER = AtomicIntegerFieldUpdater.newUpdater(CachedRegion.class, "refCnt");
+        protected static final AtomicIntegerFieldUpdater<CachedRegion> CLAIMED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(CachedRegion.class, "claimed");
+
+        protected final long key;
+        protected final CompletableFuture<Void> opened = new CompletableFuture<>();
+        //only written once by the thread which claimed the placeholder, before opened is completed
+        protected RegionFile region;
+
+        protected volatile int refCnt = 1;
+        protected volatile int claimed = 0;
+        protected volatile boolean referenced = true;
+
+        /**
+         * Attempts to claim this placeholder.
+         *
+         * @return whether or not the placeholder was claimed. If {@code true}, the caller is responsible for opening the region
+         */
+        public boolean tryClaim() {
+            return this.claimed == 0 && CLAIMED_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        /**
+         * Waits until the region has been opened by the thread which claimed this placeholder.
+         *
+         * @throws IOException if the region couldn't be opened
+         */
+        public void awaitOpen() throws IOException {
+            try {
+                this.opened.join();
+            } catch (CompletionException e) {
+                PUnsafe.throwException(e.getCause());
+            }
+        }
+
+        /**
+         * Attempts to retain this region.
+         *
+         * @return whether or not the region could be retained. If {@code false}, the region has been closed
+         */
+        public boolean tryRetain() {
+            for (int refCnt; (refCnt = this.refCnt) > 0; ) {
+                if (REFCNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Attempts to release the cache's reference to this region, but only if there are no other references to it.
+         *
+         * @return whether or not the reference was released. If {@code true}, the caller is responsible for closing the region
+         */
+        public boolean tryEvict() {
+            return REFCNT_UPDATER.compareAndSet(this, 1, 0);
+        }
+
+        /**
+         * Releases a reference to this region, closing it if it was the last one.
+         */
+        public void release() throws IOException {
+            int refCnt = REFCNT_UPDATER.decrementAndGet(this);
+            if (refCnt == 0) {
+                if (this.region != null) { //the region may have failed to open
+                    this.region.close();
+                }
+            } else if (refCnt < 0) {
+                throw new IllegalStateException("region was already released!");
+            }
+        }
+    }
 }
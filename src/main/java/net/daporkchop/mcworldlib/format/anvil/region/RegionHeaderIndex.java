@@ -0,0 +1,370 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.region;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+import net.daporkchop.lib.common.math.BinMath;
+import net.daporkchop.lib.common.misc.string.PStrings;
+import net.daporkchop.lib.primitive.map.LongObjMap;
+import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.HeaderJournal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.zip.CRC32;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * A save-wide index of the headers of every region in a region directory, stored in a single sidecar file.
+ * <p>
+ * Each entry records the region file's size and modification time at the time it was indexed, as well as a CRC32 of its headers, and is discarded as
+ * soon as any of them no longer match the region file. Only the size and modification time are checked when loading the index, the checksum is
+ * verified by {@link #refresh()}. This allows answering which chunks exist (and when they were last saved) for an entire save using a single read and a
+ * directory listing, rather than having to open every region file.
+ *
+ * @author DaPorkchop_
+ */
+public final class RegionHeaderIndex {
+    public static final String FILE_NAME = "mcworldlib_headers.idx";
+
+    protected static final int MAGIC = 0x4D434849; //"MCHI"
+    protected static final int VERSION = 2;
+
+    protected final File root;
+    protected final File file;
+    protected final LongObjMap<Entry> entries = new LongObjConcurrentHashMap<>();
+
+    /**
+     * Loads the header index for the given region directory.
+     * <p>
+     * Entries whose region file's size or modification time no longer match are discarded, but the header checksums are only verified by
+     * {@link #refresh()}. If the index doesn't exist or is unreadable, it will be empty.
+     *
+     * @param root the region directory
+     */
+    public RegionHeaderIndex(@NonNull File root) throws IOException {
+        this.root = root;
+        this.file = new File(root, FILE_NAME);
+
+        if (this.file.isFile()) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(this.file.toPath()));
+            if (buf.remaining() >= 12 && buf.getInt() == MAGIC && buf.getInt() == VERSION) {
+                try {
+                    for (int i = 0, count = buf.getInt(); i < count; i++) {
+                        Entry entry = Entry.read(buf);
+                        if (entry.matches(new File(root, PStrings.fastFormat("r.%d.%d.mca", entry.regionX, entry.regionZ)))) {
+                            this.entries.put(BinMath.packXY(entry.regionX, entry.regionZ), entry);
+                        }
+                    }
+                } catch (RuntimeException e) { //the index is truncated or corrupt, simply rebuild whatever is missing
+                    this.entries.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the index entry for the given region.
+     *
+     * @param regionX the region's X coordinate
+     * @param regionZ the region's Z coordinate
+     * @return the index entry, or {@code null} if the region isn't indexed
+     */
+    public Entry get(int regionX, int regionZ) {
+        return this.entries.get(BinMath.packXY(regionX, regionZ));
+    }
+
+    /**
+     * Removes the given region from the index, e.g. because it has been modified.
+     *
+     * @param regionX the region's X coordinate
+     * @param regionZ the region's Z coordinate
+     */
+    public void invalidate(int regionX, int regionZ) {
+        this.entries.remove(BinMath.packXY(regionX, regionZ));
+    }
+
+    /**
+     * Brings the index up-to-date with the region directory, re-indexing every region which is missing from the index or whose entry no longer matches
+     * the region file or its headers, and dropping the entries of regions which no longer exist.
+     *
+     * @return whether or not the index was modified
+     */
+    public boolean refresh() throws IOException {
+        boolean modified = false;
+        Set<Long> present = new HashSet<>();
+        File[] files = this.root.listFiles(f -> f.isFile() && REGION_PATTERN.matcher(f.getName()).matches());
+        if (files != null) {
+            for (File regionFile : files) {
+                Matcher matcher = REGION_PATTERN.matcher(regionFile.getName());
+                checkState(matcher.matches(), regionFile.getName());
+                int regionX = Integer.parseInt(matcher.group(1));
+                int regionZ = Integer.parseInt(matcher.group(2));
+                long key = BinMath.packXY(regionX, regionZ);
+                present.add(key);
+
+                Entry entry = this.entries.get(key);
+                if (HeaderJournal.hasPendingEntries(regionFile)) { //the headers on disk can't be trusted until the journal has been recovered
+                    modified |= this.entries.remove(key) != null;
+                    continue;
+                }
+
+                long lastModified = regionFile.lastModified();
+                long size = regionFile.length();
+                ByteBuffer headers = readHeaders(regionFile);
+                int headerCrc = checksum(headers);
+                if (entry == null || !entry.matches(regionFile) || entry.headerCrc != headerCrc) {
+                    this.entries.put(key, Entry.index(headers, headerCrc, regionX, regionZ, lastModified, size));
+                    modified = true;
+                }
+            }
+        }
+
+        if (this.entries.size() != present.size()) {
+            List<Long> missing = new ArrayList<>();
+            this.entries.forEach((key, entry) -> {
+                if (!present.contains(key)) {
+                    missing.add(key);
+                }
+            });
+            missing.forEach(this.entries::remove);
+            modified |= !missing.isEmpty();
+        }
+        return modified;
+    }
+
+    /**
+     * Atomically writes the index to disk.
+     */
+    public void save() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        this.entries.forEach((key, entry) -> entries.add(entry));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.write(out);
+            }
+        }
+
+        File tmp = new File(this.root, FILE_NAME + ".tmp");
+        Files.write(tmp.toPath(), baos.toByteArray());
+        Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the headers of the given region file.
+     *
+     * @param regionFile the region file
+     * @return the region's headers. If the headers are incomplete, the region will be treated as empty
+     */
+    protected static ByteBuffer readHeaders(@NonNull File regionFile) throws IOException {
+        ByteBuffer headers = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(regionFile.toPath(), StandardOpenOption.READ)) {
+            while (headers.hasRemaining()) {
+                if (channel.read(headers, headers.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        if (headers.hasRemaining()) { //incomplete headers, the region will be treated as empty
+            headers.clear();
+            headers.put(new byte[HEADER_BYTES]);
+        }
+        return headers;
+    }
+
+    protected static int checksum(@NonNull ByteBuffer headers) {
+        CRC32 crc = new CRC32();
+        crc.update(headers.array(), headers.arrayOffset(), HEADER_BYTES);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The indexed headers of a single region.
+     * <p>
+     * Only the header entries of chunks which are present are stored, in order of their index in the header.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    @Getter
+    @Accessors(fluent = true)
+    public static final class Entry {
+        protected static Entry index(@NonNull ByteBuffer headers, int headerCrc, int regionX, int regionZ, long lastModified, long size) {
+            long[] presence = new long[16];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                if (headers.getInt(i << 2) != 0) {
+                    presence[i >>> 6] |= 1L << i;
+                    count++;
+                }
+            }
+            int[] offsets = new int[count];
+            int[] timestamps = new int[count];
+            for (int i = 0, j = 0; i < 1024; i++) {
+                int offset = headers.getInt(i << 2);
+                if (offset != 0) {
+                    offsets[j] = offset;
+                    timestamps[j++] = headers.getInt((i << 2) + SECTOR_BYTES);
+                }
+            }
+            return new Entry(regionX, regionZ, lastModified, size, headerCrc, presence, offsets, timestamps);
+        }
+
+        protected static Entry read(@NonNull ByteBuffer buf) {
+            int regionX = buf.getInt();
+            int regionZ = buf.getInt();
+            long lastModified = buf.getLong();
+            long size = buf.getLong();
+            int headerCrc = buf.getInt();
+            long[] presence = new long[16];
+            int count = 0;
+            for (int i = 0; i < 16; i++) {
+                count += Long.bitCount(presence[i] = buf.getLong());
+            }
+            int[] offsets = new int[count];
+            int[] timestamps = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buf.getInt();
+                timestamps[i] = buf.getInt();
+            }
+            return new Entry(regionX, regionZ, lastModified, size, headerCrc, presence, offsets, timestamps);
+        }
+
+        protected final int regionX;
+        protected final int regionZ;
+        protected final long lastModified;
+        protected final long size;
+        protected final int headerCrc;
+
+        @Getter(AccessLevel.NONE)
+        protected final long[] presence;
+        @Getter(AccessLevel.NONE)
+        protected final int[] offsets;
+        @Getter(AccessLevel.NONE)
+        protected final int[] timestamps;
+
+        protected boolean matches(@NonNull File regionFile) {
+            return regionFile.lastModified() == this.lastModified && regionFile.length() == this.size;
+        }
+
+        protected void write(@NonNull DataOutputStream out) throws IOException {
+            out.writeInt(this.regionX);
+            out.writeInt(this.regionZ);
+            out.writeLong(this.lastModified);
+            out.writeLong(this.size);
+            out.writeInt(this.headerCrc);
+            for (long l : this.presence) {
+                out.writeLong(l);
+            }
+            for (int i = 0; i < this.offsets.length; i++) {
+                out.writeInt(this.offsets[i]);
+                out.writeInt(this.timestamps[i]);
+            }
+        }
+
+        /**
+         * @return the index of the given chunk in {@link #offsets} and {@link #timestamps}, or {@code -1} if it isn't present
+         */
+        protected int indexOf(int x, int z) {
+            checkCoords(x, z);
+            int i = (z << 5) | x;
+            long word = this.presence[i >>> 6];
+            if ((word & (1L << i)) == 0L) {
+                return -1;
+            }
+            int index = Long.bitCount(word & ((1L << i) - 1L));
+            for (int j = 0; j < i >>> 6; j++) {
+                index += Long.bitCount(this.presence[j]);
+            }
+            return index;
+        }
+
+        /**
+         * @see RegionFile#contains(int, int)
+         */
+        public boolean contains(int x, int z) {
+            return this.indexOf(x, z) >= 0;
+        }
+
+        /**
+         * @see RegionFile#presenceMask()
+         */
+        public long[] presenceMask() {
+            return this.presence.clone();
+        }
+
+        /**
+         * @see RegionFile#modifiedSince(long)
+         */
+        public long[] modifiedSince(long timestamp) {
+            long[] mask = new long[16];
+            for (int i = 0, j = 0; i < 1024; i++) {
+                if ((this.presence[i >>> 6] & (1L << i)) != 0L && isModifiedSince(this.timestamps[j++], timestamp)) {
+                    mask[i >>> 6] |= 1L << i;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * @see RegionFile#timestamp(int, int)
+         */
+        public long timestamp(int x, int z) {
+            int index = this.indexOf(x, z);
+            return index >= 0 ? Integer.toUnsignedLong(this.timestamps[index]) * 1000L : -1L;
+        }
+
+        /**
+         * Gets the raw offset header entry for the given chunk.
+         *
+         * @param x the chunk's X coordinate
+         * @param z the chunk's Z coordinate
+         * @return the raw offset, or {@code 0} if the chunk isn't present
+         */
+        public int offset(int x, int z) {
+            int index = this.indexOf(x, z);
+            return index >= 0 ? this.offsets[index] : 0;
+        }
+    }
+}
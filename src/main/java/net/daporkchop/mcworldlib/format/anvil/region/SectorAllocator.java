@@ -0,0 +1,240 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.region;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Keeps track of which sectors in a region file are in use, and decides where newly written chunks should be placed.
+ * <p>
+ * Free space is stored as a set of maximal runs of unused sectors (extents), which are indexed both by position (for coalescing adjacent extents when
+ * sectors are freed) and by size (for finding the best-fitting extent in logarithmic time). The unused space at the end of the file is not tracked as an
+ * extent, but is instead implicitly available beyond {@link #end()}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public class SectorAllocator {
+    protected static long sizeKey(int start, int length) {
+        return ((long) length << 32L) | start;
+    }
+
+    //start -> length
+    protected final NavigableMap<Integer, Integer> extentsByStart = new TreeMap<>();
+    //(length << 32) | start
+    protected final NavigableSet<Long> extentsBySize = new TreeSet<>();
+
+    @Getter
+    protected final Policy policy;
+
+    /**
+     * The index of the first sector after the last used sector.
+     */
+    @Getter
+    protected int end;
+
+    /**
+     * The total number of sectors in all free extents.
+     */
+    @Getter
+    protected int freeSectors;
+
+    /**
+     * Creates a new {@link SectorAllocator} from the given set of used sectors.
+     *
+     * @param usedSectors a {@link BitSet} in which every used sector is set
+     * @param policy      the {@link Policy} to use for allocating new sectors
+     */
+    public SectorAllocator(@NonNull BitSet usedSectors, @NonNull Policy policy) {
+        this.policy = policy;
+        this.end = usedSectors.length();
+
+        for (int start = usedSectors.nextClearBit(0); start < this.end; ) {
+            int next = usedSectors.nextSetBit(start);
+            this.addExtent(start, next - start);
+            start = usedSectors.nextClearBit(next);
+        }
+    }
+
+    /**
+     * Allocates a run of sectors.
+     *
+     * @param length the number of sectors to allocate
+     * @return the index of the first allocated sector
+     */
+    public int allocate(int length) {
+        checkArg(length > 0, "length (%d) must be positive!", length);
+
+        if (this.policy == Policy.BEST_FIT) {
+            //find the smallest extent that's big enough, preferring ones closer to the start of the file
+            Long key = this.extentsBySize.ceiling(sizeKey(0, length));
+            if (key != null) {
+                int start = (int) (long) key;
+                int extentLength = (int) (key >>> 32L);
+                this.removeExtent(start, extentLength);
+                if (extentLength > length) {
+                    this.addExtent(start + length, extentLength - length);
+                }
+                return start;
+            }
+        }
+
+        //append to the end of the file
+        int start = this.end;
+        this.end += length;
+        return start;
+    }
+
+    /**
+     * Marks a specific run of sectors as used.
+     * <p>
+     * All of the sectors must currently be free.
+     *
+     * @param start  the index of the first sector to mark as used
+     * @param length the number of sectors to mark as used
+     */
+    public void reserve(int start, int length) {
+        checkArg(length > 0, "length (%d) must be positive!", length);
+
+        if (start >= this.end) { //the run is entirely beyond the end of the file
+            if (start > this.end) {
+                this.addExtent(this.end, start - this.end);
+            }
+            this.end = start + length;
+            return;
+        }
+
+        //free extents never touch the end of the file, so the entire run must be contained in a single extent
+        Map.Entry<Integer, Integer> entry = this.extentsByStart.floorEntry(start);
+        checkState(entry != null && entry.getKey() + entry.getValue() >= start + length, "sectors %d-%d are not free!", start, start + length - 1);
+
+        int extentStart = entry.getKey();
+        int extentLength = entry.getValue();
+        this.removeExtent(extentStart, extentLength);
+        if (start > extentStart) {
+            this.addExtent(extentStart, start - extentStart);
+        }
+        if (extentStart + extentLength > start + length) {
+            this.addExtent(start + length, extentStart + extentLength - (start + length));
+        }
+    }
+
+    /**
+     * Marks a run of sectors as free, merging it with any adjacent free extents.
+     *
+     * @param start  the index of the first sector to free
+     * @param length the number of sectors to free
+     */
+    public void free(int start, int length) {
+        checkArg(length > 0, "length (%d) must be positive!", length);
+        checkArg(start + length <= this.end, "sectors %d-%d are beyond the end of the file!", start, start + length - 1);
+
+        Map.Entry<Integer, Integer> prev = this.extentsByStart.floorEntry(start);
+        if (prev != null && prev.getKey() + prev.getValue() >= start) { //merge with previous extent
+            checkState(prev.getKey() + prev.getValue() == start, "sector %d is already free!", start);
+            this.removeExtent(prev.getKey(), prev.getValue());
+            length += start - prev.getKey();
+            start = prev.getKey();
+        }
+
+        Map.Entry<Integer, Integer> next = this.extentsByStart.ceilingEntry(start);
+        if (next != null && next.getKey() <= start + length) { //merge with next extent
+            checkState(next.getKey() == start + length, "sector %d is already free!", next.getKey());
+            this.removeExtent(next.getKey(), next.getValue());
+            length += next.getValue();
+        }
+
+        if (start + length == this.end) { //the extent is at the end of the file, so it can be dropped entirely
+            this.end = start;
+        } else {
+            this.addExtent(start, length);
+        }
+    }
+
+    /**
+     * @return the number of free extents
+     */
+    public int freeExtents() {
+        return this.extentsByStart.size();
+    }
+
+    /**
+     * @return the length of the largest free extent, or {@code 0} if there are none
+     */
+    public int largestFreeExtent() {
+        return this.extentsBySize.isEmpty() ? 0 : (int) (this.extentsBySize.last() >>> 32L);
+    }
+
+    /**
+     * Gets the fraction of free space which is unusable for a single allocation of the largest possible size.
+     * <p>
+     * A value of {@code 0.0} means that all free space is in a single extent (or that there is no free space at all), while values approaching
+     * {@code 1.0} indicate that the free space is split into many small extents.
+     *
+     * @return the fragmentation ratio, in range [0, 1)
+     */
+    public double fragmentation() {
+        return this.freeSectors == 0 ? 0.0d : 1.0d - (double) this.largestFreeExtent() / (double) this.freeSectors;
+    }
+
+    protected void addExtent(int start, int length) {
+        this.extentsByStart.put(start, length);
+        this.extentsBySize.add(sizeKey(start, length));
+        this.freeSectors += length;
+    }
+
+    protected void removeExtent(int start, int length) {
+        this.extentsByStart.remove(start);
+        this.extentsBySize.remove(sizeKey(start, length));
+        this.freeSectors -= length;
+    }
+
+    /**
+     * The different policies that may be used for deciding where to place newly allocated sectors.
+     *
+     * @author DaPorkchop_
+     */
+    public enum Policy {
+        /**
+         * New sectors are placed in the smallest free extent which is large enough, or appended to the end of the file if there is none.
+         * <p>
+         * This minimizes wasted space.
+         */
+        BEST_FIT,
+        /**
+         * New sectors are always appended to the end of the file.
+         * <p>
+         * This is faster for bulk writes, but will leave the file fragmented until it is defragmented.
+         */
+        APPEND;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.region.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import lombok.NonNull;
+import net.daporkchop.mcworldlib.format.anvil.region.AbstractRegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.RawChunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * A read-only implementation of {@link net.daporkchop.mcworldlib.format.anvil.region.RegionFile} which serves {@link #readAsync(int, int)} using an
+ * {@link AsynchronousFileChannel}.
+ * <p>
+ * The region's headers are read once when the region is opened. Asynchronous reads are then issued directly to the channel and completed from its
+ * completion handler, so callers never have to wait for a read to finish.
+ * <p>
+ * How the reads are actually performed depends on the platform: on Windows they are truly asynchronous, but on Linux and macOS the JDK simply
+ * performs a blocking positional read on one of the channel's executor threads. The number of reads which can make progress at once is therefore
+ * bounded by the size of the {@link ExecutorService} given to the constructor, which is shared by all of a save's regions.
+ *
+ * @author DaPorkchop_
+ */
+public final class AsyncRegionFile extends AbstractRegionFile {
+    protected final ByteBufAllocator alloc;
+    protected final ByteBuf headers;
+    protected final AsynchronousFileChannel asyncChannel;
+
+    public AsyncRegionFile(@NonNull File file, @NonNull ByteBufAllocator alloc, @NonNull ExecutorService executor) throws IOException {
+        super(file, true);
+        this.alloc = alloc;
+
+        try {
+            //the region is read-only, so the headers can never change and may simply be read into memory
+            ByteBuf headers = Unpooled.buffer(HEADER_BYTES, HEADER_BYTES);
+            int read = headers.writeBytes(this.channel, 0L, HEADER_BYTES);
+            if (read != HEADER_BYTES) {
+                throw new IOException(String.format("Cannot open read-only region \"%s\" as the headers are not complete", file.getAbsolutePath()));
+            }
+            this.headers = Unpooled.wrappedBuffer(HeaderJournal.recoverReadOnly(file, headers.nioBuffer()));
+
+            this.asyncChannel = AsynchronousFileChannel.open(this.file.toPath(), Collections.singleton(StandardOpenOption.READ), executor);
+        } catch (Throwable t) {
+            this.channel.close();
+            throw t;
+        }
+    }
+
+    @Override
+    protected ByteBuf headersBuf() {
+        return this.headers;
+    }
+
+    @Override
+    protected ByteBuf doRead(int x, int z, int offsetIndex, int offset) throws IOException {
+        int bytesToRead = (offset & 0xFF) * SECTOR_BYTES;
+        ByteBuf buf = this.alloc.ioBuffer(bytesToRead);
+        int read = buf.writeBytes(this.channel, (offset >>> 8) * SECTOR_BYTES, bytesToRead);
+        if (read != bytesToRead) {
+            throw new IOException(String.format("Read %d/%d bytes!", read, bytesToRead));
+        }
+        return buf.writerIndex(buf.readInt() + 4);
+    }
+
+    @Override
+    public CompletableFuture<RawChunk> readAsync(int x, int z) {
+        CompletableFuture<RawChunk> future = new CompletableFuture<>();
+        try {
+            checkCoords(x, z);
+            this.assertOpen();
+
+            int offset = this.headers.getInt(getOffsetIndex(x, z));
+            if (offset == 0) {
+                future.complete(null);
+            } else {
+                new ReadOperation(future, this.headers.getInt(getTimestampIndex(x, z)) * 1000L, offset).start();
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    @Override
+    protected void doWrite(int x, int z, @NonNull ByteBuf data, int version, long timestamp, int requiredSectors) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDelete(int x, int z, int startIndex, int length) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int doDefrag(int maxChunks) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doFlush() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        //any reads which are still in flight will fail with an AsynchronousCloseException
+        this.asyncChannel.close();
+        this.headers.release();
+    }
+
+    /**
+     * A single in-flight asynchronous chunk read.
+     * <p>
+     * Re-issues itself until the chunk's sectors have been read completely, as a single read may return fewer bytes than requested.
+     *
+     * @author DaPorkchop_
+     */
+    protected final class ReadOperation implements CompletionHandler<Integer, Void> {
+        protected final CompletableFuture<RawChunk> future;
+        protected final long timestamp;
+        protected final int offset;
+
+        protected final long position;
+        protected final ByteBuf buf;
+        protected final ByteBuffer nioBuf;
+
+        public ReadOperation(@NonNull CompletableFuture<RawChunk> future, long timestamp, int offset) {
+            this.future = future;
+            this.timestamp = timestamp;
+            this.offset = offset;
+
+            int bytesToRead = (offset & 0xFF) * SECTOR_BYTES;
+            this.position = (long) (offset >>> 8) * SECTOR_BYTES;
+            this.buf = AsyncRegionFile.this.alloc.ioBuffer(bytesToRead, bytesToRead);
+            this.nioBuf = this.buf.nioBuffer(0, bytesToRead);
+        }
+
+        public void start() {
+            try {
+                AsyncRegionFile.this.asyncChannel.read(this.nioBuf, this.position, null, this);
+            } catch (Throwable t) {
+                this.failed(t, null);
+            }
+        }
+
+        @Override
+        public void completed(Integer result, Void attachment) {
+            try {
+                if (this.nioBuf.hasRemaining()) {
+                    if (result < 0) {
+                        throw new IOException(String.format("Read %d/%d bytes!", this.nioBuf.position(), this.nioBuf.limit()));
+                    }
+                    //continue reading where we left off
+                    AsyncRegionFile.this.asyncChannel.read(this.nioBuf, this.position + this.nioBuf.position(), null, this);
+                    return;
+                }
+
+                int length = this.buf.getInt(0);
+                int maxLength = ((this.offset & 0xFF) * SECTOR_BYTES) - 4;
+                if (length < 0 || length > maxLength) {
+                    throw new IOException(String.format("Length at sector %d is %d! (should be max. %d)", this.offset >>> 8, length, maxLength));
+                }
+                this.buf.setIndex(4, length + 4);
+                this.future.complete(new RawChunk(this.timestamp, this.buf));
+            } catch (Throwable t) {
+                this.failed(t, null);
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            this.buf.release();
+            this.future.completeExceptionally(exc);
+        }
+    }
+}
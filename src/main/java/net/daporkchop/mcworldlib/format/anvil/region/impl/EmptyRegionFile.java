@@ -34,6 +34,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.locks.Lock;
 
+import static net.daporkchop.lib.common.util.PValidation.*;
+
 /**
  * A dummy implementation of {@link RegionFile} which is empty and contains no chunks.
  *
@@ -49,8 +51,23 @@ public final class EmptyRegionFile implements RegionFile {
         return null;
     }
 
+    @Override
+    public RawChunk[] readMany(@NonNull int[] coords) throws IOException {
+        checkArg((coords.length & 1) == 0, "coords must contain an even number of elements!");
+        for (int i = 0; i < coords.length; i += 2) {
+            RegionConstants.checkCoords(coords[i], coords[i + 1]);
+        }
+        return new RawChunk[coords.length >> 1];
+    }
+
     @Override
     public boolean write(int x, int z, @NonNull ByteBuf data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
+        data.release();
+        throw new ReadOnlyException();
+    }
+
+    @Override
+    public int writeMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, boolean forceOverwrite) throws ReadOnlyException, IOException {
         throw new ReadOnlyException();
     }
 
@@ -65,6 +82,16 @@ public final class EmptyRegionFile implements RegionFile {
         return false;
     }
 
+    @Override
+    public long[] presenceMask() throws IOException {
+        return new long[16];
+    }
+
+    @Override
+    public long[] modifiedSince(long timestamp) throws IOException {
+        return new long[16];
+    }
+
     @Override
     public long timestamp(int x, int z) throws IOException {
         RegionConstants.checkCoords(x, z);
@@ -76,6 +103,11 @@ public final class EmptyRegionFile implements RegionFile {
         throw new ReadOnlyException();
     }
 
+    @Override
+    public int defrag(int maxChunks) throws ReadOnlyException, IOException {
+        throw new ReadOnlyException();
+    }
+
     @Override
     public File file() {
         return null;
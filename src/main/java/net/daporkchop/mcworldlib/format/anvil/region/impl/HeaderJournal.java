@@ -0,0 +1,243 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.region.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * A small redo journal for the headers of a single region file, used to make a group of header updates atomic.
+ * <p>
+ * Each record consists of a 4-byte entry count, followed by that many 12-byte {@code (offsetIndex, offset, timestamp)} entries and a CRC32 of the
+ * preceding bytes. A record is only considered committed once it has been completely written and its checksum matches, so a record torn by a crash
+ * is simply discarded during recovery along with everything after it.
+ * <p>
+ * The journal is stored next to the region in a file with the same name plus {@link #EXTENSION}, which does not match
+ * {@link net.daporkchop.mcworldlib.format.anvil.region.RegionConstants#REGION_PATTERN} and will therefore be ignored by anything that
+ * enumerates regions.
+ *
+ * @author DaPorkchop_
+ */
+@Accessors(fluent = true)
+public final class HeaderJournal implements AutoCloseable {
+    public static final String EXTENSION = ".journal";
+
+    protected static final int ENTRY_BYTES = 12;
+    protected static final int MAX_RECORD_ENTRIES = 1 << 16;
+
+    /**
+     * Gets the journal file belonging to the given region file.
+     *
+     * @param regionFile the region file
+     * @return the journal file
+     */
+    public static File journalFile(@NonNull File regionFile) {
+        return new File(regionFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Checks whether or not the given region file has a non-empty journal which needs to be recovered before the region's headers can be trusted.
+     *
+     * @param regionFile the region file
+     * @return whether or not the region has a pending journal
+     */
+    public static boolean hasPendingEntries(@NonNull File regionFile) {
+        File file = journalFile(regionFile);
+        return file.isFile() && file.length() > 0L;
+    }
+
+    /**
+     * Gets the headers of a region which is opened read-only, replaying its journal if it has any pending entries.
+     * <p>
+     * As neither the region nor its journal may be modified, the journal is replayed into a private heap copy of the headers instead.
+     *
+     * @param regionFile the region file
+     * @param headers    a buffer whose first {@link net.daporkchop.mcworldlib.format.anvil.region.RegionConstants#HEADER_BYTES} bytes are the region's
+     *                   headers as stored on disk. Will not be modified
+     * @return the region's current headers. If the region has no pending journal, this is the given buffer itself
+     */
+    public static ByteBuffer recoverReadOnly(@NonNull File regionFile, @NonNull ByteBuffer headers) throws IOException {
+        if (!hasPendingEntries(regionFile)) {
+            return headers;
+        }
+
+        ByteBuffer src = headers.duplicate();
+        src.position(0).limit(HEADER_BYTES);
+        ByteBuffer copy = ByteBuffer.allocate(HEADER_BYTES);
+        copy.put(src).clear();
+        new HeaderJournal(regionFile).recover(copy);
+        return copy;
+    }
+
+    protected final File file;
+    protected FileChannel channel;
+
+    /**
+     * The number of bytes currently stored in the journal.
+     */
+    @Getter
+    protected long size;
+
+    public HeaderJournal(@NonNull File regionFile) {
+        this.file = journalFile(regionFile);
+    }
+
+    /**
+     * Replays every committed record in the journal into the given region headers.
+     * <p>
+     * This does not modify the journal itself, the caller is responsible for forcing the headers to disk and then calling {@link #discard()}.
+     *
+     * @param headers the region's headers
+     * @return the number of records that were replayed
+     */
+    public int recover(@NonNull ByteBuffer headers) throws IOException {
+        if (!this.file.isFile()) {
+            return 0;
+        }
+
+        byte[] data = Files.readAllBytes(this.file.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        int records = 0;
+        while (buf.remaining() >= 4) {
+            int start = buf.position();
+            int count = buf.getInt();
+            int bodyBytes = 4 + count * ENTRY_BYTES;
+            if (count <= 0 || count > MAX_RECORD_ENTRIES || buf.remaining() < bodyBytes) { //the record was torn
+                break;
+            }
+
+            crc.reset();
+            crc.update(data, start, bodyBytes);
+            if ((int) crc.getValue() != buf.getInt(start + bodyBytes)) { //the record is corrupt
+                break;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int offsetIndex = buf.getInt();
+                if (offsetIndex < 0 || offsetIndex >= SECTOR_BYTES || (offsetIndex & 3) != 0) {
+                    throw new IOException(String.format("Invalid offset index %d in journal \"%s\"", offsetIndex, this.file.getAbsolutePath()));
+                }
+                headers.putInt(offsetIndex, buf.getInt());
+                headers.putInt(offsetIndex + SECTOR_BYTES, buf.getInt());
+            }
+            buf.getInt(); //skip checksum
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Appends a single record to the journal, and forces it to disk.
+     * <p>
+     * Once this method returns, the header updates are guaranteed to survive a crash, even if the headers themselves have not yet been forced.
+     *
+     * @param offsetIndices the offset indices of the updated headers
+     * @param offsets       the new offset values
+     * @param timestamps    the new timestamp values
+     * @param count         the number of entries
+     */
+    public void append(@NonNull int[] offsetIndices, @NonNull int[] offsets, @NonNull int[] timestamps, int count) throws IOException {
+        checkArg(count > 0 && count <= MAX_RECORD_ENTRIES, "count (%d) must be in range [1,%d]", count, MAX_RECORD_ENTRIES);
+        ByteBuffer buf = ByteBuffer.allocate(4 + count * ENTRY_BYTES + 4);
+        buf.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buf.putInt(offsetIndices[i]).putInt(offsets[i]).putInt(timestamps[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        boolean created = false;
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            created = true;
+        }
+        for (long position = this.size; buf.hasRemaining(); ) {
+            position += this.channel.write(buf, position);
+        }
+        this.channel.force(created);
+        if (created) { //the journal's directory entry must be durable as well, otherwise the file itself could vanish in a crash
+            forceDirectory(this.file.getAbsoluteFile().getParentFile());
+        }
+        this.size += buf.limit();
+    }
+
+    /**
+     * Forces the entries of the given directory to disk.
+     * <p>
+     * Not every platform allows a directory to be opened (most notably Windows, where this isn't necessary), in which case this does nothing.
+     *
+     * @param directory the directory
+     */
+    protected static void forceDirectory(@NonNull File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //directories can't be forced on this platform
+        }
+    }
+
+    /**
+     * Empties the journal.
+     * <p>
+     * Must only be called once all of the header updates in the journal have been forced to disk.
+     */
+    public void reset() throws IOException {
+        if (this.size > 0L) {
+            this.channel.truncate(0L);
+            this.channel.force(true);
+            this.size = 0L;
+        }
+    }
+
+    /**
+     * Deletes the journal file.
+     * <p>
+     * Must only be called once all of the header updates in the journal have been forced to disk.
+     */
+    public void discard() throws IOException {
+        this.close();
+        Files.deleteIfExists(this.file.toPath());
+        this.size = 0L;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+}
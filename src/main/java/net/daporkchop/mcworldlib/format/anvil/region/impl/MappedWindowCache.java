@@ -0,0 +1,274 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.region.impl;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * Keeps track of the fixed-size windows mapped by windowed {@link MemoryMappedRegionFile}s, and unmaps them once the total number of mapped bytes
+ * exceeds a given budget.
+ * <p>
+ * A single instance may be shared between any number of regions (and saves), in which case the budget applies to all of them combined. Eviction uses
+ * the CLOCK algorithm, and windows which are currently being read from are never evicted. Chunks which were sliced out of a window keep its mapping
+ * alive until they are released, even if the window itself has already been evicted, and the window will continue to count towards the budget until
+ * then. If the budget is exhausted by windows which can't be unmapped, no new windows may be mapped until some of them are released.
+ *
+ * @author DaPorkchop_
+ */
+@Accessors(fluent = true)
+public final class MappedWindowCache {
+    /**
+     * The maximum number of bytes which may be mapped at once.
+     */
+    @Getter
+    protected final long budget;
+
+    /**
+     * The size of a single window, in bytes.
+     */
+    @Getter
+    protected final int windowSize;
+
+    protected final AtomicLong mappedBytes = new AtomicLong();
+    protected final Queue<Window> clock = new ConcurrentLinkedQueue<>();
+    //windows which have been evicted, but whose mapping is still being kept alive by chunks that were sliced out of them
+    protected final Queue<Window> evicted = new ConcurrentLinkedQueue<>();
+    protected final Lock evictionLock = new ReentrantLock();
+
+    public MappedWindowCache(long budget, int windowSize) {
+        this.budget = notNegative(budget, "budget");
+        checkArg(windowSize >= SECTOR_BYTES && (windowSize & (windowSize - 1)) == 0, "windowSize (%d) must be a power of two, and at least %d", windowSize, SECTOR_BYTES);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the number of bytes which are currently mapped by windows in this cache, including windows which have been evicted but are still kept
+     * alive by chunks sliced out of them
+     */
+    public long mappedBytes() {
+        return this.mappedBytes.get();
+    }
+
+    /**
+     * Acquires a lease on the window at the given index in the given table, if it is present.
+     *
+     * @param table the table of windows belonging to a single region
+     * @param index the window's index
+     * @return the leased window, or {@code null} if it isn't mapped
+     */
+    public Window tryAcquire(@NonNull AtomicReferenceArray<Window> table, int index) {
+        Window window;
+        while ((window = table.get(index)) != null && !window.tryRetain()) {
+            //the window is currently being evicted, wait until it's been removed from the table
+            Thread.yield();
+        }
+        if (window != null && !window.referenced) {
+            window.referenced = true;
+        }
+        return window;
+    }
+
+    /**
+     * Attempts to reserve room in the budget for a new window of the given size.
+     * <p>
+     * If there isn't enough room, windows which aren't in use will be evicted. If that still doesn't free up enough room, the reservation fails and
+     * the window must not be mapped.
+     * <p>
+     * If successful, the reserved bytes must either be passed on to a window using {@link #add(Window)}, or returned using {@link #unreserve(int)}.
+     *
+     * @param size the size of the window, in bytes
+     * @return whether or not the room was reserved
+     */
+    public boolean reserve(int size) {
+        boolean evicted = false;
+        while (true) {
+            long mappedBytes = this.mappedBytes.get();
+            if (mappedBytes + size <= this.budget) {
+                if (this.mappedBytes.compareAndSet(mappedBytes, mappedBytes + size)) {
+                    return true;
+                }
+            } else if (!evicted) {
+                this.evict(size);
+                evicted = true;
+            } else { //every remaining window is in use
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns room which was reserved using {@link #reserve(int)}, but which was never used for a window.
+     *
+     * @param size the number of bytes to return
+     */
+    public void unreserve(int size) {
+        this.mappedBytes.addAndGet(-size);
+    }
+
+    /**
+     * Attempts to add a newly mapped window to this cache, for which room has already been reserved using {@link #reserve(int)}.
+     * <p>
+     * If successful, the caller holds a lease on the window which must be released using {@link Window#release()}. Otherwise, another thread
+     * has already mapped the same window, and the given window's buffer and reserved room have been released.
+     *
+     * @param window the window
+     * @return whether or not the window was added
+     */
+    public boolean add(@NonNull Window window) {
+        if (!window.table.compareAndSet(window.index, null, window)) {
+            window.buf.release();
+            this.unreserve(window.size);
+            return false;
+        }
+
+        this.clock.add(window);
+        return true;
+    }
+
+    /**
+     * Removes every window in the given table from this cache.
+     * <p>
+     * Must only be called once no windows in the table are leased, i.e. when the region which owns the table is being closed.
+     *
+     * @param table the table of windows belonging to a single region
+     */
+    public void removeAll(@NonNull AtomicReferenceArray<Window> table) {
+        for (int i = 0; i < table.length(); i++) {
+            Window window = table.get(i);
+            if (window != null && window.tryEvict()) {
+                this.clock.remove(window);
+                this.unmap(window);
+            }
+        }
+    }
+
+    /**
+     * Evicts windows until there is enough room for the given number of additional bytes, or until every remaining window is in use.
+     *
+     * @param size the number of additional bytes
+     */
+    protected void evict(int size) {
+        this.evictionLock.lock();
+        try {
+            //windows which have been evicted earlier may have been unmapped since
+            for (Iterator<Window> itr = this.evicted.iterator(); itr.hasNext(); ) {
+                Window window = itr.next();
+                if (window.buf.refCnt() == 0) {
+                    itr.remove();
+                    this.mappedBytes.addAndGet(-window.size);
+                }
+            }
+
+            //limit the number of iterations so that we don't spin forever if every window is leased
+            for (int budget = this.clock.size() << 1; budget > 0 && this.mappedBytes.get() + size > this.budget; budget--) {
+                Window window = this.clock.poll();
+                if (window == null) {
+                    break;
+                } else if (window.referenced || !window.tryEvict()) { //give the window a second chance
+                    window.referenced = false;
+                    this.clock.add(window);
+                } else {
+                    this.unmap(window);
+                }
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    protected void unmap(@NonNull Window window) {
+        window.table.compareAndSet(window.index, window, null);
+        if (window.buf.release()) {
+            this.mappedBytes.addAndGet(-window.size);
+        } else { //chunks sliced out of the window are still using the mapping, it will only be unmapped once they've all been released
+            this.evicted.add(window);
+        }
+    }
+
+    /**
+     * A single mapped window of a region file.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    @Getter
+    public static final class Window {
+        protected static final AtomicIntegerFieldUpdater<Window> REFCNT_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Window.class, "refCnt");
+
+        @NonNull
+        protected final AtomicReferenceArray<Window> table;
+        protected final int index;
+        @NonNull
+        protected final ByteBuf buf;
+        protected final int size;
+
+        //one reference is held by the cache, and one by the thread which mapped the window
+        protected volatile int refCnt = 2;
+        protected volatile boolean referenced = true;
+
+        /**
+         * Attempts to acquire a lease on this window.
+         *
+         * @return whether or not the lease was acquired. If {@code false}, the window is being evicted
+         */
+        public boolean tryRetain() {
+            int refCnt;
+            do {
+                if ((refCnt = this.refCnt) == 0) {
+                    return false;
+                }
+            } while (!REFCNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1));
+            return true;
+        }
+
+        /**
+         * Attempts to mark this window as evicted.
+         *
+         * @return whether or not the window was evicted. If {@code false}, the window is currently leased
+         */
+        public boolean tryEvict() {
+            return REFCNT_UPDATER.compareAndSet(this, 1, 0);
+        }
+
+        /**
+         * Releases a lease on this window.
+         */
+        public void release() {
+            REFCNT_UPDATER.decrementAndGet(this);
+        }
+    }
+}
@@ -21,42 +21,95 @@
 package net.daporkchop.mcworldlib.format.anvil.region.impl;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.NonNull;
 import net.daporkchop.lib.binary.netty.PUnpooled;
 import net.daporkchop.mcworldlib.format.anvil.region.AbstractRegionFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
 
 /**
- * A read-only implementation of {@link net.daporkchop.mcworldlib.format.anvil.region.RegionFile} which maps the entire region file into memory at once.
+ * A read-only implementation of {@link net.daporkchop.mcworldlib.format.anvil.region.RegionFile} which uses memory-mapping to access the region.
+ * <p>
+ * By default, the entire region file is mapped into memory at once. If a {@link MappedWindowCache} is given, only the region's headers are read
+ * when it is opened, and the rest of the file is mapped in fixed-size windows on demand. Windows are shared between all readers and are unmapped
+ * again once the cache's budget is exceeded, which keeps the amount of address space and page cache pinned by sparsely accessed regions low.
  *
  * @author DaPorkchop_
  */
 public final class MemoryMappedRegionFile extends AbstractRegionFile {
+    //written to by prefetch() in order to prevent the JIT from optimizing away the reads
+    protected static volatile int PREFETCH_SINK;
+
     protected final ByteBuf buf;
+    protected final ByteBuf headers;
+
+    protected final MappedWindowCache windowCache;
+    protected final AtomicReferenceArray<MappedWindowCache.Window> windows;
+    protected final long fileSize;
+    protected final boolean prefetch;
 
     public MemoryMappedRegionFile(@NonNull File file, boolean prefetch) throws IOException {
+        this(file, prefetch, null);
+    }
+
+    public MemoryMappedRegionFile(@NonNull File file, boolean prefetch, MappedWindowCache windowCache) throws IOException {
         super(file, true);
 
-        MappedByteBuffer map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, this.channel.size());
-        if (prefetch) {
-            map.load();
+        this.fileSize = this.channel.size();
+        this.prefetch = prefetch;
+        this.windowCache = windowCache;
+
+        if (windowCache == null) { //map the entire file at once
+            MappedByteBuffer map = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, this.fileSize);
+            if (prefetch) {
+                map.load();
+            }
+            this.buf = PUnpooled.wrap(map, true);
+            try {
+                ByteBuffer headers = HeaderJournal.recoverReadOnly(file, map);
+                this.headers = headers != map ? Unpooled.wrappedBuffer(headers) : this.buf;
+            } catch (IOException e) {
+                this.buf.release();
+                this.channel.close();
+                throw e;
+            }
+            this.windows = null;
+        } else {
+            //the region is read-only, so the headers can never change and may simply be read into memory
+            this.buf = null;
+            ByteBuf headers = Unpooled.buffer(HEADER_BYTES, HEADER_BYTES);
+            try {
+                if (headers.writeBytes(this.channel, 0L, HEADER_BYTES) != HEADER_BYTES) {
+                    throw new IOException(String.format("Cannot open read-only region \"%s\" as the headers are not complete", file.getAbsolutePath()));
+                }
+                this.headers = Unpooled.wrappedBuffer(HeaderJournal.recoverReadOnly(file, headers.nioBuffer()));
+            } catch (IOException e) {
+                this.channel.close();
+                throw e;
+            }
+            this.windows = new AtomicReferenceArray<>((int) ((this.fileSize + windowCache.windowSize() - 1L) / windowCache.windowSize()));
         }
-        this.buf = PUnpooled.wrap(map, true);
     }
 
     @Override
     protected ByteBuf headersBuf() {
-        return this.buf;
+        return this.headers;
     }
 
     @Override
     protected ByteBuf doRead(int x, int z, int offsetIndex, int offset) throws IOException {
+        if (this.windowCache != null) {
+            return this.doReadWindowed(offset);
+        }
+
         int pos = (offset >>> 8) * SECTOR_BYTES;
         int length = this.buf.getInt(pos);
         int maxLength = ((offset & 0xFF) * SECTOR_BYTES) - 4;
@@ -66,8 +119,104 @@ public final class MemoryMappedRegionFile extends AbstractRegionFile {
         return this.buf.retainedSlice(pos + 4, length).asReadOnly();
     }
 
+    protected ByteBuf doReadWindowed(int offset) throws IOException {
+        long pos = (long) (offset >>> 8) * SECTOR_BYTES;
+        int bytes = (offset & 0xFF) * SECTOR_BYTES;
+        if (pos + bytes > this.fileSize) {
+            throw new IOException(String.format("Chunk at sector %d (%d sectors) extends beyond the end of the file!", offset >>> 8, offset & 0xFF));
+        }
+
+        int windowSize = this.windowCache.windowSize();
+        int index = (int) (pos / windowSize);
+        int windowOffset = (int) (pos % windowSize);
+        int maxLength = bytes - 4;
+        MappedWindowCache.Window window;
+        if (windowOffset + bytes > windowSize //the chunk spans a window boundary, it's simpler to just read it normally
+            || (window = this.acquireWindow(index)) == null) { //the cache's budget is exhausted by windows which are still in use
+            ByteBuf buf = Unpooled.buffer(bytes, bytes);
+            int read = buf.writeBytes(this.channel, pos, bytes);
+            if (read != bytes) {
+                throw new IOException(String.format("Read %d/%d bytes!", read, bytes));
+            }
+            int length = buf.readInt();
+            if (length < 0 || length > maxLength) {
+                buf.release();
+                throw new IOException(String.format("Length at sector %d (offset %d) is %d! (should be max. %d)", offset >>> 8, pos, length, maxLength));
+            }
+            return buf.writerIndex(length + 4);
+        }
+
+        try {
+            int length = window.buf().getInt(windowOffset);
+            if (length < 0 || length > maxLength) {
+                throw new IOException(String.format("Length at sector %d (offset %d) is %d! (should be max. %d)", offset >>> 8, pos, length, maxLength));
+            }
+            //the slice retains the window's buffer, so the mapping will stay valid even if the window is evicted before the chunk is released
+            return window.buf().retainedSlice(windowOffset + 4, length).asReadOnly();
+        } finally {
+            window.release();
+        }
+    }
+
+    /**
+     * Acquires a lease on the window at the given index, mapping it if necessary.
+     *
+     * @param index the window's index
+     * @return the leased window, or {@code null} if the window isn't mapped and there is no room in the cache's budget to map it
+     */
+    protected MappedWindowCache.Window acquireWindow(int index) throws IOException {
+        while (true) {
+            MappedWindowCache.Window window = this.windowCache.tryAcquire(this.windows, index);
+            if (window != null) {
+                return window;
+            }
+
+            long pos = (long) index * this.windowCache.windowSize();
+            int size = (int) Math.min(this.windowCache.windowSize(), this.fileSize - pos);
+            if (!this.windowCache.reserve(size)) {
+                return null;
+            }
+            MappedByteBuffer map;
+            try {
+                map = this.channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+            } catch (Throwable t) {
+                this.windowCache.unreserve(size);
+                throw t;
+            }
+            if (this.prefetch) {
+                this.prefetch(map, pos);
+            }
+
+            window = new MappedWindowCache.Window(this.windows, index, PUnpooled.wrap(map, true), size);
+            if (this.windowCache.add(window)) {
+                return window;
+            }
+        }
+    }
+
+    /**
+     * Faults in the pages of the given window which are occupied by chunks listed in the region's headers, leaving unused sectors untouched.
+     *
+     * @param map the window
+     * @param pos the position of the window in the file
+     */
+    protected void prefetch(@NonNull MappedByteBuffer map, long pos) {
+        int sink = 0;
+        for (int i = 0; i < SECTOR_BYTES; i += 4) {
+            int offset = this.headers.getInt(i);
+            if (offset != 0) {
+                long start = Math.max((long) (offset >>> 8) * SECTOR_BYTES - pos, 0L);
+                long end = Math.min((long) ((offset >>> 8) + (offset & 0xFF)) * SECTOR_BYTES - pos, map.capacity());
+                for (long p = start; p < end; p += SECTOR_BYTES) { //sectors are the same size as pages on most systems
+                    sink += map.get((int) p);
+                }
+            }
+        }
+        PREFETCH_SINK = sink;
+    }
+
     @Override
-    protected void doWrite(int x, int z, @NonNull ByteBuf chunk, long timestamp, int requiredSectors) throws IOException {
+    protected void doWrite(int x, int z, @NonNull ByteBuf data, int version, long timestamp, int requiredSectors) throws IOException {
         throw new UnsupportedOperationException();
     }
 
@@ -77,7 +226,7 @@ public final class MemoryMappedRegionFile extends AbstractRegionFile {
     }
 
     @Override
-    protected void doDefrag() throws IOException {
+    protected int doDefrag(int maxChunks) throws IOException {
         throw new UnsupportedOperationException();
     }
 
@@ -88,7 +237,13 @@ public final class MemoryMappedRegionFile extends AbstractRegionFile {
 
     @Override
     protected void doClose() throws IOException {
-        this.buf.release();
+        if (this.windowCache != null) {
+            this.windowCache.removeAll(this.windows);
+        }
+        if (this.buf != null && this.buf != this.headers) { //the headers are a private copy with the journal replayed into it
+            this.buf.release();
+        }
+        this.headers.release();
         this.channel.close();
     }
 }
@@ -26,14 +26,21 @@ import io.netty.buffer.Unpooled;
 import lombok.NonNull;
 import net.daporkchop.lib.binary.stream.misc.SlashDevSlashNull;
 import net.daporkchop.mcworldlib.format.anvil.region.AbstractRegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.RawChunk;
+import net.daporkchop.mcworldlib.format.anvil.region.SectorAllocator;
 import net.daporkchop.lib.unsafe.PUnsafe;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.NonWritableChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 
 import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
 
@@ -43,12 +50,63 @@ import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
  * @author DaPorkchop_
  */
 public final class OverclockedRegionFile extends AbstractRegionFile {
+    /**
+     * The maximum number of unused sectors between two chunks which will be read over rather than splitting the read in two.
+     */
+    protected static final int MAX_READ_GAP_SECTORS = 8;
+
+    /**
+     * The maximum number of sectors that will be read at once when reading multiple chunks.
+     */
+    protected static final int MAX_READ_SECTORS = 1024;
+
+    /**
+     * The maximum number of sectors that will be written at once when writing multiple chunks.
+     */
+    protected static final int MAX_WRITE_SECTORS = 1024;
+
+    /**
+     * The file is always grown in multiples of this many sectors (1MiB), in order to avoid extending the file (and updating the filesystem's
+     * metadata) on every single write which appends to the region.
+     * <p>
+     * Any excess sectors are truncated away again when the region is closed.
+     */
+    protected static final int PREALLOCATE_SECTORS = 256;
+
+    /**
+     * A sector full of zeroes, used for padding chunks up to the next sector boundary.
+     */
+    protected static final ByteBuffer ZERO_SECTOR = ByteBuffer.allocateDirect(SECTOR_BYTES);
+
+    /**
+     * Once the header journal grows beyond this many bytes, the headers will be forced and the journal will be emptied.
+     */
+    protected static final long JOURNAL_CHECKPOINT_BYTES = 64L << 10L;
+
     protected final ByteBufAllocator alloc;
-    protected final MappedByteBuffer headers;
+    protected final MappedByteBuffer mappedHeaders;
+    /**
+     * The region's headers.
+     * <p>
+     * This is normally the same buffer as {@link #mappedHeaders}, but may be a private heap copy if the region was opened read-only while it still had
+     * a pending {@link HeaderJournal}.
+     */
+    protected final ByteBuffer headers;
     protected final ByteBuf nettyHeadersBuf;
-    protected final BitSet occupiedSectors = new BitSet();
+    protected final SectorAllocator sectorAllocator;
+    protected final HeaderJournal journal;
+
+    protected int fileSectors;
 
     public OverclockedRegionFile(@NonNull File file, @NonNull ByteBufAllocator alloc, boolean readOnly) throws IOException {
+        this(file, alloc, readOnly, SectorAllocator.Policy.BEST_FIT);
+    }
+
+    public OverclockedRegionFile(@NonNull File file, @NonNull ByteBufAllocator alloc, boolean readOnly, @NonNull SectorAllocator.Policy allocationPolicy) throws IOException {
+        this(file, alloc, readOnly, allocationPolicy, true);
+    }
+
+    public OverclockedRegionFile(@NonNull File file, @NonNull ByteBufAllocator alloc, boolean readOnly, @NonNull SectorAllocator.Policy allocationPolicy, boolean journal) throws IOException {
         super(file, readOnly);
         this.alloc = alloc;
 
@@ -63,24 +121,53 @@ public final class OverclockedRegionFile extends AbstractRegionFile {
             }
         } else if (!this.readOnly && (fileSize & 0xFFFL) != 0) {
             //the file size is not a multiple of 4KB, grow it
-            this.channel.transferFrom(SlashDevSlashNull.INSTANCE, fileSize, fileSize & 0xFFFL);
+            this.channel.transferFrom(SlashDevSlashNull.INSTANCE, fileSize, SECTOR_BYTES - (fileSize & 0xFFFL));
         }
+        this.fileSectors = (int) ((Math.max(fileSize, HEADER_BYTES) + SECTOR_BYTES - 1L) >> 12L);
 
-        this.headers = this.channel.map(this.readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
-        this.nettyHeadersBuf = Unpooled.wrappedBuffer(this.headers);
+        MappedByteBuffer mappedHeaders = this.mappedHeaders = this.channel.map(this.readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        ByteBuffer headers = mappedHeaders;
 
-        this.occupiedSectors.set(0, 2);
+        //if the region wasn't closed cleanly, replay any committed header updates before doing anything else
+        try {
+            if (this.readOnly) {
+                headers = HeaderJournal.recoverReadOnly(file, mappedHeaders);
+            } else if (HeaderJournal.hasPendingEntries(file)) {
+                HeaderJournal recovery = new HeaderJournal(file);
+                recovery.recover(mappedHeaders);
+                mappedHeaders.force();
+                recovery.discard();
+            }
+        } catch (IOException e) {
+            PUnsafe.pork_releaseBuffer(mappedHeaders);
+            this.channel.close();
+            throw e;
+        }
+        this.headers = headers;
+        this.nettyHeadersBuf = Unpooled.wrappedBuffer(headers);
+        this.journal = journal && !this.readOnly ? new HeaderJournal(file) : null;
+
+        BitSet occupiedSectors = new BitSet();
+        occupiedSectors.set(0, HEADER_SECTORS);
         //init occupied sectors bitset
         try {
             for (int i = 0; i < SECTOR_BYTES; i += 4) {
                 int offset = this.headers.getInt(i);
                 if (offset != 0) {
-                    this.occupiedSectors.set(offset >> 8, (offset >> 8) + (offset & 0xFF));
+                    occupiedSectors.set(offset >> 8, (offset >> 8) + (offset & 0xFF));
                 }
             }
         } catch (IndexOutOfBoundsException e) {
             throw new IOException(String.format("Corrupt region headers in \"%s\"", file.getAbsolutePath()));
         }
+        this.sectorAllocator = new SectorAllocator(occupiedSectors, allocationPolicy);
+    }
+
+    /**
+     * @return the {@link SectorAllocator} used by this region, which may be used to query fragmentation metrics
+     */
+    public SectorAllocator sectorAllocator() {
+        return this.sectorAllocator;
     }
 
     @Override
@@ -100,72 +187,364 @@ public final class OverclockedRegionFile extends AbstractRegionFile {
     }
 
     @Override
-    protected void doWrite(int x, int z, @NonNull ByteBuf chunk, long timestamp, int requiredSectors) throws IOException {
-        int size = chunk.readableBytes();
+    protected void doReadMany(@NonNull ByteBuf headers, @NonNull int[] coords, @NonNull long[] sorted, int count, @NonNull RawChunk[] chunks) throws IOException {
+        for (int first = 0, last; first < count; first = last) {
+            //find a run of chunks which are close enough to each other to be read at once
+            int startSector = (int) (sorted[first] >>> 32L);
+            int endSector = startSector;
+            for (last = first; last < count; last++) {
+                int i = (int) sorted[last];
+                int offset = headers.getInt(getOffsetIndex(coords[(i << 1) + 0], coords[(i << 1) + 1]));
+                int sector = offset >>> 8;
+                if (last != first && (sector - endSector > MAX_READ_GAP_SECTORS || sector + (offset & 0xFF) - startSector > MAX_READ_SECTORS)) {
+                    break;
+                }
+                endSector = Math.max(endSector, sector + (offset & 0xFF));
+            }
 
-        int offset = this.headers.getInt(getOffsetIndex(x, z));
-        int sectors = offset & 0xFF;
-        offset >>>= 8;
-        if (offset != 0) {
-            if (sectors == requiredSectors) {
-                //re-use old sectors
-                if (chunk.readBytes(this.channel, offset * SECTOR_BYTES, size) != size) {
-                    throw new IllegalStateException("Unable to write all bytes to disk!");
+            int bytesToRead = (endSector - startSector) * SECTOR_BYTES;
+            ByteBuf buf = this.alloc.ioBuffer(bytesToRead);
+            try {
+                int read = buf.writeBytes(this.channel, (long) startSector * SECTOR_BYTES, bytesToRead);
+                if (read != bytesToRead) {
+                    throw new IOException(String.format("Read %d/%d bytes!", read, bytesToRead));
                 }
-                this.channel.transferFrom(SlashDevSlashNull.INSTANCE, offset * SECTOR_BYTES + size, ((size - 1 >> 12) + 1 << 12) - size);
-                return;
-            } else {
-                //clear old sectors to search for new ones
-                //this makes it faster and less prone to bugs than shrinking existing allocations
-                this.occupiedSectors.clear(offset, offset + sectors);
-            }
-        }
-        offset = 0;
-        SEARCH:
-        for (int i = this.occupiedSectors.nextClearBit(0); offset == 0; ) {
-            int j = 0;
-            while (j < requiredSectors) {
-                if (this.occupiedSectors.get(i + j++)) {
-                    i = this.occupiedSectors.nextClearBit(i + j);
-                    continue SEARCH;
+
+                //slice the individual chunks out of the shared buffer
+                for (int n = first; n < last; n++) {
+                    int i = (int) sorted[n];
+                    int x = coords[(i << 1) + 0];
+                    int z = coords[(i << 1) + 1];
+                    int offset = headers.getInt(getOffsetIndex(x, z));
+                    int pos = ((offset >>> 8) - startSector) * SECTOR_BYTES;
+                    int length = buf.getInt(pos);
+                    int maxLength = ((offset & 0xFF) * SECTOR_BYTES) - 4;
+                    if (length < 0 || length > maxLength) {
+                        throw new IOException(String.format("Length at sector %d is %d! (should be max. %d)", offset >>> 8, length, maxLength));
+                    }
+                    chunks[i] = new RawChunk(headers.getInt(getTimestampIndex(x, z)) * 1000L, buf.retainedSlice(pos + 4, length));
                 }
+            } finally {
+                buf.release();
             }
-            //if we get this far, we've found a sufficiently long clear stretch
-            offset = i;
         }
-        if (chunk.readBytes(this.channel, offset * SECTOR_BYTES, size) != size) {
-            throw new IllegalStateException("Unable to write all bytes to disk!");
+    }
+
+    @Override
+    protected void doWrite(int x, int z, @NonNull ByteBuf data, int version, long timestamp, int requiredSectors) throws IOException {
+        this.checkpointJournal();
+
+        int offset = this.headers.getInt(getOffsetIndex(x, z));
+        int sectors = offset & 0xFF;
+        offset >>>= 8;
+        if (offset != 0 && sectors >= requiredSectors) {
+            //re-use old sectors, releasing any which are no longer needed
+            if (sectors > requiredSectors) {
+                this.sectorAllocator.free(offset + requiredSectors, sectors - requiredSectors);
+            }
+        } else {
+            if (offset != 0) {
+                //release old sectors before allocating new ones, so that the chunk may be placed in an extent which overlaps its old position
+                this.sectorAllocator.free(offset, sectors);
+            }
+            offset = this.sectorAllocator.allocate(requiredSectors);
+            this.ensureCapacity(offset + requiredSectors);
         }
-        this.channel.transferFrom(SlashDevSlashNull.INSTANCE, offset * SECTOR_BYTES + size, ((size - 1 >> 12) + 1 << 12) - size);
 
-        this.occupiedSectors.set(offset, offset + requiredSectors);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        addChunkBuffers(buffers, data, version, requiredSectors);
+        this.writeFully((long) offset * SECTOR_BYTES, buffers);
+
         this.headers.putInt(getOffsetIndex(x, z), (offset << 8) | requiredSectors);
         this.headers.putInt(getTimestampIndex(x, z), (int) (timestamp / 1000L));
     }
 
+    /**
+     * Writes a group of chunks using copy-on-write semantics.
+     * <p>
+     * Every chunk is written to newly allocated sectors, which allows chunks that end up adjacent to each other to be written using a single gather
+     * write. The data is forced to disk before any of the headers are modified, and the header updates are then made durable as a single atomic
+     * unit: either by appending them to the {@link HeaderJournal}, or (if journaling is disabled) by forcing the headers. A chunk's old sectors are
+     * only released once the headers no longer point to them, meaning that a crash at any point will never leave a chunk's header pointing at
+     * partially written data.
+     */
+    @Override
+    protected void doWriteMany(@NonNull int[] coords, @NonNull ByteBuf[] data, int version, long timestamp, @NonNull int[] indices, @NonNull int[] requiredSectors, int count) throws IOException {
+        //allocate new sectors for every chunk, packed as (offset << 32) | n so that sorting orders them by their position in the file
+        long[] sorted = new long[count];
+        int n = 0;
+        try {
+            int endSector = 0;
+            for (; n < count; n++) {
+                int offset = this.sectorAllocator.allocate(requiredSectors[indices[n]]);
+                sorted[n] = ((long) offset << 32L) | n;
+                endSector = Math.max(endSector, offset + requiredSectors[indices[n]]);
+            }
+            Arrays.sort(sorted);
+            this.ensureCapacity(endSector);
+
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for (int first = 0, last; first < count; first = last) {
+                //find a run of chunks which are contiguous on disk and write them all at once
+                int startSector = (int) (sorted[first] >>> 32L);
+                int nextSector = startSector;
+                buffers.clear();
+                for (last = first; last < count; last++) {
+                    int sector = (int) (sorted[last] >>> 32L);
+                    int i = indices[(int) sorted[last]];
+                    if (last != first && (sector != nextSector || nextSector + requiredSectors[i] - startSector > MAX_WRITE_SECTORS)) {
+                        break;
+                    }
+                    addChunkBuffers(buffers, data[i], version, requiredSectors[i]);
+                    nextSector = sector + requiredSectors[i];
+                }
+                this.writeFully((long) startSector * SECTOR_BYTES, buffers);
+            }
+            this.channel.force(false);
+        } catch (Throwable t) {
+            //the headers haven't been touched yet, so the newly allocated sectors can simply be released again
+            for (int k = 0; k < n; k++) {
+                this.sectorAllocator.free((int) (sorted[k] >>> 32L), requiredSectors[indices[(int) sorted[k]]]);
+            }
+            throw t;
+        }
+
+        //all of the data is safely on disk, commit the new headers
+        int[] offsetIndices = new int[count];
+        int[] offsets = new int[count];
+        int[] timestamps = new int[count];
+        for (n = 0; n < count; n++) {
+            int i = indices[(int) sorted[n]];
+            offsetIndices[n] = getOffsetIndex(coords[(i << 1) + 0], coords[(i << 1) + 1]);
+            offsets[n] = (int) (sorted[n] >>> 32L) << 8 | requiredSectors[i];
+            timestamps[n] = (int) (timestamp / 1000L);
+        }
+        if (this.journal != null) {
+            this.journal.append(offsetIndices, offsets, timestamps, count);
+        }
+
+        for (n = 0; n < count; n++) {
+            int oldOffset = this.headers.getInt(offsetIndices[n]);
+            this.headers.putInt(offsetIndices[n], offsets[n]);
+            this.headers.putInt(offsetIndices[n] + SECTOR_BYTES, timestamps[n]);
+            if (oldOffset != 0) {
+                this.sectorAllocator.free(oldOffset >>> 8, oldOffset & 0xFF);
+            }
+        }
+
+        if (this.journal == null) {
+            this.mappedHeaders.force();
+        } else if (this.journal.size() >= JOURNAL_CHECKPOINT_BYTES) {
+            this.checkpointJournal();
+        }
+    }
+
+    /**
+     * Forces the headers to disk and empties the journal, if the journal contains any entries.
+     * <p>
+     * This must be done before any header update which doesn't go through the journal, as replaying the journal after a crash would otherwise overwrite
+     * newer header values with older ones.
+     */
+    protected void checkpointJournal() throws IOException {
+        if (this.journal != null && this.journal.size() > 0L) {
+            this.mappedHeaders.force();
+            this.journal.reset();
+        }
+    }
+
+    protected static void addChunkBuffers(@NonNull List<ByteBuffer> buffers, @NonNull ByteBuf data, int version, int requiredSectors) {
+        int size = data.readableBytes();
+        ByteBuffer prefix = ByteBuffer.allocate(CHUNK_PREFIX_BYTES).putInt(size + 1).put((byte) version);
+        prefix.flip();
+        buffers.add(prefix);
+        Collections.addAll(buffers, data.nioBuffers(data.readerIndex(), size));
+
+        //pad the chunk up to the next sector boundary
+        int padding = requiredSectors * SECTOR_BYTES - (size + CHUNK_PREFIX_BYTES);
+        if (padding > 0) {
+            ByteBuffer zeroes = ZERO_SECTOR.duplicate();
+            zeroes.limit(padding);
+            buffers.add(zeroes);
+        }
+    }
+
+    protected void writeFully(long position, @NonNull List<ByteBuffer> buffers) throws IOException {
+        //positional writes don't touch the channel's shared position, so this doesn't race with concurrent positional reads
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += this.channel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Ensures that the file is large enough to contain the given number of sectors, growing it in extents of {@link #PREALLOCATE_SECTORS} if not.
+     *
+     * @param sectors the number of sectors
+     */
+    protected void ensureCapacity(int sectors) throws IOException {
+        if (sectors > this.fileSectors) {
+            int newSectors = (sectors + PREALLOCATE_SECTORS - 1) / PREALLOCATE_SECTORS * PREALLOCATE_SECTORS;
+            //writing a single byte at the very end is enough to make the filesystem extend the file
+            ByteBuffer zero = ZERO_SECTOR.duplicate();
+            zero.limit(1);
+            this.channel.write(zero, (long) newSectors * SECTOR_BYTES - 1L);
+            this.fileSectors = newSectors;
+        }
+    }
+
     @Override
     protected void doDelete(int x, int z, int startIndex, int length) throws IOException {
-        this.occupiedSectors.clear(startIndex, startIndex + length);
+        this.checkpointJournal();
 
-        this.channel.transferFrom(SlashDevSlashNull.INSTANCE, startIndex * SECTOR_BYTES, length * SECTOR_BYTES);
+        this.sectorAllocator.free(startIndex, length);
+        this.headers.putInt(getOffsetIndex(x, z), 0);
+        this.headers.putInt(getTimestampIndex(x, z), 0);
+
+        if (startIndex < this.sectorAllocator.end()) { //don't bother zeroing out sectors which are going to be truncated away anyway
+            this.channel.transferFrom(SlashDevSlashNull.INSTANCE, (long) startIndex * SECTOR_BYTES, length * SECTOR_BYTES);
+        }
     }
 
     @Override
-    protected void doDefrag() throws IOException {
-        //need to implement this at some point
-        throw new UnsupportedOperationException();
+    protected int doDefrag(int maxChunks) throws IOException {
+        this.checkpointJournal();
+
+        //collect all present chunks, packed as (offset << 12) | offsetIndex so that sorting orders them by their position in the file
+        long[] chunks = new long[1024];
+        int count = 0;
+        for (int i = 0; i < SECTOR_BYTES; i += 4) {
+            int offset = this.headers.getInt(i);
+            if (offset != 0) {
+                chunks[count++] = (Integer.toUnsignedLong(offset) << 12L) | i;
+            }
+        }
+        Arrays.sort(chunks, 0, count);
+
+        int moved = 0;
+        ByteBuf buf = null;
+        try {
+            //slide every chunk down so that it immediately follows the previous one
+            int cursor = HEADER_SECTORS;
+            for (int n = 0; n < count; n++) {
+                int offsetIndex = (int) (chunks[n] & 0xFFFL);
+                int offset = (int) (chunks[n] >>> 12L);
+                int sector = offset >>> 8;
+                int sectors = offset & 0xFF;
+
+                if (sector < cursor) { //the chunk overlaps the previous one, the headers are corrupt and moving anything else could destroy data
+                    break;
+                } else if (sector > cursor) {
+                    if (moved == maxChunks) {
+                        break;
+                    }
+
+                    if (buf == null) {
+                        buf = this.alloc.ioBuffer(255 * SECTOR_BYTES);
+                    }
+                    this.moveChunk(buf, offsetIndex, sector, sectors, cursor);
+                    moved++;
+                }
+                cursor += sectors;
+            }
+        } finally {
+            if (buf != null) {
+                buf.release();
+            }
+        }
+
+        //drop any unused sectors at the end of the file
+        this.truncateToEnd();
+        return moved;
+    }
+
+    /**
+     * Moves a chunk to a new position in the file.
+     * <p>
+     * The chunk's old sectors are never overwritten before the headers point to an intact copy of the data somewhere else: if the target range overlaps
+     * the chunk's current sectors, the chunk is first moved to a scratch extent elsewhere in the file.
+     */
+    protected void moveChunk(@NonNull ByteBuf buf, int offsetIndex, int oldSector, int sectors, int newSector) throws IOException {
+        if (newSector + sectors <= oldSector) {
+            //the target range is entirely below the chunk's current sectors, so it can be moved directly
+            this.sectorAllocator.reserve(newSector, sectors);
+            this.copyChunk(buf.clear(), offsetIndex, oldSector, sectors, newSector);
+        } else {
+            //the target range overlaps the chunk's current sectors, move it to a free extent which doesn't overlap either of them first
+            int scratchSector = this.sectorAllocator.allocate(sectors);
+            this.ensureCapacity(scratchSector + sectors);
+            this.copyChunk(buf.clear(), offsetIndex, oldSector, sectors, scratchSector);
+
+            this.sectorAllocator.reserve(newSector, sectors);
+            this.copyChunk(buf.clear(), offsetIndex, scratchSector, sectors, newSector);
+        }
+    }
+
+    /**
+     * Copies a chunk's data to a range of sectors which has already been reserved and doesn't overlap its current sectors, and then durably updates
+     * the chunk's header to point to the new copy.
+     * <p>
+     * The chunk's old sectors are released once the header has been updated. If anything goes wrong before that, the new sectors are released
+     * instead and the header is left untouched.
+     */
+    protected void copyChunk(@NonNull ByteBuf buf, int offsetIndex, int oldSector, int sectors, int newSector) throws IOException {
+        int offset = (newSector << 8) | sectors;
+        int timestamp = this.headers.getInt(offsetIndex + SECTOR_BYTES);
+        try {
+            int bytes = sectors * SECTOR_BYTES;
+            int read = buf.writeBytes(this.channel, (long) oldSector * SECTOR_BYTES, bytes);
+            if (read != bytes) {
+                throw new IOException(String.format("Read %d/%d bytes!", read, bytes));
+            }
+            for (long position = (long) newSector * SECTOR_BYTES; buf.isReadable(); ) {
+                position += buf.readBytes(this.channel, position, buf.readableBytes());
+            }
+
+            //make sure the data is on disk before publishing the new offset
+            this.channel.force(false);
+            if (this.journal != null) {
+                this.journal.append(new int[]{offsetIndex}, new int[]{offset}, new int[]{timestamp}, 1);
+            }
+        } catch (Throwable t) {
+            this.sectorAllocator.free(newSector, sectors);
+            throw t;
+        }
+
+        this.headers.putInt(offsetIndex, offset);
+        if (this.journal == null) {
+            this.mappedHeaders.force();
+        } else if (this.journal.size() >= JOURNAL_CHECKPOINT_BYTES) {
+            this.checkpointJournal();
+        }
+        this.sectorAllocator.free(oldSector, sectors);
+    }
+
+    protected void truncateToEnd() throws IOException {
+        long size = (long) this.sectorAllocator.end() * SECTOR_BYTES;
+        if (this.channel.size() > size) {
+            this.channel.truncate(size);
+        }
+        this.fileSectors = this.sectorAllocator.end();
     }
 
     @Override
     protected void doFlush() throws IOException {
-        this.headers.force();
+        this.mappedHeaders.force();
+        if (this.journal != null) {
+            this.journal.reset();
+        }
     }
 
     @Override
     protected void doClose() throws IOException {
         if (!this.readOnly()) {
+            //drop any preallocated sectors which were never used
+            this.truncateToEnd();
             this.doFlush();
+            if (this.journal != null) {
+                this.journal.discard();
+            }
         }
-        PUnsafe.pork_releaseBuffer(this.headers);
+        PUnsafe.pork_releaseBuffer(this.mappedHeaders);
     }
 }
@@ -20,11 +20,14 @@
 
 package net.daporkchop.mcworldlib.format.anvil.storage;
 
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import net.daporkchop.lib.nbt.tag.CompoundTag;
 import net.daporkchop.lib.nbt.tag.DoubleTag;
 import net.daporkchop.lib.nbt.tag.ListTag;
 import net.daporkchop.mcworldlib.format.java.JavaFixers;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.format.java.decoder.JavaLevelDecoder;
 import net.daporkchop.mcworldlib.format.java.decoder.JavaSectionDecoder;
 import net.daporkchop.mcworldlib.util.dirty.AbstractReleasableDirtiable;
@@ -34,7 +37,12 @@ import net.daporkchop.mcworldlib.world.Chunk;
 import net.daporkchop.mcworldlib.world.World;
 import net.daporkchop.mcworldlib.world.section.Section;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import static net.daporkchop.lib.common.math.PMath.*;
+import static net.daporkchop.lib.common.util.PorkUtil.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
@@ -44,7 +52,19 @@ import static net.daporkchop.lib.common.util.PValidation.*;
  *
  * @author DaPorkchop_
  */
+@Getter
+@Setter
 public abstract class AnvilCachedChunk extends AbstractReleasableDirtiable {
+    /**
+     * A rough estimate of the memory occupied by a cached chunk itself, not including any of its sections.
+     */
+    protected static final long CHUNK_OVERHEAD = 512L;
+
+    /**
+     * The approximate amount of memory occupied by this chunk, used for bounding the size of the {@link AnvilChunkCache}.
+     */
+    protected long weight = CHUNK_OVERHEAD;
+
     public abstract Chunk chunk();
 
     public abstract Section section(int y);
@@ -71,6 +91,10 @@ public abstract class AnvilCachedChunk extends AbstractReleasableDirtiable {
         protected final Section[] sections = new Section[24];
 
         public ReadOnly(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull JavaFixers fixers, @NonNull World world) {
+            this(tag, version, fixers, world, DecodeProfile.ALL);
+        }
+
+        public ReadOnly(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull JavaFixers fixers, @NonNull World world, @NonNull DecodeProfile profile) {
             this.chunk = fixers.chunk().ceilingEntry(version).getValue()
                     .decode(tag, version, world);
 
@@ -80,19 +104,27 @@ public abstract class AnvilCachedChunk extends AbstractReleasableDirtiable {
 
             JavaSectionDecoder sectionDecoder = fixers.section().ceilingEntry(version).getValue();
             for (CompoundTag sectionTag : levelTag.getList((newNames ? "sections" : "Sections"), CompoundTag.class)) {
-                Section section = sectionDecoder.decode(sectionTag, version, world, this.chunk.x(), this.chunk.z());
+                Section section = sectionDecoder.decode(sectionTag, version, world, this.chunk.x(), this.chunk.z(), profile);
                 checkState(this.sections[section.y()] == null, "duplicate section at y=%d!", section.y());
                 this.sections[section.y()] = section;
             }
 
-            ListTag<CompoundTag> tileEntities = levelTag.getList((newNames ? "block_entities" : "TileEntities"), CompoundTag.class);
-            for (CompoundTag tileEntity : tileEntities) {
-                int x = tileEntity.getInt("x");
-                int y = tileEntity.getInt("y");
-                int z = tileEntity.getInt("z");
-                this.sections[y >> 4].setTileEntity(x & 0xF, y & 0xF, z & 0xF, AllocatedNBTHelper.toNormalAndRelease(tileEntity));
+            if (profile.blockEntities()) { //otherwise, the tile entities will be released along with the rest of the chunk
+                ListTag<CompoundTag> tileEntities = levelTag.getList((newNames ? "block_entities" : "TileEntities"), CompoundTag.class);
+                for (CompoundTag tileEntity : tileEntities) {
+                    int x = tileEntity.getInt("x");
+                    int y = tileEntity.getInt("y");
+                    int z = tileEntity.getInt("z");
+                    this.sections[y >> 4].setTileEntity(x & 0xF, y & 0xF, z & 0xF, AllocatedNBTHelper.toNormalAndRelease(tileEntity));
+                }
+                tileEntities.list().clear();
+            }
+
+            for (Section section : this.sections) {
+                if (section != null) {
+                    this.weight += section.retainedBytes();
+                }
             }
-            tileEntities.list().clear();
 
 //            //TODO: i should probably make entities be their own thing, because 1.17 stores them separately
 //            ListTag<CompoundTag> entities = levelTag.getList("Entities", CompoundTag.class);
@@ -127,6 +159,150 @@ public abstract class AnvilCachedChunk extends AbstractReleasableDirtiable {
         }
     }
 
+    /**
+     * A read-only cached chunk which only decodes each section the first time it is accessed.
+     * <p>
+     * The section tags are kept in their parsed but undecoded form until then, so callers which only access a few sections of each chunk don't
+     * have to pay for decoding the palettes, block data and light of all the others.
+     */
+    public static class LazyReadOnly extends AnvilCachedChunk {
+        protected final Chunk chunk;
+        protected final AtomicReferenceArray<Section> sections = new AtomicReferenceArray<>(24);
+
+        //the following fields may only be accessed while synchronized on sectionTags
+        protected final CompoundTag[] sectionTags = new CompoundTag[24];
+        protected final List<CompoundTag>[] tileEntityTags = uncheckedCast(new List[24]);
+
+        protected final JavaVersion version;
+        protected final JavaSectionDecoder sectionDecoder;
+        protected final World world;
+        protected final DecodeProfile profile;
+
+        public LazyReadOnly(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull JavaFixers fixers, @NonNull World world) {
+            this(tag, version, fixers, world, DecodeProfile.ALL);
+        }
+
+        public LazyReadOnly(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull JavaFixers fixers, @NonNull World world, @NonNull DecodeProfile profile) {
+            this.version = version;
+            this.world = world;
+            this.profile = profile;
+            this.chunk = fixers.chunk().ceilingEntry(version).getValue()
+                    .decode(tag, version, world);
+
+            JavaLevelDecoder levelDecoder = fixers.level().ceilingEntry(version).getValue();
+            CompoundTag levelTag = levelDecoder.decode(tag, version);
+            boolean newNames = version.compareTo(JavaVersion.fromName("1.19.4")) >= 0;
+
+            this.sectionDecoder = fixers.section().ceilingEntry(version).getValue();
+            ListTag<CompoundTag> sections = levelTag.getList((newNames ? "sections" : "Sections"), CompoundTag.class);
+            for (CompoundTag sectionTag : sections) {
+                int y = sectionIndex(sectionTag.getByte("Y"));
+                checkState(this.sectionTags[y] == null, "duplicate section at y=%d!", y);
+                this.sectionTags[y] = sectionTag;
+            }
+            sections.list().clear(); //the section tags are now owned by this instance and must not be released along with the rest of the chunk
+
+            if (profile.blockEntities()) { //otherwise, the tile entities will be released along with the rest of the chunk
+                ListTag<CompoundTag> tileEntities = levelTag.getList((newNames ? "block_entities" : "TileEntities"), CompoundTag.class);
+                for (CompoundTag tileEntity : tileEntities) {
+                    int y = sectionIndex(tileEntity.getInt("y") >> 4);
+                    if (this.tileEntityTags[y] == null) {
+                        this.tileEntityTags[y] = new ArrayList<>();
+                    }
+                    this.tileEntityTags[y].add(tileEntity);
+                }
+                tileEntities.list().clear();
+            }
+
+            //weigh the undecoded tags rather than the sections, decoding a section releases its tags and the result is generally no larger
+            for (int y = 0; y < 24; y++) {
+                if (this.sectionTags[y] != null) {
+                    this.weight += AllocatedNBTHelper.retainedBytes(this.sectionTags[y]);
+                }
+                if (this.tileEntityTags[y] != null) {
+                    for (CompoundTag tileEntity : this.tileEntityTags[y]) {
+                        this.weight += AllocatedNBTHelper.retainedBytes(tileEntity);
+                    }
+                }
+            }
+        }
+
+        protected static int sectionIndex(int y) {
+            return y < 0 ? y + 24 : y;
+        }
+
+        @Override
+        public Chunk chunk() {
+            return this.chunk.retain();
+        }
+
+        @Override
+        public Section section(int y) {
+            Section section = this.sections.get(y);
+            if (section == null) {
+                synchronized (this.sectionTags) {
+                    if ((section = this.sections.get(y)) == null) {
+                        if ((section = this.decodeSection(y)) == null) {
+                            return null;
+                        }
+                        this.sections.set(y, section);
+                    }
+                }
+            }
+            return section.retain();
+        }
+
+        /**
+         * Decodes the section at the given index, consuming its tags.
+         * <p>
+         * Must be called while synchronized on {@link #sectionTags}.
+         */
+        protected Section decodeSection(int y) {
+            CompoundTag sectionTag = this.sectionTags[y];
+            if (sectionTag == null) {
+                return null;
+            }
+
+            Section section;
+            try {
+                section = this.sectionDecoder.decode(sectionTag, this.version, this.world, this.chunk.x(), this.chunk.z(), this.profile);
+            } finally {
+                this.sectionTags[y] = null;
+                AllocatedNBTHelper.release(sectionTag);
+            }
+            checkState(section.y() == y, "section at y=%d was decoded with y=%d!", y, section.y());
+
+            List<CompoundTag> tileEntities = this.tileEntityTags[y];
+            if (tileEntities != null) {
+                this.tileEntityTags[y] = null;
+                for (CompoundTag tileEntity : tileEntities) {
+                    int x = tileEntity.getInt("x");
+                    int tileY = tileEntity.getInt("y");
+                    int z = tileEntity.getInt("z");
+                    section.setTileEntity(x & 0xF, tileY & 0xF, z & 0xF, AllocatedNBTHelper.toNormalAndRelease(tileEntity));
+                }
+            }
+            return section;
+        }
+
+        @Override
+        protected void doRelease() {
+            this.chunk.release();
+            for (int y = 0; y < 24; y++) {
+                Section section = this.sections.get(y);
+                if (section != null) {
+                    section.release();
+                }
+                if (this.sectionTags[y] != null) {
+                    AllocatedNBTHelper.release(this.sectionTags[y]);
+                }
+                if (this.tileEntityTags[y] != null) {
+                    this.tileEntityTags[y].forEach(AllocatedNBTHelper::release);
+                }
+            }
+        }
+    }
+
     //TODO
     /*public static class ReadWrite extends AnvilCachedChunk {
         protected final JavaVersion version;
@@ -0,0 +1,487 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.storage;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import net.daporkchop.lib.primitive.map.LongObjMap;
+import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
+import net.daporkchop.lib.unsafe.PUnsafe;
+import net.daporkchop.mcworldlib.util.cache.FrequencySketch;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A bounded cache of {@link AnvilCachedChunk}s, limited both by the number of chunks and by their total {@link AnvilCachedChunk#weight()}.
+ * <p>
+ * The eviction policy is a simplified W-TinyLFU: newly loaded chunks enter a small admission window, and when a chunk leaves the window it only
+ * replaces a chunk in the main area if it has been accessed more frequently, according to a {@link FrequencySketch}. The main area uses the CLOCK
+ * algorithm as an approximation of LRU. This makes the cache resistant to scans: iterating over every chunk in the world only ever churns the
+ * window, rather than pushing out the chunks which are actually being used repeatedly.
+ * <p>
+ * Lookups are lock-free, and every access is done through a reference-counted lease on the cache entry. A cached chunk is only released once it has
+ * been evicted and every lease on it has been released, so eviction is always safe regardless of what other threads are doing. Chunks are loaded
+ * outside of the map's locks: a miss only inserts a placeholder, which is then filled by the thread which inserted it while any other threads
+ * looking up the same chunk wait for it.
+ * <p>
+ * Chunks which haven't been accessed for longer than the maximum age are expired by a periodic sweep, regardless of whether or not the cache is full.
+ *
+ * @author DaPorkchop_
+ */
+@Accessors(fluent = true)
+public final class AnvilChunkCache {
+    protected static final int WINDOW_PERCENT = 1;
+
+    protected final LongObjMap<Entry> map = new LongObjConcurrentHashMap<>();
+    //only inserts an unloaded placeholder, so that no I/O is ever done while the map is locked
+    protected final LongFunction<Entry> placeholderFunction = Entry::new;
+    protected final FrequencySketch sketch;
+
+    //the following fields may only be accessed while holding the policy lock
+    protected final Lock policyLock = new ReentrantLock();
+    protected final ArrayDeque<Entry> window = new ArrayDeque<>();
+    protected final ArrayDeque<Entry> main = new ArrayDeque<>();
+    protected long windowWeight;
+
+    protected volatile long lastExpirySweep;
+
+    protected final int maxSize;
+    protected final long maxWeight;
+    protected final long maxAge;
+    protected final long sweepInterval;
+    //an entry's access time is only updated once it is at least this far behind, so chunks may expire up to this much earlier than maxAge
+    protected final long accessResolution;
+    protected final int maxWindowSize;
+    protected final long maxWindowWeight;
+
+    protected volatile int size;
+    protected volatile long weight;
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize   the maximum number of chunks which may be cached at once
+     * @param maxWeight the maximum total weight of all cached chunks
+     * @param maxAge    the maximum time (in milliseconds) that a chunk may remain cached without being accessed
+     */
+    public AnvilChunkCache(int maxSize, long maxWeight, long maxAge) {
+        this.maxSize = notNegative(maxSize, "maxSize");
+        this.maxWeight = notNegative(maxWeight, "maxWeight");
+        this.maxAge = notNegative(maxAge, "maxAge");
+        this.sweepInterval = Math.max(Math.min(maxAge, 1000L), 1L);
+        this.accessResolution = this.sweepInterval >> 2L;
+        this.maxWindowSize = Math.max(maxSize * WINDOW_PERCENT / 100, 1);
+        this.maxWindowWeight = Math.max(maxWeight / 100L * WINDOW_PERCENT, 1L);
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * Acquires a lease on the cached chunk with the given key, loading it if it isn't already cached.
+     * <p>
+     * The lease must be released using {@link Entry#release()}.
+     *
+     * @param key    the chunk's key
+     * @param loader a function for loading the chunk if it isn't cached. May return {@code null}, in which case nothing will be cached
+     * @return a lease on the cached chunk, or {@code null} if the loader returned {@code null}
+     */
+    public Entry acquire(long key, @NonNull LongFunction<AnvilCachedChunk> loader) {
+        Entry entry;
+        while (true) {
+            entry = this.map.computeIfAbsent(key, this.placeholderFunction);
+            if (entry.tryClaim()) { //we inserted the placeholder, so we're responsible for loading the chunk
+                return this.load(entry, loader);
+            } else if (!entry.awaitLoaded()) { //the loader returned null
+                this.misses.incrementAndGet();
+                return null;
+            } else if (this.tryRetain(entry)) {
+                break;
+            }
+        }
+
+        this.hits.incrementAndGet();
+        this.sketch.increment(key);
+        this.expire(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Loads the chunk for a placeholder which was claimed by the current thread.
+     * <p>
+     * If the chunk can't be loaded or the loader returns {@code null}, the placeholder is removed from the map again so that a later access may retry.
+     *
+     * @param entry  the placeholder
+     * @param loader the function for loading the chunk
+     * @return a lease on the loaded entry, or {@code null} if the loader returned {@code null}
+     */
+    protected Entry load(@NonNull Entry entry, @NonNull LongFunction<AnvilCachedChunk> loader) {
+        this.misses.incrementAndGet();
+        AnvilCachedChunk chunk;
+        try {
+            chunk = loader.apply(entry.key);
+        } catch (Throwable t) {
+            this.map.remove(entry.key);
+            entry.loaded.completeExceptionally(t);
+            throw t;
+        }
+
+        if (chunk == null) {
+            this.map.remove(entry.key);
+            entry.loaded.complete(Boolean.FALSE);
+            return null;
+        }
+
+        entry.value = chunk;
+        entry.weight = chunk.weight();
+        entry.lastAccess = System.currentTimeMillis();
+        entry.retain(); //our lease, acquired before the entry becomes visible to the policy so that it can't be released before we return it
+        entry.loaded.complete(Boolean.TRUE);
+
+        this.sketch.increment(entry.key);
+        this.add(entry);
+        return entry;
+    }
+
+    /**
+     * Acquires a lease on the cached chunk with the given key, if it is cached.
+     * <p>
+     * Chunks which are currently being loaded by another thread are treated as not cached.
+     *
+     * @param key the chunk's key
+     * @return a lease on the cached chunk, or {@code null} if it isn't cached
+     */
+    public Entry acquireIfPresent(long key) {
+        Entry entry;
+        do {
+            if ((entry = this.map.get(key)) == null || !entry.isLoaded()) {
+                this.misses.incrementAndGet();
+                this.expire(System.currentTimeMillis());
+                return null;
+            }
+        } while (!this.tryRetain(entry));
+
+        this.hits.incrementAndGet();
+        this.sketch.increment(key);
+        this.expire(System.currentTimeMillis());
+        return entry;
+    }
+
+    protected boolean tryRetain(@NonNull Entry entry) {
+        if (!entry.tryRetain()) {
+            //the entry is being evicted, wait until it's been removed from the map
+            Thread.yield();
+            return false;
+        }
+
+        //avoid writing to the fields unless necessary, as it would cause needless cache line contention on hits
+        long now = System.currentTimeMillis();
+        if (now - entry.lastAccess >= this.accessResolution) {
+            entry.lastAccess = now;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return true;
+    }
+
+    /**
+     * Expires every chunk which hasn't been accessed in a while, if enough time has passed since this was last done.
+     * <p>
+     * If another thread is currently holding the policy lock, nothing is done.
+     *
+     * @param now the current time
+     */
+    protected void expire(long now) {
+        if (now - this.lastExpirySweep >= this.sweepInterval && this.policyLock.tryLock()) {
+            try {
+                this.expireLocked(now);
+            } finally {
+                this.policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Expires every chunk which hasn't been accessed in a while, if enough time has passed since this was last done.
+     * <p>
+     * Must be called while holding the policy lock.
+     *
+     * @param now the current time
+     */
+    protected void expireLocked(long now) {
+        if (now - this.lastExpirySweep >= this.sweepInterval) {
+            this.lastExpirySweep = now;
+            this.evictExpired(this.window, now, true);
+            this.evictExpired(this.main, now, false);
+        }
+    }
+
+    protected void add(@NonNull Entry entry) {
+        this.policyLock.lock();
+        try {
+            this.window.add(entry);
+            this.windowWeight += entry.weight;
+            this.size++;
+            this.weight += entry.weight;
+
+            this.evict();
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts chunks until the cache is no longer over capacity.
+     * <p>
+     * Must be called while holding the policy lock.
+     */
+    protected void evict() {
+        //get rid of everything which hasn't been accessed in a while first, as it might already be enough to bring the cache back under capacity
+        this.expireLocked(System.currentTimeMillis());
+
+        //move chunks from the window into the main area, where they have to compete with the main area's victim for admission
+        while (!this.window.isEmpty() && (this.window.size() > this.maxWindowSize || this.windowWeight > this.maxWindowWeight)) {
+            Entry candidate = this.window.poll();
+            this.windowWeight -= candidate.weight;
+            if (this.size <= this.maxSize && this.weight <= this.maxWeight) {
+                this.main.add(candidate);
+                continue;
+            }
+
+            Entry victim = this.mainVictim();
+            if (victim == null) {
+                this.remove(candidate);
+            } else if (this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key)) {
+                this.remove(victim);
+                this.main.add(candidate);
+            } else {
+                this.main.addFirst(victim); //the victim survives, put it back where it was
+                this.remove(candidate);
+            }
+        }
+
+        //if the cache is still too big (e.g. because the window contains a few very heavy chunks), evict from the main area and then the window
+        while (this.size > this.maxSize || this.weight > this.maxWeight) {
+            Entry victim = this.mainVictim();
+            if (victim == null) {
+                if ((victim = this.window.poll()) == null) {
+                    break;
+                }
+                this.windowWeight -= victim.weight;
+            }
+            this.remove(victim);
+        }
+    }
+
+    /**
+     * Removes the next victim from the main area using the CLOCK algorithm.
+     */
+    protected Entry mainVictim() {
+        for (int budget = this.main.size(); budget > 0; budget--) {
+            Entry entry = this.main.poll();
+            if (!entry.referenced) {
+                return entry;
+            }
+            //give the entry a second chance
+            entry.referenced = false;
+            this.main.add(entry);
+        }
+        //every entry was referenced, so they've all had their second chance now
+        return this.main.poll();
+    }
+
+    protected void evictExpired(@NonNull ArrayDeque<Entry> queue, long now, boolean isWindow) {
+        for (Iterator<Entry> itr = queue.iterator(); itr.hasNext(); ) {
+            Entry entry = itr.next();
+            if (now - entry.lastAccess > this.maxAge) {
+                itr.remove();
+                if (isWindow) {
+                    this.windowWeight -= entry.weight;
+                }
+                this.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the given entry from the map and releases the cache's reference to it.
+     * <p>
+     * Must be called while holding the policy lock, after the entry has been removed from its queue.
+     */
+    protected void remove(@NonNull Entry entry) {
+        this.map.remove(entry.key);
+        this.size--;
+        this.weight -= entry.weight;
+        this.evictions.incrementAndGet();
+        entry.release();
+    }
+
+    /**
+     * Evicts every chunk from the cache.
+     */
+    public void clear() {
+        this.policyLock.lock();
+        try {
+            for (Entry entry; (entry = this.window.poll()) != null; ) {
+                this.remove(entry);
+            }
+            for (Entry entry; (entry = this.main.poll()) != null; ) {
+                this.remove(entry);
+            }
+            this.windowWeight = 0L;
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of chunks currently in the cache
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the total weight of all chunks currently in the cache
+     */
+    public long weight() {
+        return this.weight;
+    }
+
+    /**
+     * @return the number of lookups which found the chunk in the cache
+     */
+    public long hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups which did not find the chunk in the cache
+     */
+    public long misses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of chunks which have been evicted from the cache
+     */
+    public long evictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * A single entry in an {@link AnvilChunkCache}.
+     *
+     * @author DaPorkchop_
+     */
+    @Getter
+    public static final class Entry {
+        protected static final AtomicIntegerFieldUpdater<Entry> REFCNT_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refCnt");
+        protected static final AtomicIntegerFieldUpdater<Entry> CLAIMED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "claimed");
+
+        protected final long key;
+        //only written once by the thread which claimed the placeholder, before loaded is completed
+        protected AnvilCachedChunk value;
+        protected long weight;
+
+        @Getter(lombok.AccessLevel.NONE)
+        protected final CompletableFuture<Boolean> loaded = new CompletableFuture<>();
+        @Getter(lombok.AccessLevel.NONE)
+        protected volatile int refCnt = 1; //the cache's reference
+        @Getter(lombok.AccessLevel.NONE)
+        protected volatile int claimed = 0;
+        @Getter(lombok.AccessLevel.NONE)
+        protected volatile boolean referenced = true;
+        @Getter(lombok.AccessLevel.NONE)
+        protected volatile long lastAccess = System.currentTimeMillis();
+
+        protected Entry(long key) {
+            this.key = key;
+        }
+
+        /**
+         * Attempts to claim this placeholder.
+         *
+         * @return whether or not the placeholder was claimed. If {@code true}, the caller is responsible for loading the chunk
+         */
+        protected boolean tryClaim() {
+            return this.claimed == 0 && CLAIMED_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        /**
+         * Waits until the chunk has been loaded by the thread which claimed this placeholder.
+         *
+         * @return whether or not a chunk was loaded. If {@code false}, the loader returned {@code null}
+         */
+        protected boolean awaitLoaded() {
+            try {
+                return this.loaded.join();
+            } catch (CompletionException e) { //rethrow whatever the loader threw
+                PUnsafe.throwException(e.getCause());
+                throw e;
+            }
+        }
+
+        /**
+         * @return whether or not the chunk has been loaded successfully
+         */
+        protected boolean isLoaded() {
+            return this.loaded.isDone() && !this.loaded.isCompletedExceptionally() && this.loaded.join();
+        }
+
+        protected void retain() {
+            REFCNT_UPDATER.incrementAndGet(this);
+        }
+
+        protected boolean tryRetain() {
+            int refCnt;
+            do {
+                if ((refCnt = this.refCnt) == 0) {
+                    return false;
+                }
+            } while (!REFCNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1));
+            return true;
+        }
+
+        /**
+         * Releases a lease on this entry.
+         * <p>
+         * Once the entry has been evicted and every lease has been released, the cached chunk will be released.
+         */
+        public void release() {
+            if (REFCNT_UPDATER.decrementAndGet(this) == 0) {
+                this.value.release();
+            }
+        }
+    }
+}
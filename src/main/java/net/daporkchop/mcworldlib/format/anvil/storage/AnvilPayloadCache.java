@@ -0,0 +1,301 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.anvil.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.NonNull;
+import net.daporkchop.lib.primitive.map.LongObjMap;
+import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A second-tier cache which stores the decompressed NBT data of chunks in direct memory.
+ * <p>
+ * This sits behind the {@link AnvilChunkCache}: when a chunk is evicted from the decoded tier and later requested again, it only has to be parsed,
+ * rather than having to be read from disk and inflated again. Since the cached data is stored off-heap in a compact form, a much larger number of
+ * chunks can be kept around than in the decoded tier for the same amount of memory, and without putting any pressure on the garbage collector.
+ * <p>
+ * The cache is bounded by the total number of bytes stored. Lookups are lock-free, and eviction uses the CLOCK algorithm as an approximation of LRU.
+ * Eviction is never performed by threads which only hit the cache, and threads which find another thread already evicting simply leave it to them.
+ *
+ * @author DaPorkchop_
+ */
+public final class AnvilPayloadCache {
+    protected final LongObjMap<Entry> map = new LongObjConcurrentHashMap<>();
+
+    //the CLOCK ring, containing every entry that has been added to the cache and not yet evicted
+    protected final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger size = new AtomicInteger();
+    protected final Lock evictionLock = new ReentrantLock();
+
+    protected final ByteBufAllocator alloc;
+    protected final long maxBytes;
+    protected final AtomicLong bytes = new AtomicLong();
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param alloc    the {@link ByteBufAllocator} to allocate cached payloads with
+     * @param maxBytes the maximum total size of all cached payloads
+     */
+    public AnvilPayloadCache(@NonNull ByteBufAllocator alloc, long maxBytes) {
+        this.alloc = alloc;
+        checkArg(maxBytes > 0L, "maxBytes (%d) must be positive!", maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cached payload of the chunk with the given key.
+     *
+     * @param key the chunk's key
+     * @return a retained read-only view of the chunk's payload which must be released after use, or {@code null} if the chunk isn't cached
+     */
+    public ByteBuf get(long key) {
+        Entry entry = this.map.get(key);
+        ByteBuf buf = entry != null ? entry.tryRetain() : null;
+        if (buf == null) { //the chunk isn't cached, or it's currently being evicted
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        if (!entry.referenced) { //avoid writing to the field unless necessary, as it would cause needless cache line contention on hits
+            entry.referenced = true;
+        }
+        this.hits.incrementAndGet();
+        return buf.asReadOnly();
+    }
+
+    /**
+     * Stores a copy of the given chunk payload in the cache, evicting other chunks if necessary.
+     * <p>
+     * Payloads which are larger than the entire cache are not stored.
+     *
+     * @param key  the chunk's key
+     * @param data the chunk's payload. The buffer's reader index will not be modified, and it will not be released
+     */
+    public void put(long key, @NonNull ByteBuf data) {
+        int length = data.readableBytes();
+        if (length > this.maxBytes) {
+            return;
+        }
+
+        //copy the data into a buffer of exactly the right size, as the source buffer is likely to be much larger than necessary
+        Entry entry = new Entry(key, this.alloc.directBuffer(length, length).writeBytes(data, data.readerIndex(), length));
+        this.bytes.addAndGet(length);
+        Entry old = this.map.put(key, entry);
+        if (old != null) {
+            this.remove(old);
+        }
+        this.clock.add(entry);
+        this.size.incrementAndGet();
+
+        if (this.bytes.get() > this.maxBytes) {
+            this.evict();
+        }
+    }
+
+    /**
+     * Evicts entries from the cache until it is no longer over capacity.
+     * <p>
+     * Entries which have been accessed since the clock hand last passed them are given a second chance.
+     */
+    protected void evict() {
+        if (!this.evictionLock.tryLock()) { //another thread is already evicting, there's no reason for us to wait
+            return;
+        }
+        try {
+            //limit the number of iterations so that we don't spin forever if every entry keeps being accessed
+            for (int budget = this.size.get() << 1; budget > 0 && this.bytes.get() > this.maxBytes; budget--) {
+                Entry entry = this.clock.poll();
+                if (entry == null) {
+                    break;
+                } else if (entry.referenced && !entry.isRemoved()) { //give the entry a second chance
+                    entry.referenced = false;
+                    this.clock.add(entry);
+                } else { //the entry is evicted, or was already replaced or invalidated
+                    this.size.decrementAndGet();
+                    this.removeFromMap(entry);
+                    this.remove(entry);
+                }
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given entry from the map, unless it has already been replaced by another one.
+     * <p>
+     * This isn't atomic, so a concurrent {@link #put(long, ByteBuf)} may occasionally have its entry removed from the map as well. That entry stays in
+     * the clock ring and is accounted for normally until the clock hand reaches it, so this costs nothing more than a cache miss.
+     */
+    protected void removeFromMap(@NonNull Entry entry) {
+        if (this.map.get(entry.key) == entry) {
+            this.map.remove(entry.key);
+        }
+    }
+
+    /**
+     * Marks the given entry as removed, releasing the cache's reference to its payload.
+     * <p>
+     * Every entry is accounted for exactly once, no matter how many threads try to remove it.
+     */
+    protected void remove(@NonNull Entry entry) {
+        if (entry.markRemoved()) {
+            this.bytes.addAndGet(-entry.length);
+        }
+    }
+
+    /**
+     * Removes the chunk with the given key from the cache.
+     *
+     * @param key the chunk's key
+     */
+    public void invalidate(long key) {
+        Entry old = this.map.remove(key);
+        if (old != null) {
+            this.remove(old);
+        }
+    }
+
+    /**
+     * Removes every chunk from the cache.
+     */
+    public void clear() {
+        this.evictionLock.lock();
+        try {
+            for (Entry entry; (entry = this.clock.poll()) != null; ) {
+                this.size.decrementAndGet();
+                this.removeFromMap(entry);
+                this.remove(entry);
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return the total size of all cached payloads, in bytes
+     */
+    public long bytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * @return the number of lookups which found the chunk in the cache
+     */
+    public long hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of lookups which did not find the chunk in the cache
+     */
+    public long misses() {
+        return this.misses.get();
+    }
+
+    /**
+     * A single cached payload.
+     *
+     * @author DaPorkchop_
+     */
+    protected static final class Entry {
+        protected static final AtomicIntegerFieldUpdater<Entry> PINS_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "pins");
+
+        protected final long key;
+        protected final ByteBuf buf;
+        protected final int length;
+
+        //the number of threads which are currently retaining the payload, with the sign bit set once the entry has been removed from the cache
+        protected volatile int pins = 0;
+        protected volatile boolean referenced = true;
+
+        protected Entry(long key, @NonNull ByteBuf buf) {
+            this.key = key;
+            this.buf = buf;
+            this.length = buf.capacity();
+        }
+
+        /**
+         * Retains the payload, unless this entry has been removed from the cache.
+         * <p>
+         * The payload can't simply be retained directly, as a pooled buffer could already have been released and re-used for something else.
+         *
+         * @return a retained duplicate of the payload, or {@code null} if this entry has been removed
+         */
+        protected ByteBuf tryRetain() {
+            int pins;
+            do {
+                if ((pins = this.pins) < 0) {
+                    return null;
+                }
+            } while (!PINS_UPDATER.compareAndSet(this, pins, pins + 1));
+
+            try {
+                return this.buf.retainedDuplicate();
+            } finally {
+                if (PINS_UPDATER.decrementAndGet(this) == Integer.MIN_VALUE) { //the entry was removed while we were retaining it, we're the last one out
+                    this.buf.release();
+                }
+            }
+        }
+
+        /**
+         * @return whether or not this entry has been removed from the cache
+         */
+        protected boolean isRemoved() {
+            return this.pins < 0;
+        }
+
+        /**
+         * Marks this entry as removed from the cache.
+         * <p>
+         * The cache's reference to the payload is released as soon as no threads are retaining it any more.
+         *
+         * @return whether or not this entry was removed by this call. If {@code false}, it had already been removed
+         */
+        protected boolean markRemoved() {
+            int pins;
+            do {
+                if ((pins = this.pins) < 0) {
+                    return false;
+                }
+            } while (!PINS_UPDATER.compareAndSet(this, pins, pins | Integer.MIN_VALUE));
+
+            if (pins == 0) {
+                this.buf.release();
+            }
+            return true;
+        }
+    }
+}
@@ -34,12 +34,11 @@ import net.daporkchop.lib.compression.zlib.ZlibMode;
 import net.daporkchop.lib.compression.zlib.options.ZlibInflaterOptions;
 import net.daporkchop.lib.concurrent.PFuture;
 import net.daporkchop.lib.concurrent.PFutures;
+import net.daporkchop.lib.math.vector.i.Vec2i;
 import net.daporkchop.lib.nbt.NBTFormat;
 import net.daporkchop.lib.nbt.NBTOptions;
 import net.daporkchop.lib.nbt.tag.CompoundTag;
 import net.daporkchop.lib.primitive.lambda.LongObjObjFunction;
-import net.daporkchop.lib.primitive.map.LongObjMap;
-import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
 import net.daporkchop.lib.unsafe.PUnsafe;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
 import net.daporkchop.mcworldlib.format.anvil.AnvilSaveOptions;
@@ -49,10 +48,13 @@ import net.daporkchop.mcworldlib.format.anvil.region.RegionConstants;
 import net.daporkchop.mcworldlib.format.anvil.region.RegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.RegionFileCache;
 import net.daporkchop.mcworldlib.format.java.JavaFixers;
+import net.daporkchop.mcworldlib.format.java.decoder.ChunkNBTFilter;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.format.java.storage.AbstractJavaWorldStorage;
 import net.daporkchop.mcworldlib.save.SaveOptions;
 import net.daporkchop.mcworldlib.util.WriteAccess;
 import net.daporkchop.mcworldlib.util.nbt.AllocatedNBTHelper;
+import net.daporkchop.mcworldlib.util.nbt.NBTStreamReader;
 import net.daporkchop.mcworldlib.version.java.DataVersion;
 import net.daporkchop.mcworldlib.version.java.JavaVersion;
 import net.daporkchop.mcworldlib.world.Chunk;
@@ -61,9 +63,16 @@ import net.daporkchop.mcworldlib.world.section.Section;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.LongFunction;
+import java.util.regex.Matcher;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
  * Implementation of {@link WorldStorage} for the Anvil save format.
@@ -74,7 +83,7 @@ import java.util.function.LongFunction;
  * @author DaPorkchop_
  */
 public class AnvilWorldStorage extends AbstractJavaWorldStorage {
-    protected final LongObjMap<AnvilCachedChunk> cachedChunks = new LongObjConcurrentHashMap<>();
+    protected final AnvilChunkCache cachedChunks;
     protected final LongFunction<AnvilCachedChunk> loadFunction = l -> {
         try {
             return this.load(BinMath.unpackX(l), BinMath.unpackY(l));
@@ -83,17 +92,54 @@ public class AnvilWorldStorage extends AbstractJavaWorldStorage {
             throw new RuntimeException(e);
         }
     };
-    protected final RegionFile regionCache;
+    protected final AnvilPayloadCache payloadCache;
+    protected final RegionFileCache regionCache;
+    protected final boolean asyncRegions;
+    protected final boolean lazySections;
+    protected final DecodeProfile decodeProfile;
+    protected final ChunkNBTFilter nbtFilter;
 
     public AnvilWorldStorage(@NonNull File root, @NonNull AbstractAnvilWorld world) {
         super(root, world);
 
         this.regionCache = new RegionFileCache(world.options(), new File(root, "region"));
+        this.cachedChunks = new AnvilChunkCache(
+                notNegative(this.options.get(AnvilSaveOptions.CHUNK_CACHE_SIZE), "chunkCacheSize"),
+                notNegative(this.options.get(AnvilSaveOptions.CHUNK_CACHE_WEIGHT), "chunkCacheWeight"),
+                notNegative(this.options.get(AnvilSaveOptions.MAX_CHUNK_CACHE_TIME), "maxChunkCacheTime"));
+        long payloadCacheSize = notNegative(this.options.get(AnvilSaveOptions.CHUNK_PAYLOAD_CACHE_SIZE), "chunkPayloadCacheSize");
+        this.payloadCache = payloadCacheSize != 0L ? new AnvilPayloadCache(this.options.get(SaveOptions.NETTY_ALLOC), payloadCacheSize) : null;
+        this.asyncRegions = this.readOnly && this.options.get(AnvilSaveOptions.ASYNC_REGIONS) && !this.options.get(AnvilSaveOptions.MMAP_REGIONS);
+        this.lazySections = this.options.get(AnvilSaveOptions.LAZY_SECTIONS);
+        this.decodeProfile = this.options.get(AnvilSaveOptions.DECODE_PROFILE);
+        this.nbtFilter = this.options.get(AnvilSaveOptions.FILTER_CHUNK_NBT) ? new ChunkNBTFilter(this.decodeProfile) : null;
+    }
+
+    /**
+     * @return the {@link AnvilChunkCache} containing this storage's decoded chunks, which may be used for querying its hit/miss statistics
+     */
+    public AnvilChunkCache chunkCache() {
+        return this.cachedChunks;
+    }
+
+    /**
+     * @return the {@link AnvilPayloadCache} containing this storage's decompressed chunk data, or {@code null} if it is disabled
+     */
+    public AnvilPayloadCache payloadCache() {
+        return this.payloadCache;
     }
 
     @Override
     public Chunk loadChunk(int x, int z) throws IOException {
-        return this.cachedChunks.computeIfAbsent(BinMath.packXY(x, z), this.loadFunction).chunk();
+        AnvilChunkCache.Entry entry = this.cachedChunks.acquire(BinMath.packXY(x, z), this.loadFunction);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.value().chunk();
+        } finally {
+            entry.release();
+        }
     }
 
     @Override
@@ -101,7 +147,94 @@ public class AnvilWorldStorage extends AbstractJavaWorldStorage {
         if (y < 0) {
             y += 24;
         }
-        return this.cachedChunks.computeIfAbsent(BinMath.packXY(x, z), this.loadFunction).section(y);
+        AnvilChunkCache.Entry entry = this.cachedChunks.acquire(BinMath.packXY(x, z), this.loadFunction);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.value().section(y);
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Override
+    public PFuture<Chunk> loadChunkAsync(int x, int z) {
+        if (!this.asyncRegions) {
+            return super.loadChunkAsync(x, z);
+        }
+        return PFutures.wrap(this.loadAsync(x, z).thenApply(entry -> {
+            try {
+                return entry.value().chunk();
+            } finally {
+                entry.release();
+            }
+        }));
+    }
+
+    @Override
+    public PFuture<Section> loadSectionAsync(int x, int y, int z) {
+        if (!this.asyncRegions) {
+            return super.loadSectionAsync(x, y, z);
+        }
+        int sectionY = y < 0 ? y + 24 : y;
+        return PFutures.wrap(this.loadAsync(x, z).thenApply(entry -> {
+            try {
+                return entry.value().section(sectionY);
+            } finally {
+                entry.release();
+            }
+        }));
+    }
+
+    /**
+     * Asynchronously loads a chunk into the cache, if it isn't already cached.
+     * <p>
+     * The chunk's raw data is read using {@link RegionFileCache#readAsync(int, int)}, so the I/O executor is only occupied while decoding the chunk.
+     *
+     * @param x the X coordinate of the chunk to load
+     * @param z the Z coordinate of the chunk to load
+     * @return a {@link CompletableFuture} which will be completed with a lease on the cached chunk, which must be released after use
+     */
+    protected CompletableFuture<AnvilChunkCache.Entry> loadAsync(int x, int z) {
+        long key = BinMath.packXY(x, z);
+        AnvilChunkCache.Entry cached = this.cachedChunks.acquireIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        ByteBuf payload = this.payloadCache != null ? this.payloadCache.get(key) : null;
+        CompletableFuture<RawChunk> read = payload != null
+                ? CompletableFuture.completedFuture(null) //the chunk's decompressed data is still cached, so there's no need to read it
+                : this.regionCache.readAsync(x, z);
+        return read.thenApplyAsync(rawChunk -> {
+            AnvilCachedChunk loaded;
+            try {
+                if (payload != null) {
+                    try {
+                        loaded = this.decode(payload);
+                    } finally {
+                        payload.release();
+                    }
+                } else {
+                    loaded = this.load(key, rawChunk);
+                }
+            } catch (IOException e) {
+                PUnsafe.throwException(e);
+                throw new RuntimeException(e);
+            }
+
+            //another thread may have loaded the same chunk in the meantime, in which case the chunk we just loaded is discarded
+            boolean[] used = new boolean[1];
+            AnvilChunkCache.Entry entry = this.cachedChunks.acquire(key, k -> {
+                used[0] = true;
+                return loaded;
+            });
+            if (!used[0]) {
+                loaded.release();
+            }
+            return entry;
+        }, this.ioExecutor);
     }
 
     @Override
@@ -137,12 +270,47 @@ public class AnvilWorldStorage extends AbstractJavaWorldStorage {
                 : new UncachedAnvilSpliterator.OfSection(this);
     }
 
+    @Override
+    public Spliterator<Vec2i> chunksModifiedSince(long timestamp) throws IOException {
+        List<Vec2i> positions = new ArrayList<>();
+        for (File file : this.listRegions(timestamp)) {
+            Matcher matcher = RegionConstants.REGION_PATTERN.matcher(file.getName());
+            checkState(matcher.matches(), file.getName());
+            int regionX = Integer.parseInt(matcher.group(1));
+            int regionZ = Integer.parseInt(matcher.group(2));
+
+            long[] mask = this.regionCache.modifiedSince(regionX, regionZ, timestamp);
+            for (int i = 0; i < 1024; i++) {
+                if ((mask[i >> 6] & (1L << i)) != 0L) {
+                    positions.add(new Vec2i((regionX << 5) | (i & 0x1F), (regionZ << 5) | (i >> 5)));
+                }
+            }
+        }
+        return positions.spliterator();
+    }
+
+    @Override
+    public Spliterator<Chunk> allChunksModifiedSince(long timestamp) throws IOException {
+        return this.readOnly && this.options.get(SaveOptions.SPLITERATOR_CACHE)
+                ? new CachedAnvilSpliterator.OfChunk(this, timestamp)
+                : new UncachedAnvilSpliterator.OfChunk(this, timestamp);
+    }
+
+    @Override
+    public Spliterator<Section> allSectionsModifiedSince(long timestamp) throws IOException {
+        return this.readOnly && this.options.get(SaveOptions.SPLITERATOR_CACHE)
+                ? new CachedAnvilSpliterator.OfSection(this, timestamp)
+                : new UncachedAnvilSpliterator.OfSection(this, timestamp);
+    }
+
     @Override
     protected void doRelease() {
         try {
             this.flush();
-            this.cachedChunks.forEach((l, cached) -> cached.release());
             this.cachedChunks.clear();
+            if (this.payloadCache != null) {
+                this.payloadCache.clear();
+            }
             this.regionCache.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -153,6 +321,25 @@ public class AnvilWorldStorage extends AbstractJavaWorldStorage {
         return this.regionCache.file().listFiles(f -> f.isFile() && RegionConstants.REGION_PATTERN.matcher(f.getName()).matches());
     }
 
+    /**
+     * Lists all regions which may contain chunks which have been modified since the given time.
+     *
+     * @param modifiedSince the time, in milliseconds since the UNIX epoch. If {@link Long#MIN_VALUE}, all regions are returned
+     * @return the regions
+     * @see RegionFileCache#regionModifiedSince(int, int, long)
+     */
+    protected File[] listRegions(long modifiedSince) {
+        File[] regions = this.listRegions();
+        if (modifiedSince == Long.MIN_VALUE) {
+            return regions;
+        }
+        return Arrays.stream(regions).filter(file -> {
+            Matcher matcher = RegionConstants.REGION_PATTERN.matcher(file.getName());
+            checkState(matcher.matches(), file.getName());
+            return this.regionCache.regionModifiedSince(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), modifiedSince);
+        }).toArray(File[]::new);
+    }
+
     /**
      * Loads an entire chunk from disk for caching.
      * <p>
@@ -163,47 +350,149 @@ public class AnvilWorldStorage extends AbstractJavaWorldStorage {
      * @return the cached chunk, or {@code null} if the chunk doesn't exist
      */
     protected AnvilCachedChunk load(int x, int z) throws IOException {
-        return this.load(this.regionCache, x, z);
+        long key = BinMath.packXY(x, z);
+        if (this.payloadCache != null) {
+            ByteBuf payload = this.payloadCache.get(key);
+            if (payload != null) { //the chunk's decompressed data is still cached, so we can skip reading and decompressing it
+                try {
+                    return this.decode(payload);
+                } finally {
+                    payload.release();
+                }
+            }
+        }
+        return this.load(key, this.regionCache.read(x, z));
     }
 
     protected boolean prefetch(int x, int z) throws IOException {
-        return this.cachedChunks.computeIfAbsent(BinMath.packXY(x, z), this.loadFunction) != null;
+        AnvilChunkCache.Entry entry = this.cachedChunks.acquire(BinMath.packXY(x, z), this.loadFunction);
+        if (entry == null) {
+            return false;
+        }
+        entry.release();
+        return true;
     }
 
     protected AnvilCachedChunk load(@NonNull RegionFile region, int x, int z) throws IOException {
-        CompoundTag tag = null;
+        return this.load(region.read(x, z));
+    }
+
+    /**
+     * Decodes an entire chunk from its raw data for caching.
+     * <p>
+     * The raw chunk will be released.
+     *
+     * @param rawChunk the {@link RawChunk} containing the chunk's data, or {@code null} if the chunk doesn't exist
+     * @return the cached chunk, or {@code null} if the chunk doesn't exist
+     */
+    protected AnvilCachedChunk load(RawChunk rawChunk) throws IOException {
+        ByteBuf uncompressed = this.inflate(rawChunk);
+        if (uncompressed == null) {
+            return this.empty();
+        }
         try {
-            ByteBuf uncompressed = null;
-            try {
-                try (RawChunk chunk = region.read(x, z)) {
-                    if (chunk == null) { //chunk doesn't exist on disk
-                        return this.readOnly
-                                ? new AnvilCachedChunk.ReadOnlyEmpty()
-                                : null; //TODO
-                    }
-                    uncompressed = this.options.get(SaveOptions.NETTY_ALLOC).ioBuffer(1 << 18); //256 KiB
-                    try (Handle<PInflater> handle = inflater(chunk.data().readByte() & 0xFF)) {
-                        handle.get().decompress(chunk.data(), uncompressed);
-                    }
-                } //release compressed chunk data before parsing NBT
-                tag = NBTFormat.BIG_ENDIAN.readCompound(DataIn.wrap(uncompressed, false), this.nbtOptions);
-            } finally { //release uncompressed chunk data before constructing chunk instance
-                if (uncompressed != null) {
-                    uncompressed.release();
-                }
+            return this.decode(uncompressed);
+        } finally {
+            uncompressed.release();
+        }
+    }
+
+    /**
+     * Decodes an entire chunk from its raw data for caching, additionally storing its decompressed data in the {@link AnvilPayloadCache} (if enabled).
+     * <p>
+     * The raw chunk will be released.
+     *
+     * @param key      the chunk's key
+     * @param rawChunk the {@link RawChunk} containing the chunk's data, or {@code null} if the chunk doesn't exist
+     * @return the cached chunk, or {@code null} if the chunk doesn't exist
+     */
+    protected AnvilCachedChunk load(long key, RawChunk rawChunk) throws IOException {
+        ByteBuf uncompressed = this.inflate(rawChunk);
+        if (uncompressed == null) {
+            return this.empty();
+        }
+        try {
+            if (this.payloadCache != null) {
+                this.payloadCache.put(key, uncompressed);
+            }
+            return this.decode(uncompressed);
+        } finally {
+            uncompressed.release();
+        }
+    }
+
+    /**
+     * Decompresses a chunk's raw data.
+     * <p>
+     * If enabled, the decompressed data is then passed through a {@link ChunkNBTFilter}, so that tags which won't be decoded are never parsed.
+     * <p>
+     * The raw chunk will be released.
+     *
+     * @param rawChunk the {@link RawChunk} containing the chunk's data, or {@code null} if the chunk doesn't exist
+     * @return a buffer containing the chunk's decompressed NBT data which must be released after use, or {@code null} if the chunk doesn't exist
+     */
+    protected ByteBuf inflate(RawChunk rawChunk) throws IOException {
+        try (RawChunk chunk = rawChunk) {
+            if (chunk == null) { //chunk doesn't exist on disk
+                return null;
             }
+            ByteBuf uncompressed = this.options.get(SaveOptions.NETTY_ALLOC).ioBuffer(1 << 18); //256 KiB
+            try (Handle<PInflater> handle = inflater(chunk.data().readByte() & 0xFF)) {
+                handle.get().decompress(chunk.data(), uncompressed);
+            } catch (Throwable t) {
+                uncompressed.release();
+                throw t;
+            }
+            return this.nbtFilter != null ? this.filter(uncompressed) : uncompressed;
+        }
+    }
+
+    /**
+     * Removes all tags which won't be decoded from a chunk's decompressed NBT data.
+     * <p>
+     * The data is filtered in place, so no additional buffer is allocated and nothing is copied up to the first removed tag.
+     *
+     * @param uncompressed the chunk's decompressed NBT data. The buffer will be released if filtering fails
+     * @return the same buffer, with its readable bytes limited to the filtered NBT data
+     */
+    protected ByteBuf filter(@NonNull ByteBuf uncompressed) throws IOException {
+        try {
+            int start = uncompressed.readerIndex();
+            int end = new NBTStreamReader(uncompressed).filterRoot(this.nbtFilter);
+            return uncompressed.setIndex(start, end);
+        } catch (Throwable t) {
+            uncompressed.release();
+            throw t;
+        }
+    }
+
+    /**
+     * Decodes an entire chunk from its decompressed NBT data for caching.
+     *
+     * @param uncompressed the chunk's decompressed NBT data. The buffer's reader index will not be modified, and it will not be released
+     * @return the cached chunk
+     */
+    protected AnvilCachedChunk decode(@NonNull ByteBuf uncompressed) throws IOException {
+        CompoundTag tag = NBTFormat.BIG_ENDIAN.readCompound(DataIn.wrap(uncompressed.duplicate(), false), this.nbtOptions);
+        try {
             int dataVersion = tag.getInt("DataVersion", 0);
             JavaVersion version = dataVersion < DataVersion.DATA_15w32a ? JavaVersion.pre15w32a() : JavaVersion.fromDataVersion(dataVersion);
             return this.readOnly
-                    ? new AnvilCachedChunk.ReadOnly(tag, version, this.fixers, this.world)
+                    ? this.lazySections
+                            ? new AnvilCachedChunk.LazyReadOnly(tag, version, this.fixers, this.world, this.decodeProfile)
+                            : new AnvilCachedChunk.ReadOnly(tag, version, this.fixers, this.world, this.decodeProfile)
                     : null; //TODO
         } finally {
-            if (tag != null) {
-                AllocatedNBTHelper.release(tag);
-            }
+            AllocatedNBTHelper.release(tag);
         }
     }
 
+    protected AnvilCachedChunk empty() {
+        return this.readOnly
+                ? new AnvilCachedChunk.ReadOnlyEmpty()
+                : null; //TODO
+    }
+
     public interface ChunkUpdater extends LongObjObjFunction<AnvilCachedChunk, AnvilCachedChunk> {
         @Override
         default AnvilCachedChunk apply(long l, AnvilCachedChunk chunk) {
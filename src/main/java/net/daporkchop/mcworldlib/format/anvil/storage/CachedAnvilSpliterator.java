@@ -43,36 +43,52 @@ import static net.daporkchop.lib.common.util.PValidation.*;
 public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
     protected final AnvilWorldStorage storage;
     protected final File[] regions;
+    protected final long modifiedSince;
     protected int index;
     protected int fence;
 
     protected Vec2i region;
+    protected long[] presence;
     protected int chunkX;
     protected int chunkZ;
 
     public CachedAnvilSpliterator(@NonNull AnvilWorldStorage storage) {
+        this(storage, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param storage       the {@link AnvilWorldStorage} to iterate over
+     * @param modifiedSince if not {@link Long#MIN_VALUE}, only chunks which have been modified since the given time (in milliseconds since the UNIX
+     *                      epoch) will be returned
+     */
+    public CachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, long modifiedSince) {
         storage.retain();
         this.storage = storage;
-        this.regions = storage.listRegions();
+        this.modifiedSince = modifiedSince;
+        this.regions = storage.listRegions(modifiedSince);
         this.index = 0;
         this.fence = this.regions.length;
     }
 
-    protected CachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
+    protected CachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
         storage.retain();
         this.storage = storage;
+        this.modifiedSince = modifiedSince;
         this.regions = regions;
         this.index = index;
         this.fence = fence;
     }
 
-    protected boolean nextRegion() {
+    protected boolean nextRegion() throws IOException {
         checkState(this.region == null);
         if (this.index < this.fence) {
             String file = this.regions[this.index++].getName();
             Matcher matcher = RegionConstants.REGION_PATTERN.matcher(file);
             checkState(matcher.matches(), file);
             this.region = new Vec2i(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            this.presence = this.modifiedSince == Long.MIN_VALUE
+                    ? this.storage.regionCache.presenceMask(this.region.getX(), this.region.getY())
+                    : this.storage.regionCache.modifiedSince(this.region.getX(), this.region.getY(), this.modifiedSince);
             this.chunkX = this.chunkZ = 0; //reset chunk positions
             return true;
         } else {
@@ -85,9 +101,11 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
             while (this.region != null || this.nextRegion()) {
                 for (; this.chunkX < 32; this.chunkX++, this.chunkZ = 0) { //try to find the next chunk
                     while (this.chunkZ < 32) {
+                        int i = (this.chunkZ << 5) | this.chunkX;
                         int chunkX = (this.region.getX() << 5) | this.chunkX;
                         int chunkZ = (this.region.getY() << 5) | this.chunkZ++;
-                        if (this.storage.prefetch(chunkX, chunkZ)) {
+                        if ((this.presence[i >> 6] & (1L << i)) != 0L //skip chunks which aren't present without having to load them
+                            && this.storage.prefetch(chunkX, chunkZ)) {
                             return new Vec2i(chunkX, chunkZ);
                         }
                     }
@@ -95,6 +113,7 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
 
                 //if we got this far, the region has been completed, so close it
                 this.region = null;
+                this.presence = null;
             }
 
             //there is nothing left, release storage
@@ -115,7 +134,7 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
         int low = this.index;
         int high = this.fence;
         int mid = (low + high) >>> 1;
-        return low < mid ? this.sub(this.storage, this.regions, this.fence = mid, high) : null;
+        return low < mid ? this.sub(this.storage, this.modifiedSince, this.regions, this.fence = mid, high) : null;
     }
 
     @Override
@@ -131,7 +150,7 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
     @Override
     public abstract boolean tryAdvance(Consumer<? super T> action);
 
-    protected abstract Spliterator<T> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence);
+    protected abstract Spliterator<T> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence);
 
     /**
      * Implementation of a {@link Spliterator} over the chunks in an Anvil world.
@@ -143,8 +162,12 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
             super(storage);
         }
 
-        protected OfChunk(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            super(storage, regions, index, fence);
+        public OfChunk(@NonNull AnvilWorldStorage storage, long modifiedSince) {
+            super(storage, modifiedSince);
+        }
+
+        protected OfChunk(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            super(storage, modifiedSince, regions, index, fence);
         }
 
         @Override
@@ -167,8 +190,8 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
         }
 
         @Override
-        protected Spliterator<Chunk> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            return new OfChunk(storage, regions, index, fence);
+        protected Spliterator<Chunk> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            return new OfChunk(storage, modifiedSince, regions, index, fence);
         }
     }
 
@@ -185,8 +208,12 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
             super(storage);
         }
 
-        protected OfSection(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            super(storage, regions, index, fence);
+        public OfSection(@NonNull AnvilWorldStorage storage, long modifiedSince) {
+            super(storage, modifiedSince);
+        }
+
+        protected OfSection(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            super(storage, modifiedSince, regions, index, fence);
         }
 
         protected boolean nextChunk() {
@@ -221,8 +248,8 @@ public abstract class CachedAnvilSpliterator<T> implements Spliterator<T> {
         }
 
         @Override
-        protected Spliterator<Section> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            return new OfSection(storage, regions, index, fence);
+        protected Spliterator<Section> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            return new OfSection(storage, modifiedSince, regions, index, fence);
         }
     }
 }
@@ -22,6 +22,7 @@ package net.daporkchop.mcworldlib.format.anvil.storage;
 
 import lombok.NonNull;
 import net.daporkchop.mcworldlib.format.anvil.AnvilSaveOptions;
+import net.daporkchop.mcworldlib.format.anvil.region.RawChunk;
 import net.daporkchop.mcworldlib.format.anvil.region.RegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.impl.MemoryMappedRegionFile;
 import net.daporkchop.mcworldlib.format.anvil.region.impl.OverclockedRegionFile;
@@ -45,24 +46,41 @@ import static net.daporkchop.lib.common.util.PValidation.*;
 public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
     protected final AnvilWorldStorage storage;
     protected final File[] regions;
+    protected final long modifiedSince;
     protected int index;
     protected int fence;
 
+    //the region which is currently being iterated over, and a bitmap of the chunks in it which will be returned
     protected RegionFile region;
-    protected int chunkX;
-    protected int chunkZ;
+    protected long[] mask;
+    protected int row;
+
+    //the chunks in the current row which haven't been returned yet
+    protected RawChunk[] chunks;
+    protected int chunkIndex;
 
     public UncachedAnvilSpliterator(@NonNull AnvilWorldStorage storage) {
+        this(storage, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param storage       the {@link AnvilWorldStorage} to iterate over
+     * @param modifiedSince if not {@link Long#MIN_VALUE}, only chunks which have been modified since the given time (in milliseconds since the UNIX
+     *                      epoch) will be returned
+     */
+    public UncachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, long modifiedSince) {
         storage.retain();
         this.storage = storage;
-        this.regions = storage.listRegions();
+        this.modifiedSince = modifiedSince;
+        this.regions = storage.listRegions(modifiedSince);
         this.index = 0;
         this.fence = this.regions.length;
     }
 
-    protected UncachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
+    protected UncachedAnvilSpliterator(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
         storage.retain();
         this.storage = storage;
+        this.modifiedSince = modifiedSince;
         this.regions = regions;
         this.index = index;
         this.fence = fence;
@@ -72,34 +90,90 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
         checkState(this.region == null);
         if (this.index < this.fence) {
             File file = this.regions[this.index++];
-            this.region = this.storage.options().get(AnvilSaveOptions.MMAP_REGIONS)
-                          ? new MemoryMappedRegionFile(file, this.storage.options().get(AnvilSaveOptions.PREFETCH_REGIONS))
-                          : new OverclockedRegionFile(file, this.storage.options().get(SaveOptions.NETTY_ALLOC), true);
-            this.chunkX = this.chunkZ = 0; //reset chunk positions
+            RegionFile region = this.storage.options().get(AnvilSaveOptions.MMAP_REGIONS)
+                                ? new MemoryMappedRegionFile(file, this.storage.options().get(AnvilSaveOptions.PREFETCH_REGIONS))
+                                : new OverclockedRegionFile(file, this.storage.options().get(SaveOptions.NETTY_ALLOC), true);
+            try {
+                this.mask = this.modifiedSince == Long.MIN_VALUE ? region.presenceMask() : region.modifiedSince(this.modifiedSince);
+            } catch (Throwable t) {
+                region.close();
+                throw t;
+            }
+            this.region = region;
+            this.row = 0; //reset row position
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Reads the next row of chunks in the current region.
+     * <p>
+     * Each row is read at once, which allows its chunks to be read in the order they're stored on disk rather than seeking around, while ensuring that
+     * no more than 32 chunks are ever buffered at a time.
+     *
+     * @return whether or not a row was read. If {@code false}, the current region has been completed
+     */
+    protected boolean nextRow() throws IOException {
+        checkState(this.chunks == null);
+        while (this.row < 32) {
+            int z = this.row++;
+            int rowMask = (int) (this.mask[z >> 1] >>> ((z & 1) << 5));
+            if (rowMask != 0) {
+                int[] coords = new int[Integer.bitCount(rowMask) << 1];
+                for (int x = 0, j = 0; x < 32; x++) {
+                    if ((rowMask & (1 << x)) != 0) {
+                        coords[j++] = x;
+                        coords[j++] = z;
+                    }
+                }
+                this.chunks = this.region.readMany(coords);
+                this.chunkIndex = 0; //reset chunk position
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void closeRegion() throws IOException {
+        try {
+            if (this.chunks != null) { //release any raw chunks which haven't been decoded yet
+                for (RawChunk rawChunk : this.chunks) {
+                    if (rawChunk != null) {
+                        rawChunk.release();
+                    }
+                }
+                this.chunks = null;
+            }
+        } finally {
+            this.region.close();
+            this.region = null;
+            this.mask = null;
+        }
+    }
+
     protected AnvilCachedChunk next() {
         try {
             while (this.region != null || this.nextRegion()) {
-                for (; this.chunkX < 32; this.chunkX++, this.chunkZ = 0) { //try to find the next chunk
-                    while (this.chunkZ < 32) {
-                        AnvilCachedChunk chunk = this.storage.load(this.region, this.chunkX, this.chunkZ++);
-                        if (chunk != null) {
-                            return chunk;
+                while (this.chunks != null || this.nextRow()) {
+                    while (this.chunkIndex < this.chunks.length) { //try to find the next chunk
+                        RawChunk rawChunk = this.chunks[this.chunkIndex];
+                        this.chunks[this.chunkIndex++] = null;
+                        if (rawChunk != null) {
+                            AnvilCachedChunk chunk = this.storage.load(rawChunk);
+                            if (chunk != null) {
+                                return chunk;
+                            }
                         }
                     }
-                }
 
-                //if we got this far, the region has been completed, so close it
-                try {
-                    this.region.close();
-                } finally {
-                    this.region = null;
+                    //if we got this far, the row has been completed
+                    this.chunks = null;
                 }
+
+                //if we got this far, the region has been completed
+                this.closeRegion();
             }
 
             //there is nothing left, release storage
@@ -107,6 +181,9 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
             return null;
         } catch (IOException e) {
             try {
+                if (this.region != null) {
+                    this.closeRegion();
+                }
                 this.storage.release(); //make sure that storage is released again in case of exception
             } finally {
                 PUnsafe.throwException(e);
@@ -120,7 +197,7 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
         int low = this.index;
         int high = this.fence;
         int mid = (low + high) >>> 1;
-        return low < mid ? this.sub(this.storage, this.regions, this.fence = mid, high) : null;
+        return low < mid ? this.sub(this.storage, this.modifiedSince, this.regions, this.fence = mid, high) : null;
     }
 
     @Override
@@ -136,7 +213,7 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
     @Override
     public abstract boolean tryAdvance(Consumer<? super T> action);
 
-    protected abstract Spliterator<T> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence);
+    protected abstract Spliterator<T> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence);
 
     /**
      * Implementation of a {@link Spliterator} over the chunks in an Anvil world.
@@ -148,8 +225,12 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
             super(storage);
         }
 
-        protected OfChunk(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            super(storage, regions, index, fence);
+        public OfChunk(@NonNull AnvilWorldStorage storage, long modifiedSince) {
+            super(storage, modifiedSince);
+        }
+
+        protected OfChunk(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            super(storage, modifiedSince, regions, index, fence);
         }
 
         @Override
@@ -170,8 +251,8 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
         }
 
         @Override
-        protected Spliterator<Chunk> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            return new OfChunk(storage, regions, index, fence);
+        protected Spliterator<Chunk> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            return new OfChunk(storage, modifiedSince, regions, index, fence);
         }
     }
 
@@ -188,8 +269,12 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
             super(storage);
         }
 
-        protected OfSection(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            super(storage, regions, index, fence);
+        public OfSection(@NonNull AnvilWorldStorage storage, long modifiedSince) {
+            super(storage, modifiedSince);
+        }
+
+        protected OfSection(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            super(storage, modifiedSince, regions, index, fence);
         }
 
         protected boolean nextChunk() {
@@ -225,8 +310,8 @@ public abstract class UncachedAnvilSpliterator<T> implements Spliterator<T> {
         }
 
         @Override
-        protected Spliterator<Section> sub(@NonNull AnvilWorldStorage storage, @NonNull File[] regions, int index, int fence) {
-            return new OfSection(storage, regions, index, fence);
+        protected Spliterator<Section> sub(@NonNull AnvilWorldStorage storage, long modifiedSince, @NonNull File[] regions, int index, int fence) {
+            return new OfSection(storage, modifiedSince, regions, index, fence);
         }
     }
 }
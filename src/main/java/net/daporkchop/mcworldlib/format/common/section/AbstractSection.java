@@ -30,6 +30,7 @@ import net.daporkchop.lib.primitive.map.open.IntObjOpenHashMap;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
 import net.daporkchop.mcworldlib.block.access.BlockAccess;
 import net.daporkchop.mcworldlib.format.common.nibble.NibbleArray;
+import net.daporkchop.mcworldlib.util.nbt.AllocatedNBTHelper;
 import net.daporkchop.mcworldlib.version.MinecraftVersion;
 import net.daporkchop.mcworldlib.world.section.Section;
 import net.daporkchop.mcworldlib.world.storage.BlockStorage;
@@ -127,6 +128,24 @@ public abstract class AbstractSection extends AbstractRefCounted implements Sect
         }
     }
 
+    @Override
+    public long retainedBytes() {
+        long bytes = 0L;
+        if (this.blockLight != null) {
+            bytes += NibbleArray.PACKED_SIZE;
+        }
+        if (this.skyLight != null) {
+            bytes += NibbleArray.PACKED_SIZE;
+        }
+        for (CompoundTag tileEntity : this.tileEntities.values()) {
+            bytes += AllocatedNBTHelper.retainedBytes(tileEntity);
+        }
+        for (CompoundTag entity : this.entities) {
+            bytes += AllocatedNBTHelper.retainedBytes(entity);
+        }
+        return bytes;
+    }
+
     //
     //
     // blockaccess methods
@@ -59,6 +59,11 @@ public class SingleLayerFlattenedSection extends AbstractSection implements Flat
         return this.blocks;
     }
 
+    @Override
+    public long retainedBytes() {
+        return super.retainedBytes() + this.blocks.retainedBytes();
+    }
+
     @Override
     public BlockState getBlockState(int x, int y, int z) {
         return this.blocks.getBlockState(x, y, z);
@@ -60,6 +60,11 @@ public class DefaultLegacySection extends AbstractSection implements LegacySecti
         return this.blocks;
     }
 
+    @Override
+    public long retainedBytes() {
+        return super.retainedBytes() + this.blocks.retainedBytes();
+    }
+
     @Override
     public int getBlockLegacyId(int x, int y, int z) {
         return this.blocks.getBlockLegacyId(x, y, z);
@@ -22,15 +22,21 @@ package net.daporkchop.mcworldlib.format.common.storage.flattened;
 
 import lombok.NonNull;
 import net.daporkchop.lib.binary.bit.BitArray;
+import net.daporkchop.lib.common.math.BinMath;
 import net.daporkchop.lib.common.pool.array.ArrayAllocator;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
 import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.block.BlockStateTable;
+import net.daporkchop.mcworldlib.block.java.JavaBlockStateTable;
 import net.daporkchop.mcworldlib.format.common.storage.AbstractBlockStorage;
-import net.daporkchop.mcworldlib.util.palette.state.ArrayStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.IdentityStatePalette;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
 import net.daporkchop.mcworldlib.world.storage.BlockStorage;
 import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
 
+import java.util.Arrays;
+
 import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
@@ -43,7 +49,9 @@ public abstract class AbstractHeapFlattenedBlockStorage extends AbstractBlockSto
     }
 
     protected final ArrayAllocator<long[]> alloc;
+    protected final JavaVersion version; //the version whose block state table is used as the global palette, or null for the latest one
     protected BitArray array;
+    protected long[] words; //the array backing this.array, or null if it isn't known
     protected StatePalette palette;
     protected int bits;
 
@@ -52,8 +60,14 @@ public abstract class AbstractHeapFlattenedBlockStorage extends AbstractBlockSto
     }
 
     public AbstractHeapFlattenedBlockStorage(ArrayAllocator<long[]> alloc) {
+        this(alloc, (JavaVersion) null);
+    }
+
+    public AbstractHeapFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version) {
         this.alloc = alloc;
-        this.setBits(4);
+        this.version = version;
+        this.palette = StatePalette.create(1 << (this.bits = 4));
+        this.array = this.wrap(this.bits, this.words = this.allocateWords(this.bits));
     }
 
     public AbstractHeapFlattenedBlockStorage(@NonNull BitArray array, @NonNull StatePalette palette) {
@@ -62,28 +76,25 @@ public abstract class AbstractHeapFlattenedBlockStorage extends AbstractBlockSto
 
     public AbstractHeapFlattenedBlockStorage(ArrayAllocator<long[]> alloc, @NonNull BitArray array, @NonNull StatePalette palette) {
         this.alloc = alloc;
+        this.version = null;
         checkArg(array.size() >= 4096, "array (%d) must be at least 4096 entries!", array.size());
         this.array = array;
         this.palette = palette;
+        this.bits = array.bits();
     }
 
-    protected void setBits(int bits) {
-        if (bits == this.bits) {
-            return;
-        }
-
-        if (bits <= 4) {
-            this.palette = new ArrayStatePalette(1 << (this.bits = 4));
-        } else if (bits < 9) {
-            this.palette = new ArrayStatePalette(1 << (this.bits = bits)); //vanilla uses a hashmap for this, i doubt it's much faster though...
-        } else {
-            //this.bits = BinMath.getNumBitsNeededFor(this.localRegistry.maxRuntimeId() + 1);
-            this.bits = 12; //TODO: get the number of required bits from somewhere
-            //this.palette = IdentityPalette.INSTANCE;
-            throw new UnsupportedOperationException("identity palette");
-        }
+    public AbstractHeapFlattenedBlockStorage(ArrayAllocator<long[]> alloc, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        this(alloc, null, bits, words, palette);
+    }
 
-        this.array = this.createArray();
+    public AbstractHeapFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        this.alloc = alloc;
+        this.version = version;
+        checkArg(words.length >= this.wordsLength(bits), "words (%d) must be at least %d entries!", words.length, this.wordsLength(bits));
+        this.bits = bits;
+        this.words = words;
+        this.array = this.wrap(bits, words);
+        this.palette = palette;
     }
 
     @Override
@@ -95,36 +106,193 @@ public abstract class AbstractHeapFlattenedBlockStorage extends AbstractBlockSto
     }
 
     @Override
-    public void setBlockState(int x, int y, int z, BlockState state) {
+    public void setBlockState(int x, int y, int z, @NonNull BlockState state) {
         int i = index(x, y, z);
 
         int paletteId = this.palette.stateToId(state);
         if (paletteId < 0) {
-            this.growPalette();
+            this.growPalette(state);
             paletteId = this.palette.stateToId(state);
+            checkState(paletteId >= 0, "block state %s could not be added to the palette!", state);
         }
 
         this.array.set(i, paletteId);
     }
 
-    private void growPalette() {
+    /**
+     * Replaces the palette with a larger one which is able to contain the given block state in addition to all of the states currently in use.
+     * <p>
+     * The new palette and data array are fully built before either of them is swapped in, so this storage is left unmodified if anything goes
+     * wrong.
+     *
+     * @param state the block state which needs to be added
+     */
+    private void growPalette(@NonNull BlockState state) {
         StatePalette oldPalette = this.palette;
         BitArray oldArray = this.array;
 
-        this.setBits(this.bits + 1);
+        int bits;
+        StatePalette palette;
+        if (oldPalette instanceof IdentityStatePalette) {
+            //the state isn't present in the global palette (e.g. because it's from a newer version than the global table), so fall back to a local
+            // palette which is large enough to hold every state currently in use
+            boolean[] used = new boolean[oldPalette.size()];
+            int distinct = 1; //count the new state as well
+            for (int i = 0; i < 4096; i++) {
+                int id = oldArray.get(i);
+                if (!used[id]) {
+                    used[id] = true;
+                    distinct++;
+                }
+            }
+            bits = Math.max(BinMath.getNumBitsNeededFor(distinct - 1), 9);
+            palette = StatePalette.create(1 << bits);
+        } else if (this.bits + 1 < 9 || !this.allPresentGlobally(oldPalette, state)) {
+            bits = Math.max(this.bits + 1, 4);
+            palette = StatePalette.create(1 << bits); //larger palettes are hashed so that stateToId() doesn't need to scan
+        } else { //there are too many states for a local palette to be worthwhile, store the global state IDs directly
+            BlockStateTable table = this.globalTable();
+            bits = Math.max(table.bits(), 9);
+            palette = new IdentityStatePalette(table);
+        }
 
-        for (int i = 0; i < 4096; i++) {
-            this.array.set(i, this.palette.stateToId(oldPalette.idToState(oldArray.get(i))));
+        long[] words = this.allocateWords(bits);
+        BitArray array = this.wrap(bits, words);
+        try {
+            for (int i = 0; i < 4096; i++) {
+                BlockState oldState = oldPalette.idToState(oldArray.get(i));
+                int id = palette.stateToId(oldState);
+                checkState(id >= 0, "block state %s could not be added to the palette!", oldState);
+                array.set(i, id);
+            }
+            checkState(palette.stateToId(state) >= 0, "block state %s could not be added to the palette!", state);
+        } catch (Throwable t) {
+            array.release();
+            throw t;
         }
 
+        this.bits = bits;
+        this.palette = palette;
+        this.words = words;
+        this.array = array;
         oldArray.release();
     }
 
-    protected abstract BitArray createArray();
+    /**
+     * Checks whether the given state and every state in the given local palette have an ID in the global palette.
+     */
+    private boolean allPresentGlobally(@NonNull StatePalette palette, @NonNull BlockState state) {
+        BlockStateTable table = this.globalTable();
+        if (table.stateToId(state) < 0) {
+            return false;
+        }
+        for (int id = 0, size = palette.size(); id < size; id++) {
+            BlockState paletteState = palette.idToState(id);
+            if (paletteState != null && table.stateToId(paletteState) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Allocates a zero-filled {@code long[]} large enough to store 4096 entries of the given size in this storage's layout.
+     *
+     * @param bits the number of bits per entry
+     * @return the {@code long[]}
+     */
+    protected long[] allocateWords(int bits) {
+        int length = this.wordsLength(bits);
+        if (this.alloc != null) {
+            long[] words = this.alloc.atLeast(length);
+            Arrays.fill(words, 0, length, 0L); //pooled arrays may contain garbage
+            return words;
+        } else {
+            return new long[length];
+        }
+    }
+
+    /**
+     * @param bits the number of bits per entry
+     * @return the number of {@code long}s needed to store 4096 entries of the given size in this storage's layout
+     */
+    protected abstract int wordsLength(int bits);
+
+    /**
+     * Wraps the given {@code long[]} into a {@link BitArray} using this storage's layout.
+     *
+     * @param bits  the number of bits per entry
+     * @param words the {@code long[]}
+     * @return the {@link BitArray}
+     */
+    protected abstract BitArray wrap(int bits, @NonNull long[] words);
+
+    protected abstract void unpack(@NonNull long[] words, @NonNull int[] dst);
+
+    protected abstract void unpack(@NonNull long[] words, @NonNull short[] dst);
+
+    protected abstract void pack(@NonNull int[] src, @NonNull long[] words);
+
+    protected abstract void pack(@NonNull short[] src, @NonNull long[] words);
+
+    @Override
+    public void getPaletteIds(@NonNull int[] dst) {
+        if (this.words != null) {
+            this.unpack(this.words, dst);
+        } else { //we don't have access to the raw data
+            FlattenedBlockStorage.super.getPaletteIds(dst);
+        }
+    }
+
+    @Override
+    public void getPaletteIds(@NonNull short[] dst) {
+        if (this.words != null) {
+            this.unpack(this.words, dst);
+        } else {
+            FlattenedBlockStorage.super.getPaletteIds(dst);
+        }
+    }
+
+    @Override
+    public void setPaletteIds(@NonNull int[] src) {
+        if (this.words != null) {
+            PaletteIdPacking.checkIds(src, this.bits);
+            this.pack(src, this.words);
+        } else {
+            FlattenedBlockStorage.super.setPaletteIds(src);
+        }
+    }
+
+    @Override
+    public void setPaletteIds(@NonNull short[] src) {
+        if (this.words != null) {
+            PaletteIdPacking.checkIds(src, this.bits);
+            this.pack(src, this.words);
+        } else {
+            FlattenedBlockStorage.super.setPaletteIds(src);
+        }
+    }
+
+    /**
+     * @return the {@link BlockStateTable} to use for the global palette once this storage contains too many distinct block states for a local palette.
+     * If any of the states aren't present in the table, a large local palette is used instead
+     */
+    protected BlockStateTable globalTable() {
+        return this.version != null ? JavaBlockStateTable.forVersion(this.version) : JavaBlockStateTable.latest();
+    }
 
     @Override
     public abstract FlattenedBlockStorage clone();
 
+    @Override
+    public long retainedBytes() {
+        long bytes = this.array != null ? (this.words != null ? this.words.length : this.wordsLength(this.bits)) * 8L : 0L;
+        if (!(this.palette instanceof IdentityStatePalette)) { //the global palette is shared, a local one costs roughly a reference per entry
+            bytes += this.palette.size() * 8L;
+        }
+        return bytes;
+    }
+
     @Override
     public FlattenedBlockStorage retain() throws AlreadyReleasedException {
         super.retain();
@@ -23,14 +23,12 @@ package net.daporkchop.mcworldlib.format.common.storage.flattened;
 import lombok.NonNull;
 import net.daporkchop.lib.binary.bit.BitArray;
 import net.daporkchop.lib.binary.bit.packed.PackedBitArray;
-import net.daporkchop.lib.common.math.PMath;
 import net.daporkchop.lib.common.pool.array.ArrayAllocator;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
 import net.daporkchop.mcworldlib.world.storage.BlockStorage;
 import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
 
-import static net.daporkchop.lib.common.util.PValidation.*;
-
 /**
  * Implementation of {@link BlockStorage} which uses a palette.
  *
@@ -45,6 +43,10 @@ public class HeapPackedFlattenedBlockStorage extends AbstractHeapFlattenedBlockS
         super(alloc);
     }
 
+    public HeapPackedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version) {
+        super(alloc, version);
+    }
+
     public HeapPackedFlattenedBlockStorage(@NonNull PackedBitArray array, @NonNull StatePalette palette) {
         super(array, palette);
     }
@@ -53,11 +55,42 @@ public class HeapPackedFlattenedBlockStorage extends AbstractHeapFlattenedBlockS
         super(alloc, array, palette);
     }
 
+    public HeapPackedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        super(alloc, bits, words, palette);
+    }
+
+    public HeapPackedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        super(alloc, version, bits, words, palette);
+    }
+
+    @Override
+    protected int wordsLength(int bits) {
+        return PaletteIdPacking.packedLength(bits);
+    }
+
+    @Override
+    protected BitArray wrap(int bits, @NonNull long[] words) {
+        return new PackedBitArray(bits, 4096, words, this.alloc);
+    }
+
+    @Override
+    protected void unpack(@NonNull long[] words, @NonNull int[] dst) {
+        PaletteIdPacking.unpackPacked(words, this.bits, dst);
+    }
+
+    @Override
+    protected void unpack(@NonNull long[] words, @NonNull short[] dst) {
+        PaletteIdPacking.unpackPacked(words, this.bits, dst);
+    }
+
+    @Override
+    protected void pack(@NonNull int[] src, @NonNull long[] words) {
+        PaletteIdPacking.packPacked(src, this.bits, words);
+    }
+
     @Override
-    protected BitArray createArray() {
-        return this.alloc != null
-                ? new PackedBitArray(this.bits, 4096, this.alloc.atLeast(toInt(PMath.roundUp(4096L * (long) this.bits, 64L) >>> 6L)))
-                : new PackedBitArray(this.bits, 4096);
+    protected void pack(@NonNull short[] src, @NonNull long[] words) {
+        PaletteIdPacking.packPacked(src, this.bits, words);
     }
 
     @Override
@@ -23,15 +23,12 @@ package net.daporkchop.mcworldlib.format.common.storage.flattened;
 import lombok.NonNull;
 import net.daporkchop.lib.binary.bit.BitArray;
 import net.daporkchop.lib.binary.bit.padded.PaddedBitArray;
-import net.daporkchop.lib.common.math.PMath;
 import net.daporkchop.lib.common.pool.array.ArrayAllocator;
-import net.daporkchop.mcworldlib.format.java.storage.NullablePaddedBitArray;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
 import net.daporkchop.mcworldlib.world.storage.BlockStorage;
 import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
 
-import static net.daporkchop.lib.common.util.PValidation.*;
-
 /**
  * Implementation of {@link BlockStorage} which uses a palette.
  *
@@ -46,6 +43,10 @@ public class HeapPaddedFlattenedBlockStorage extends AbstractHeapFlattenedBlockS
         super(alloc);
     }
 
+    public HeapPaddedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version) {
+        super(alloc, version);
+    }
+
     public HeapPaddedFlattenedBlockStorage(@NonNull BitArray array, @NonNull StatePalette palette) {
         super(array, palette);
     }
@@ -55,11 +56,42 @@ public class HeapPaddedFlattenedBlockStorage extends AbstractHeapFlattenedBlockS
         super(alloc, array, palette);
     }
 
+    public HeapPaddedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        super(alloc, bits, words, palette);
+    }
+
+    public HeapPaddedFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version, int bits, @NonNull long[] words, @NonNull StatePalette palette) {
+        super(alloc, version, bits, words, palette);
+    }
+
+    @Override
+    protected int wordsLength(int bits) {
+        return PaletteIdPacking.paddedLength(bits);
+    }
+
+    @Override
+    protected BitArray wrap(int bits, @NonNull long[] words) {
+        return new PaddedBitArray(bits, 4096, words, this.alloc);
+    }
+
+    @Override
+    protected void unpack(@NonNull long[] words, @NonNull int[] dst) {
+        PaletteIdPacking.unpackPadded(words, this.bits, dst);
+    }
+
+    @Override
+    protected void unpack(@NonNull long[] words, @NonNull short[] dst) {
+        PaletteIdPacking.unpackPadded(words, this.bits, dst);
+    }
+
+    @Override
+    protected void pack(@NonNull int[] src, @NonNull long[] words) {
+        PaletteIdPacking.packPadded(src, this.bits, words);
+    }
+
     @Override
-    protected BitArray createArray() {
-        return this.alloc != null
-                ? new PaddedBitArray(this.bits, 4096, this.alloc.atLeast(toInt(PMath.roundUp(4096L * (long) this.bits, 64L) >>> 6L)))
-                : new PaddedBitArray(this.bits, 4096);
+    protected void pack(@NonNull short[] src, @NonNull long[] words) {
+        PaletteIdPacking.packPadded(src, this.bits, words);
     }
 
     @Override
@@ -0,0 +1,457 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.common.storage.flattened;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import net.daporkchop.mcworldlib.world.storage.BlockStorage;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.world.storage.BlockStorage.*;
+
+/**
+ * Bulk conversion between the bit-packed palette IDs of a block storage and plain {@code int[]}/{@code short[]} arrays.
+ * <p>
+ * Two layouts are supported:
+ * <ul>
+ *     <li>padded (1.16+): each {@code long} contains {@code 64 / bits} entries, and entries never span two {@code long}s</li>
+ *     <li>packed (1.13-1.15): the entries form a single contiguous bit stream, so some entries span two {@code long}s</li>
+ * </ul>
+ * All methods operate on exactly {@link BlockStorage#NUM_BLOCKS} entries, and process the data one {@code long} at a time rather than computing
+ * the position of each entry individually. The {@code int[]} variants have specialized loops for the common widths of 4, 5, 6 and 8 bits.
+ * <p>
+ * Entries in {@code short[]}s are treated as unsigned.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class PaletteIdPacking {
+    /**
+     * Gets the number of {@code long}s needed to store {@link BlockStorage#NUM_BLOCKS} entries in the padded layout.
+     *
+     * @param bits the number of bits per entry
+     * @return the number of {@code long}s
+     */
+    public int paddedLength(int bits) {
+        checkBits(bits);
+        int perWord = Long.SIZE / bits;
+        return (NUM_BLOCKS + perWord - 1) / perWord;
+    }
+
+    /**
+     * Gets the number of {@code long}s needed to store {@link BlockStorage#NUM_BLOCKS} entries in the packed layout.
+     *
+     * @param bits the number of bits per entry
+     * @return the number of {@code long}s
+     */
+    public int packedLength(int bits) {
+        checkBits(bits);
+        return (NUM_BLOCKS * bits + Long.SIZE - 1) >>> 6;
+    }
+
+    private void checkBits(int bits) {
+        checkArg(bits >= 1 && bits <= 16, "bits (%d) must be in range [1-16]", bits);
+    }
+
+    private void checkArrays(int bits, long[] words, int wordsLength, int length) {
+        checkBits(bits);
+        checkArg(words.length >= wordsLength, "words (%d) must be at least %d entries!", words.length, wordsLength);
+        checkArg(length >= NUM_BLOCKS, "array (%d) must be at least %d entries!", length, NUM_BLOCKS);
+    }
+
+    //
+    //
+    // padded layout
+    //
+    //
+
+    public void unpackPadded(@NonNull long[] words, int bits, @NonNull int[] dst) {
+        checkArrays(bits, words, paddedLength(bits), dst.length);
+        switch (bits) {
+            case 4:
+                unpackPadded4(words, dst);
+                return;
+            case 5:
+                unpackPadded5(words, dst);
+                return;
+            case 6:
+                unpackPadded6(words, dst);
+                return;
+            case 8:
+                unpackPadded8(words, dst);
+                return;
+        }
+
+        int perWord = Long.SIZE / bits;
+        int mask = (1 << bits) - 1;
+        for (int i = 0, w = 0; i < NUM_BLOCKS; w++) {
+            long word = words[w];
+            for (int end = Math.min(i + perWord, NUM_BLOCKS); i < end; i++, word >>>= bits) {
+                dst[i] = (int) word & mask;
+            }
+        }
+    }
+
+    private void unpackPadded4(long[] words, int[] dst) {
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 16, w++) {
+            long word = words[w];
+            for (int j = 0; j < 16; j++) {
+                dst[i + j] = (int) (word >>> (j << 2)) & 0xF;
+            }
+        }
+    }
+
+    private void unpackPadded5(long[] words, int[] dst) {
+        int i = 0;
+        int w = 0;
+        for (; i <= NUM_BLOCKS - 12; i += 12, w++) {
+            long word = words[w];
+            for (int j = 0; j < 12; j++) {
+                dst[i + j] = (int) (word >>> (j * 5)) & 0x1F;
+            }
+        }
+        for (long word = words[w]; i < NUM_BLOCKS; i++, word >>>= 5) { //4096 isn't a multiple of 12, the final word is only partially used
+            dst[i] = (int) word & 0x1F;
+        }
+    }
+
+    private void unpackPadded6(long[] words, int[] dst) {
+        int i = 0;
+        int w = 0;
+        for (; i <= NUM_BLOCKS - 10; i += 10, w++) {
+            long word = words[w];
+            for (int j = 0; j < 10; j++) {
+                dst[i + j] = (int) (word >>> (j * 6)) & 0x3F;
+            }
+        }
+        for (long word = words[w]; i < NUM_BLOCKS; i++, word >>>= 6) { //4096 isn't a multiple of 10, the final word is only partially used
+            dst[i] = (int) word & 0x3F;
+        }
+    }
+
+    private void unpackPadded8(long[] words, int[] dst) {
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 8, w++) {
+            long word = words[w];
+            for (int j = 0; j < 8; j++) {
+                dst[i + j] = (int) (word >>> (j << 3)) & 0xFF;
+            }
+        }
+    }
+
+    public void unpackPadded(@NonNull long[] words, int bits, @NonNull short[] dst) {
+        checkArrays(bits, words, paddedLength(bits), dst.length);
+
+        int perWord = Long.SIZE / bits;
+        int mask = (1 << bits) - 1;
+        for (int i = 0, w = 0; i < NUM_BLOCKS; w++) {
+            long word = words[w];
+            for (int end = Math.min(i + perWord, NUM_BLOCKS); i < end; i++, word >>>= bits) {
+                dst[i] = (short) ((int) word & mask);
+            }
+        }
+    }
+
+    public void packPadded(@NonNull int[] src, int bits, @NonNull long[] words) {
+        checkArrays(bits, words, paddedLength(bits), src.length);
+        switch (bits) {
+            case 4:
+                packPadded4(src, words);
+                return;
+            case 5:
+                packPadded5(src, words);
+                return;
+            case 6:
+                packPadded6(src, words);
+                return;
+            case 8:
+                packPadded8(src, words);
+                return;
+        }
+
+        int perWord = Long.SIZE / bits;
+        long mask = (1L << bits) - 1L;
+        for (int i = 0, w = 0; i < NUM_BLOCKS; w++) {
+            long word = 0L;
+            for (int end = Math.min(i + perWord, NUM_BLOCKS), shift = 0; i < end; i++, shift += bits) {
+                word |= (src[i] & mask) << shift;
+            }
+            words[w] = word;
+        }
+    }
+
+    private void packPadded4(int[] src, long[] words) {
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 16, w++) {
+            long word = 0L;
+            for (int j = 0; j < 16; j++) {
+                word |= (src[i + j] & 0xFL) << (j << 2);
+            }
+            words[w] = word;
+        }
+    }
+
+    private void packPadded5(int[] src, long[] words) {
+        int i = 0;
+        int w = 0;
+        for (; i <= NUM_BLOCKS - 12; i += 12, w++) {
+            long word = 0L;
+            for (int j = 0; j < 12; j++) {
+                word |= (src[i + j] & 0x1FL) << (j * 5);
+            }
+            words[w] = word;
+        }
+        long word = 0L;
+        for (int shift = 0; i < NUM_BLOCKS; i++, shift += 5) {
+            word |= (src[i] & 0x1FL) << shift;
+        }
+        words[w] = word;
+    }
+
+    private void packPadded6(int[] src, long[] words) {
+        int i = 0;
+        int w = 0;
+        for (; i <= NUM_BLOCKS - 10; i += 10, w++) {
+            long word = 0L;
+            for (int j = 0; j < 10; j++) {
+                word |= (src[i + j] & 0x3FL) << (j * 6);
+            }
+            words[w] = word;
+        }
+        long word = 0L;
+        for (int shift = 0; i < NUM_BLOCKS; i++, shift += 6) {
+            word |= (src[i] & 0x3FL) << shift;
+        }
+        words[w] = word;
+    }
+
+    private void packPadded8(int[] src, long[] words) {
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 8, w++) {
+            long word = 0L;
+            for (int j = 0; j < 8; j++) {
+                word |= (src[i + j] & 0xFFL) << (j << 3);
+            }
+            words[w] = word;
+        }
+    }
+
+    public void packPadded(@NonNull short[] src, int bits, @NonNull long[] words) {
+        checkArrays(bits, words, paddedLength(bits), src.length);
+
+        int perWord = Long.SIZE / bits;
+        long mask = (1L << bits) - 1L;
+        for (int i = 0, w = 0; i < NUM_BLOCKS; w++) {
+            long word = 0L;
+            for (int end = Math.min(i + perWord, NUM_BLOCKS), shift = 0; i < end; i++, shift += bits) {
+                word |= (src[i] & mask) << shift;
+            }
+            words[w] = word;
+        }
+    }
+
+    //
+    //
+    // packed layout
+    //
+    //
+
+    public void unpackPacked(@NonNull long[] words, int bits, @NonNull int[] dst) {
+        checkArrays(bits, words, packedLength(bits), dst.length);
+        switch (bits) {
+            case 4: //64 is a multiple of 4 and 8, so entries never span two words and the layout is identical to the padded one
+                unpackPadded4(words, dst);
+                return;
+            case 5:
+                unpackPacked5(words, dst);
+                return;
+            case 6:
+                unpackPacked6(words, dst);
+                return;
+            case 8:
+                unpackPadded8(words, dst);
+                return;
+        }
+
+        int mask = (1 << bits) - 1;
+        long word = words[0];
+        for (int i = 0, w = 0, shift = 0; i < NUM_BLOCKS; i++) {
+            int value = (int) (word >>> shift);
+            if ((shift += bits) >= Long.SIZE) { //advance to the next word, taking the remaining high bits of the entry from it if necessary
+                shift -= Long.SIZE;
+                if (++w < words.length) {
+                    word = words[w];
+                    if (shift != 0) {
+                        value |= (int) (word << (bits - shift));
+                    }
+                }
+            }
+            dst[i] = value & mask;
+        }
+    }
+
+    private void unpackPacked5(long[] words, int[] dst) {
+        //64 entries occupy exactly 5 words
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 64, w += 5) {
+            long a = words[w];
+            long b = words[w + 1];
+            long c = words[w + 2];
+            long d = words[w + 3];
+            long e = words[w + 4];
+            for (int j = 0; j < 12; j++) {
+                dst[i + j] = (int) (a >>> (j * 5)) & 0x1F;
+            }
+            dst[i + 12] = (int) ((a >>> 60) | (b << 4)) & 0x1F;
+            for (int j = 0; j < 12; j++) {
+                dst[i + 13 + j] = (int) (b >>> (1 + j * 5)) & 0x1F;
+            }
+            dst[i + 25] = (int) ((b >>> 61) | (c << 3)) & 0x1F;
+            for (int j = 0; j < 12; j++) {
+                dst[i + 26 + j] = (int) (c >>> (2 + j * 5)) & 0x1F;
+            }
+            dst[i + 38] = (int) ((c >>> 62) | (d << 2)) & 0x1F;
+            for (int j = 0; j < 12; j++) {
+                dst[i + 39 + j] = (int) (d >>> (3 + j * 5)) & 0x1F;
+            }
+            dst[i + 51] = (int) ((d >>> 63) | (e << 1)) & 0x1F;
+            for (int j = 0; j < 12; j++) {
+                dst[i + 52 + j] = (int) (e >>> (4 + j * 5)) & 0x1F;
+            }
+        }
+    }
+
+    private void unpackPacked6(long[] words, int[] dst) {
+        //32 entries occupy exactly 3 words
+        for (int i = 0, w = 0; i < NUM_BLOCKS; i += 32, w += 3) {
+            long a = words[w];
+            long b = words[w + 1];
+            long c = words[w + 2];
+            for (int j = 0; j < 10; j++) {
+                dst[i + j] = (int) (a >>> (j * 6)) & 0x3F;
+            }
+            dst[i + 10] = (int) ((a >>> 60) | (b << 4)) & 0x3F;
+            for (int j = 0; j < 10; j++) {
+                dst[i + 11 + j] = (int) (b >>> (2 + j * 6)) & 0x3F;
+            }
+            dst[i + 21] = (int) ((b >>> 62) | (c << 2)) & 0x3F;
+            for (int j = 0; j < 10; j++) {
+                dst[i + 22 + j] = (int) (c >>> (4 + j * 6)) & 0x3F;
+            }
+        }
+    }
+
+    public void unpackPacked(@NonNull long[] words, int bits, @NonNull short[] dst) {
+        checkArrays(bits, words, packedLength(bits), dst.length);
+
+        int mask = (1 << bits) - 1;
+        long word = words[0];
+        for (int i = 0, w = 0, shift = 0; i < NUM_BLOCKS; i++) {
+            int value = (int) (word >>> shift);
+            if ((shift += bits) >= Long.SIZE) {
+                shift -= Long.SIZE;
+                if (++w < words.length) {
+                    word = words[w];
+                    if (shift != 0) {
+                        value |= (int) (word << (bits - shift));
+                    }
+                }
+            }
+            dst[i] = (short) (value & mask);
+        }
+    }
+
+    public void packPacked(@NonNull int[] src, int bits, @NonNull long[] words) {
+        checkArrays(bits, words, packedLength(bits), src.length);
+        switch (bits) {
+            case 4:
+                packPadded4(src, words);
+                return;
+            case 8:
+                packPadded8(src, words);
+                return;
+        }
+
+        int length = packedLength(bits);
+        long mask = (1L << bits) - 1L;
+        long word = 0L;
+        int w = 0;
+        for (int i = 0, shift = 0; i < NUM_BLOCKS; i++) {
+            long value = src[i] & mask;
+            word |= value << shift;
+            if ((shift += bits) >= Long.SIZE) { //the current word is full, carry the remaining high bits of the entry over into the next one
+                words[w++] = word;
+                shift -= Long.SIZE;
+                word = shift != 0 ? value >>> (bits - shift) : 0L;
+            }
+        }
+        if (w < length) {
+            words[w] = word;
+        }
+    }
+
+    public void packPacked(@NonNull short[] src, int bits, @NonNull long[] words) {
+        checkArrays(bits, words, packedLength(bits), src.length);
+
+        int length = packedLength(bits);
+        long mask = (1L << bits) - 1L;
+        long word = 0L;
+        int w = 0;
+        for (int i = 0, shift = 0; i < NUM_BLOCKS; i++) {
+            long value = src[i] & mask;
+            word |= value << shift;
+            if ((shift += bits) >= Long.SIZE) {
+                words[w++] = word;
+                shift -= Long.SIZE;
+                word = shift != 0 ? value >>> (bits - shift) : 0L;
+            }
+        }
+        if (w < length) {
+            words[w] = word;
+        }
+    }
+
+    /**
+     * Checks that all of the given palette IDs fit into the given number of bits.
+     *
+     * @param src  the palette IDs
+     * @param bits the number of bits per entry
+     */
+    public void checkIds(@NonNull int[] src, int bits) {
+        checkArg(src.length >= NUM_BLOCKS, "src (%d) must be at least %d entries!", src.length, NUM_BLOCKS);
+        int or = 0;
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            or |= src[i];
+        }
+        checkArg((or >>> bits) == 0, "palette IDs must fit into %d bits!", bits);
+    }
+
+    /**
+     * Checks that all of the given palette IDs fit into the given number of bits.
+     *
+     * @param src  the palette IDs
+     * @param bits the number of bits per entry
+     */
+    public void checkIds(@NonNull short[] src, int bits) {
+        checkArg(src.length >= NUM_BLOCKS, "src (%d) must be at least %d entries!", src.length, NUM_BLOCKS);
+        int or = 0;
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            or |= src[i] & 0xFFFF;
+        }
+        checkArg((or >>> bits) == 0, "palette IDs must fit into %d bits!", bits);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.common.storage.flattened;
+
+import lombok.NonNull;
+import net.daporkchop.lib.binary.bit.BitArray;
+import net.daporkchop.lib.common.pool.array.ArrayAllocator;
+import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
+import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.format.common.storage.AbstractBlockStorage;
+import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import net.daporkchop.mcworldlib.version.java.JavaVersion;
+import net.daporkchop.mcworldlib.world.storage.BlockStorage;
+import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
+
+import java.util.Arrays;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Implementation of {@link FlattenedBlockStorage} for sections which consist entirely of a single block state.
+ * <p>
+ * No palette or data array is allocated while the storage is uniform. The first write of a different block state inflates it into a
+ * {@link HeapPaddedFlattenedBlockStorage}, to which all subsequent operations are delegated.
+ *
+ * @author DaPorkchop_
+ */
+public class UniformFlattenedBlockStorage extends AbstractBlockStorage implements FlattenedBlockStorage, FlattenedBlockStorage.Internal {
+    protected final ArrayAllocator<long[]> alloc;
+    protected final JavaVersion version; //passed on to the storage this is inflated into
+    protected final BlockState state;
+
+    protected FlattenedBlockStorage delegate;
+
+    public UniformFlattenedBlockStorage(@NonNull BlockState state) {
+        this(null, state);
+    }
+
+    public UniformFlattenedBlockStorage(ArrayAllocator<long[]> alloc, @NonNull BlockState state) {
+        this(alloc, null, state);
+    }
+
+    public UniformFlattenedBlockStorage(ArrayAllocator<long[]> alloc, JavaVersion version, @NonNull BlockState state) {
+        this.alloc = alloc;
+        this.version = version;
+        this.state = state;
+    }
+
+    @Override
+    public boolean isUniform() {
+        return this.delegate == null;
+    }
+
+    @Override
+    public BlockState uniformState() {
+        return this.delegate == null ? this.state : null;
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        if (this.delegate != null) {
+            return this.delegate.getBlockState(x, y, z);
+        }
+
+        BlockStorage.checkCoords(x, y, z);
+        return this.state;
+    }
+
+    @Override
+    public void setBlockState(int x, int y, int z, @NonNull BlockState state) {
+        if (this.delegate == null) {
+            BlockStorage.checkCoords(x, y, z);
+            if (this.state.equals(state)) { //no-op, the storage remains uniform
+                return;
+            }
+            this.inflate();
+        }
+        this.delegate.setBlockState(x, y, z, state);
+    }
+
+    @Override
+    public void getPaletteIds(@NonNull int[] dst) {
+        if (this.delegate != null) {
+            this.delegate.getPaletteIds(dst);
+        } else { //the uniform state always gets ID 0 once the storage is inflated
+            checkArg(dst.length >= NUM_BLOCKS, "dst (%d) must be at least %d entries!", dst.length, NUM_BLOCKS);
+            Arrays.fill(dst, 0, NUM_BLOCKS, 0);
+        }
+    }
+
+    @Override
+    public void getPaletteIds(@NonNull short[] dst) {
+        if (this.delegate != null) {
+            this.delegate.getPaletteIds(dst);
+        } else {
+            checkArg(dst.length >= NUM_BLOCKS, "dst (%d) must be at least %d entries!", dst.length, NUM_BLOCKS);
+            Arrays.fill(dst, 0, NUM_BLOCKS, (short) 0);
+        }
+    }
+
+    @Override
+    public void setPaletteIds(@NonNull int[] src) {
+        this.inflate().setPaletteIds(src);
+    }
+
+    @Override
+    public void setPaletteIds(@NonNull short[] src) {
+        this.inflate().setPaletteIds(src);
+    }
+
+    protected FlattenedBlockStorage inflate() {
+        if (this.delegate == null) {
+            FlattenedBlockStorage delegate = new HeapPaddedFlattenedBlockStorage(this.alloc, this.version);
+            delegate.setBlockState(0, 0, 0, this.state); //the data array is all zeroes, so this makes the uniform state ID 0 and thereby fills the storage with it
+            this.delegate = delegate;
+        }
+        return this.delegate;
+    }
+
+    @Override
+    public FlattenedBlockStorage clone() {
+        return this.delegate != null ? this.delegate.clone() : new UniformFlattenedBlockStorage(this.alloc, this.version, this.state);
+    }
+
+    @Override
+    public long retainedBytes() {
+        return this.delegate != null ? this.delegate.retainedBytes() : 0L;
+    }
+
+    @Override
+    public FlattenedBlockStorage retain() throws AlreadyReleasedException {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    protected void doRelease() {
+        if (this.delegate != null) {
+            this.delegate.release();
+        }
+    }
+
+    @Override
+    public Internal internal() {
+        return this;
+    }
+
+    @Override
+    public StatePalette palette() {
+        return this.inflate().internal().palette(); //callers may modify the internal representation, so we have to inflate it
+    }
+
+    @Override
+    public BitArray data() {
+        return this.inflate().internal().data();
+    }
+}
@@ -119,6 +119,11 @@ public class HeapLegacyBlockStorage extends AbstractLegacyBlockStorage {
         return new HeapLegacyBlockStorage(blocksClone, metaClone, this.blocksAlloc, this.metaAlloc);
     }
 
+    @Override
+    public long retainedBytes() {
+        return (long) this.blocks.length + this.meta.length;
+    }
+
     @Override
     protected void doRelease() {
         if (this.blocksAlloc != null) {
@@ -214,6 +219,11 @@ public class HeapLegacyBlockStorage extends AbstractLegacyBlockStorage {
             return new Add(blocksClone, metaClone, addClone, this.blocksAlloc, this.metaAlloc, this.addAlloc);
         }
 
+        @Override
+        public long retainedBytes() {
+            return super.retainedBytes() + this.add.length;
+        }
+
         @Override
         protected void doRelease() {
             super.doRelease();
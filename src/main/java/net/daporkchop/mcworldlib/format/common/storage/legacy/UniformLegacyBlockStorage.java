@@ -0,0 +1,148 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.common.storage.legacy;
+
+import net.daporkchop.mcworldlib.format.common.nibble.NibbleArray;
+import net.daporkchop.mcworldlib.world.storage.LegacyBlockStorage;
+
+import java.util.Arrays;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Implementation of {@link LegacyBlockStorage} for sections which consist entirely of a single legacy block ID and meta value.
+ * <p>
+ * No arrays are allocated while the storage is uniform. The first write of a different block inflates it into a {@link HeapLegacyBlockStorage}, to
+ * which all subsequent operations are delegated.
+ *
+ * @author DaPorkchop_
+ */
+public class UniformLegacyBlockStorage extends AbstractLegacyBlockStorage {
+    protected final int legacyId;
+    protected final int meta;
+
+    protected LegacyBlockStorage delegate;
+
+    public UniformLegacyBlockStorage(int legacyId, int meta) {
+        checkArg((legacyId & 0xFFF) == legacyId, "legacy ID must be in range [0-4096)");
+        checkArg((meta & 0xF) == meta, "nibble value must be in range [0-16)");
+        this.legacyId = legacyId;
+        this.meta = meta;
+    }
+
+    @Override
+    public int getBlockLegacyId(int x, int y, int z) {
+        if (this.delegate != null) {
+            return this.delegate.getBlockLegacyId(x, y, z);
+        }
+
+        index(x, y, z);
+        return this.legacyId;
+    }
+
+    @Override
+    public int getBlockMeta(int x, int y, int z) {
+        if (this.delegate != null) {
+            return this.delegate.getBlockMeta(x, y, z);
+        }
+
+        index(x, y, z);
+        return this.meta;
+    }
+
+    @Override
+    public int getCombinedIdMeta(int x, int y, int z) {
+        if (this.delegate != null) {
+            return this.delegate.getCombinedIdMeta(x, y, z);
+        }
+
+        index(x, y, z);
+        return (this.legacyId << 4) | this.meta;
+    }
+
+    @Override
+    public void setBlockState(int x, int y, int z, int legacyId, int meta) {
+        if (this.delegate == null) {
+            index(x, y, z);
+            if (legacyId == this.legacyId && meta == this.meta) { //no-op, the storage remains uniform
+                return;
+            }
+        }
+        this.inflate(legacyId).setBlockState(x, y, z, legacyId, meta);
+    }
+
+    @Override
+    public void setBlockLegacyId(int x, int y, int z, int legacyId) {
+        if (this.delegate == null) {
+            index(x, y, z);
+            if (legacyId == this.legacyId) {
+                return;
+            }
+        }
+        this.inflate(legacyId).setBlockLegacyId(x, y, z, legacyId);
+    }
+
+    @Override
+    public void setBlockMeta(int x, int y, int z, int meta) {
+        if (this.delegate == null) {
+            index(x, y, z);
+            if (meta == this.meta) {
+                return;
+            }
+        }
+        this.inflate(this.legacyId).setBlockMeta(x, y, z, meta);
+    }
+
+    protected LegacyBlockStorage inflate(int newLegacyId) {
+        if (this.delegate == null) {
+            byte[] blocks = new byte[NUM_BLOCKS];
+            Arrays.fill(blocks, (byte) this.legacyId);
+            byte[] meta = new byte[NibbleArray.PACKED_SIZE];
+            Arrays.fill(meta, (byte) (this.meta * 0x11));
+
+            if (((this.legacyId | newLegacyId) & ~0xFF) != 0) { //block IDs above 255 need the extra nibble
+                byte[] add = new byte[NibbleArray.PACKED_SIZE];
+                Arrays.fill(add, (byte) ((this.legacyId >> 8) * 0x11));
+                this.delegate = new HeapLegacyBlockStorage.Add(blocks, meta, add);
+            } else {
+                this.delegate = new HeapLegacyBlockStorage(blocks, meta);
+            }
+        }
+        return this.delegate;
+    }
+
+    @Override
+    public LegacyBlockStorage clone() {
+        return this.delegate != null ? this.delegate.clone() : new UniformLegacyBlockStorage(this.legacyId, this.meta);
+    }
+
+    @Override
+    public long retainedBytes() {
+        return this.delegate != null ? this.delegate.retainedBytes() : 0L;
+    }
+
+    @Override
+    protected void doRelease() {
+        if (this.delegate != null) {
+            this.delegate.release();
+        }
+    }
+}
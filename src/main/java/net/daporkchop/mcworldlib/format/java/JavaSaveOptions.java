@@ -21,6 +21,11 @@
 package net.daporkchop.mcworldlib.format.java;
 
 import lombok.experimental.UtilityClass;
+import net.daporkchop.mcworldlib.format.anvil.region.RegionHeaderIndex;
+import net.daporkchop.mcworldlib.format.anvil.region.SectorAllocator;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.HeaderJournal;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.MappedWindowCache;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.save.SaveOptions;
 
 /**
@@ -53,6 +58,100 @@ public class JavaSaveOptions {
      */
     public static final SaveOptions.Key<Boolean> PREFETCH_REGIONS = SaveOptions.key("java_region_mmap_prefetch", false);
 
+    /**
+     * Whether or not memory-mapped regions should be mapped in fixed-size windows on demand, rather than mapping each region file in its entirety.
+     * <p>
+     * If enabled, the windows are managed by the {@link MappedWindowCache} set by {@link #MMAP_WINDOW_CACHE}, and {@link #PREFETCH_REGIONS} will
+     * only prefetch the sectors which are occupied by chunks in each window as it is mapped.
+     * <p>
+     * Will have no effect unless {@link #MMAP_REGIONS} is set.
+     */
+    public static final SaveOptions.Key<Boolean> MMAP_WINDOWED = SaveOptions.key("java_region_mmap_windowed", false);
+
+    /**
+     * The {@link MappedWindowCache} used by windowed memory-mapped regions.
+     * <p>
+     * Defaults to a single cache shared by all saves, with a budget of 1GiB and a window size of 1MiB.
+     */
+    public static final SaveOptions.Key<MappedWindowCache> MMAP_WINDOW_CACHE = SaveOptions.keyLazy("java_region_mmap_window_cache", () -> new MappedWindowCache(1L << 30L, 1 << 20));
+
+    /**
+     * Whether or not regions should be read using asynchronous file I/O.
+     * <p>
+     * If enabled, asynchronous chunk loads will be pipelined: any number of reads may be in flight at once without each of them occupying a thread
+     * from {@link SaveOptions#IO_EXECUTOR}, which is then only used for decoding the chunks once they have been read.
+     * <p>
+     * Will have no effect unless the world is set to read-only, and is ignored if {@link #MMAP_REGIONS} is set.
+     */
+    public static final SaveOptions.Key<Boolean> ASYNC_REGIONS = SaveOptions.key("java_region_async", false);
+
+    /**
+     * The maximum number of threads used for serving reads from asynchronous regions.
+     * <p>
+     * The threads are shared by all of a save's regions, and are only started once {@link #ASYNC_REGIONS} is actually used.
+     * <p>
+     * Defaults to the number of available processors. Must be positive.
+     */
+    public static final SaveOptions.Key<Integer> ASYNC_REGION_THREADS = SaveOptions.key("java_region_async_threads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Whether or not a {@link RegionHeaderIndex} should be used to answer queries about which chunks exist and when they were saved, without having
+     * to open every region.
+     * <p>
+     * The index is stored in a single sidecar file in the region directory, and is validated against each region file's size, modification time and
+     * a checksum of its headers. When the world is read-only, an existing index will be used, but any changes to it are only kept in memory.
+     * <p>
+     * Defaults to {@code false}.
+     */
+    public static final SaveOptions.Key<Boolean> REGION_HEADER_INDEX = SaveOptions.key("java_region_header_index", false);
+
+    /**
+     * The {@link SectorAllocator.Policy} used for deciding where chunks should be placed when writing them to region files.
+     * <p>
+     * Defaults to {@link SectorAllocator.Policy#BEST_FIT}.
+     */
+    public static final SaveOptions.Key<SectorAllocator.Policy> REGION_ALLOCATION_POLICY = SaveOptions.key("java_region_allocation_policy", SectorAllocator.Policy.BEST_FIT);
+
+    /**
+     * Whether or not writable regions should use a {@link HeaderJournal} to make batched header updates atomic.
+     * <p>
+     * If enabled, {@link net.daporkchop.mcworldlib.format.anvil.region.RegionFile#writeMany} only needs to force a small journal file rather than
+     * the region's headers. Regions with a pending journal are always recovered when opened, regardless of this setting.
+     * <p>
+     * Defaults to {@code true}.
+     */
+    public static final SaveOptions.Key<Boolean> REGION_JOURNAL = SaveOptions.key("java_region_journal", true);
+
+    /**
+     * Whether or not the sections of read-only chunks should only be decoded when they are first accessed.
+     * <p>
+     * If enabled, the sections of each chunk are kept in their parsed NBT form until they are first accessed, which significantly reduces the cost of
+     * loading a chunk when only a few of its sections are used. Workloads which access every section of every chunk should leave this disabled, as the
+     * NBT form of a section generally uses more memory than the decoded form.
+     * <p>
+     * Defaults to {@code false}.
+     */
+    public static final SaveOptions.Key<Boolean> LAZY_SECTIONS = SaveOptions.key("java_lazy_sections", false);
+
+    /**
+     * The {@link DecodeProfile} describing which parts of chunks should be decoded.
+     * <p>
+     * Data which isn't included in the profile is skipped by the decoders, and is neither materialized nor retained in memory.
+     * <p>
+     * Defaults to {@link DecodeProfile#ALL}.
+     */
+    public static final SaveOptions.Key<DecodeProfile> DECODE_PROFILE = SaveOptions.key("java_decode_profile", DecodeProfile.ALL);
+
+    /**
+     * Whether or not chunk NBT data should be filtered before being parsed.
+     * <p>
+     * If enabled, the decompressed NBT data of each chunk is scanned using a streaming reader, and any subtrees which won't be decoded (such as entities,
+     * structures and scheduled ticks, as well as anything excluded by the {@link #DECODE_PROFILE}) are skipped without ever being materialized as tags.
+     * <p>
+     * Defaults to {@code true}.
+     */
+    public static final SaveOptions.Key<Boolean> FILTER_CHUNK_NBT = SaveOptions.key("java_filter_chunk_nbt", true);
+
     /**
      * The {@link JavaFixers} to use when decoding things.
      * <p>
@@ -0,0 +1,88 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.java.decoder;
+
+import lombok.NonNull;
+import net.daporkchop.mcworldlib.util.nbt.NBTFilter;
+import net.daporkchop.mcworldlib.util.nbt.NBTStreamReader;
+
+/**
+ * An {@link NBTFilter} which removes everything from Java edition chunk NBT data that isn't needed by the decoders for a given {@link DecodeProfile}.
+ * <p>
+ * This handles both the legacy layout (where everything is nested in a {@code Level} tag) and the flat layout used since 1.18.
+ *
+ * @author DaPorkchop_
+ */
+public final class ChunkNBTFilter implements NBTFilter {
+    /**
+     * Chunk-level tags which are never used by any decoder.
+     */
+    protected static final String[] UNUSED = {
+            "Entities", "entities", "Structures", "structures", "TileTicks", "LiquidTicks", "block_ticks", "fluid_ticks", "PostProcessing",
+            "ToBeTicked", "LiquidsToBeTicked", "Lights", "CarvingMasks", "carving_masks", "UpgradeData", "blending_data", "below_zero_retrogen"
+    };
+
+    protected final DecodeProfile profile;
+    protected final NBTFilter sectionFilter;
+
+    public ChunkNBTFilter(@NonNull DecodeProfile profile) {
+        this.profile = profile;
+        this.sectionFilter = reader -> {
+            if (reader.nameEquals("BlockLight") || reader.nameEquals("SkyLight")) {
+                return profile.light();
+            } else if (reader.nameEquals("biomes")) {
+                return profile.biomes();
+            } else if (reader.nameEquals("Y")) {
+                return true;
+            }
+            //everything else is block data, which is stored differently in nearly every version
+            return profile.blocks();
+        };
+    }
+
+    @Override
+    public boolean keep(@NonNull NBTStreamReader reader) {
+        for (String name : UNUSED) {
+            if (reader.nameEquals(name)) {
+                return false;
+            }
+        }
+
+        if (reader.nameEquals("Heightmaps")) {
+            return this.profile.heightmaps();
+        } else if (reader.nameEquals("Biomes")) {
+            return this.profile.biomes();
+        } else if (reader.nameEquals("TileEntities") || reader.nameEquals("block_entities")) {
+            return this.profile.blockEntities();
+        }
+        return true;
+    }
+
+    @Override
+    public NBTFilter child(@NonNull NBTStreamReader reader) {
+        if (reader.nameEquals("Level")) { //legacy layout, the chunk's contents are all in the level tag
+            return this;
+        } else if (reader.nameEquals("Sections") || reader.nameEquals("sections")) {
+            return this.sectionFilter;
+        }
+        return KEEP_ALL;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.java.decoder;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Describes which parts of a chunk should be decoded.
+ * <p>
+ * Decoders will neither materialize nor retain data which isn't included in the profile. Sections whose block data is excluded will appear to be filled
+ * with air, and sections whose light data is excluded will have no light data at all.
+ *
+ * @author DaPorkchop_
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@EqualsAndHashCode
+public final class DecodeProfile {
+    /**
+     * A profile which decodes everything.
+     */
+    public static final DecodeProfile ALL = of(EnumSet.allOf(Component.class));
+
+    /**
+     * A profile which only decodes block states.
+     */
+    public static final DecodeProfile BLOCKS_ONLY = of(EnumSet.of(Component.BLOCKS));
+
+    /**
+     * Gets a profile which decodes the given components.
+     *
+     * @param components the components to decode
+     * @return a profile which decodes the given components
+     */
+    public static DecodeProfile of(@NonNull Component... components) {
+        int mask = 0;
+        for (Component component : components) {
+            mask |= 1 << component.ordinal();
+        }
+        return new DecodeProfile(mask);
+    }
+
+    /**
+     * Gets a profile which decodes the given components.
+     *
+     * @param components the components to decode
+     * @return a profile which decodes the given components
+     */
+    public static DecodeProfile of(@NonNull Set<Component> components) {
+        return of(components.toArray(new Component[0]));
+    }
+
+    protected final int mask;
+
+    /**
+     * @param component the component
+     * @return whether or not the given component should be decoded
+     */
+    public boolean has(@NonNull Component component) {
+        return (this.mask & (1 << component.ordinal())) != 0;
+    }
+
+    /**
+     * @return whether or not block states should be decoded
+     */
+    public boolean blocks() {
+        return (this.mask & (1 << Component.BLOCKS.ordinal())) != 0;
+    }
+
+    /**
+     * @return whether or not block light and sky light should be decoded
+     */
+    public boolean light() {
+        return (this.mask & (1 << Component.LIGHT.ordinal())) != 0;
+    }
+
+    /**
+     * @return whether or not block entities should be decoded
+     */
+    public boolean blockEntities() {
+        return (this.mask & (1 << Component.BLOCK_ENTITIES.ordinal())) != 0;
+    }
+
+    /**
+     * @return whether or not biomes should be decoded
+     */
+    public boolean biomes() {
+        return (this.mask & (1 << Component.BIOMES.ordinal())) != 0;
+    }
+
+    /**
+     * @return whether or not heightmaps should be decoded
+     */
+    public boolean heightmaps() {
+        return (this.mask & (1 << Component.HEIGHTMAPS.ordinal())) != 0;
+    }
+
+    @Override
+    public String toString() {
+        EnumSet<Component> components = EnumSet.noneOf(Component.class);
+        for (Component component : Component.values()) {
+            if (this.has(component)) {
+                components.add(component);
+            }
+        }
+        return "DecodeProfile" + components;
+    }
+
+    /**
+     * The individual components of a chunk which may be decoded.
+     *
+     * @author DaPorkchop_
+     */
+    public enum Component {
+        BLOCKS,
+        LIGHT,
+        BLOCK_ENTITIES,
+        BIOMES,
+        HEIGHTMAPS;
+    }
+}
@@ -43,5 +43,22 @@ public interface JavaSectionDecoder {
      * @param z       the Z coordinate of the section
      * @return the decoded section
      */
-    Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z);
+    default Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z) {
+        return this.decode(tag, version, world, x, z, DecodeProfile.ALL);
+    }
+
+    /**
+     * Decodes a section.
+     * <p>
+     * Data which is not included in the given {@link DecodeProfile} will be left in the tag.
+     *
+     * @param tag     the {@link CompoundTag} containing the section data
+     * @param version the version of the section data
+     * @param world   the {@link World} that the section is in
+     * @param x       the X coordinate of the section
+     * @param z       the Z coordinate of the section
+     * @param profile the {@link DecodeProfile} describing which parts of the section should be decoded
+     * @return the decoded section
+     */
+    Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z, @NonNull DecodeProfile profile);
 }
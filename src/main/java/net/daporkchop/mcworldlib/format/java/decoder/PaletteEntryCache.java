@@ -0,0 +1,139 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.format.java.decoder;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import net.daporkchop.lib.nbt.tag.CompoundTag;
+import net.daporkchop.lib.nbt.tag.StringTag;
+import net.daporkchop.lib.nbt.tag.Tag;
+import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.util.Identifier;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.daporkchop.lib.common.math.PMath.*;
+
+/**
+ * Caches the {@link BlockState}s corresponding to flattened block palette entries.
+ * <p>
+ * Palettes repeat the same few hundred states across millions of sections, so parsing the identifier and building a properties map for every single
+ * palette entry is a huge waste. Instead, each thread keeps a small direct-mapped table of recently decoded palette entries keyed on the strings which
+ * are already present in the palette entry's tag. A cache hit therefore doesn't allocate anything.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class PaletteEntryCache {
+    protected final int SLOTS = 1 << 10;
+
+    protected final ThreadLocal<Entry[]> CACHE = ThreadLocal.withInitial(() -> new Entry[SLOTS]);
+
+    /**
+     * Gets the {@link BlockState} described by the given palette entry.
+     *
+     * @param tag the palette entry, consisting of a {@code Name} string and an optional {@code Properties} compound tag containing only strings
+     * @return the {@link BlockState}
+     */
+    public BlockState get(@NonNull CompoundTag tag) {
+        String name = tag.getString("Name");
+        CompoundTag properties = tag.getCompound("Properties", null);
+
+        int hash = name.hashCode();
+        int count = 0;
+        if (properties != null) {
+            //combine the hashes of each key-value pair commutatively so that the order of the properties doesn't matter
+            int propertiesHash = 0;
+            for (Map.Entry<String, Tag> property : properties) {
+                propertiesHash += mix32(property.getKey().hashCode() * 31L + ((StringTag) property.getValue()).value().hashCode());
+                count++;
+            }
+            hash = hash * 31 + propertiesHash;
+        }
+
+        Entry[] cache = CACHE.get();
+        int slot = mix32(hash) & (SLOTS - 1);
+        Entry entry = cache[slot];
+        if (entry != null && entry.matches(hash, name, properties, count)) {
+            return entry.state;
+        }
+
+        //cache miss, decode the entry normally
+        String[] keysAndValues = new String[count << 1];
+        Map<String, String> propertiesMap = new HashMap<>();
+        if (properties != null) {
+            int i = 0;
+            for (Map.Entry<String, Tag> property : properties) {
+                String value = ((StringTag) property.getValue()).value();
+                keysAndValues[i++] = property.getKey();
+                keysAndValues[i++] = value;
+                propertiesMap.put(property.getKey(), value);
+            }
+        }
+
+        BlockState state = BlockState.of(Identifier.fromString(name), propertiesMap);
+        cache[slot] = new Entry(hash, name, keysAndValues, state);
+        return state;
+    }
+
+    /**
+     * A single cached palette entry.
+     *
+     * @author DaPorkchop_
+     */
+    protected static final class Entry {
+        protected final int hash;
+        protected final String name;
+        protected final String[] keysAndValues;
+        protected final BlockState state;
+
+        protected Entry(int hash, @NonNull String name, @NonNull String[] keysAndValues, @NonNull BlockState state) {
+            this.hash = hash;
+            this.name = name;
+            this.keysAndValues = keysAndValues;
+            this.state = state;
+        }
+
+        protected boolean matches(int hash, @NonNull String name, CompoundTag properties, int count) {
+            if (this.hash != hash || (this.keysAndValues.length >> 1) != count || !this.name.equals(name)) {
+                return false;
+            } else if (count == 0) {
+                return true;
+            }
+
+            //the number of properties is tiny, so a linear search is fine
+            OUTER:
+            for (Map.Entry<String, Tag> property : properties) {
+                for (int i = 0; i < this.keysAndValues.length; i += 2) {
+                    if (this.keysAndValues[i].equals(property.getKey())) {
+                        if (!this.keysAndValues[i + 1].equals(((StringTag) property.getValue()).value())) {
+                            return false;
+                        }
+                        continue OUTER;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import net.daporkchop.mcworldlib.format.common.nibble.HeapNibbleArray;
 import net.daporkchop.mcworldlib.format.common.nibble.NibbleArray;
 import net.daporkchop.mcworldlib.format.common.section.legacy.DefaultLegacySection;
 import net.daporkchop.mcworldlib.format.common.storage.legacy.HeapLegacyBlockStorage;
+import net.daporkchop.mcworldlib.format.common.storage.legacy.UniformLegacyBlockStorage;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.format.java.decoder.JavaSectionDecoder;
 import net.daporkchop.mcworldlib.util.nbt.AllocatedByteArrayTag;
 import net.daporkchop.mcworldlib.version.java.JavaVersion;
@@ -40,12 +42,12 @@ public class LegacySectionDecoder implements JavaSectionDecoder {
     public static final JavaVersion VERSION = JavaVersion.fromName("1.12.2");
 
     @Override
-    public Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z) {
+    public Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z, @NonNull DecodeProfile profile) {
         int y = tag.getByte("Y") & 0xFF;
-        LegacyBlockStorage blocks = this.parseBlockStorage(tag);
+        LegacyBlockStorage blocks = profile.blocks() ? this.parseBlockStorage(tag) : this.emptyBlockStorage();
 
-        NibbleArray blockLight = this.parseNibbleArray(tag, "BlockLight");
-        NibbleArray skyLight = this.parseNibbleArray(tag, "SkyLight");
+        NibbleArray blockLight = profile.light() ? this.parseNibbleArray(tag, "BlockLight") : null;
+        NibbleArray skyLight = profile.light() ? this.parseNibbleArray(tag, "SkyLight") : null;
         return new DefaultLegacySection(version, x, y, z, blocks, blockLight, skyLight);
     }
 
@@ -60,6 +62,10 @@ public class LegacySectionDecoder implements JavaSectionDecoder {
         }
     }
 
+    protected LegacyBlockStorage emptyBlockStorage() {
+        return new UniformLegacyBlockStorage(0, 0);
+    }
+
     protected NibbleArray parseNibbleArray(@NonNull CompoundTag tag, @NonNull String name) {
         AllocatedByteArrayTag data = tag.remove(name, null);
         return data != null ? new HeapNibbleArray.YZX(data.value(), data.alloc()) : null;
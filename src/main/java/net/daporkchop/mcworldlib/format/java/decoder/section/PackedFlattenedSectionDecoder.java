@@ -21,31 +21,30 @@
 package net.daporkchop.mcworldlib.format.java.decoder.section;
 
 import lombok.NonNull;
-import net.daporkchop.lib.binary.bit.packed.PackedBitArray;
 import net.daporkchop.lib.common.math.BinMath;
 import net.daporkchop.lib.nbt.tag.CompoundTag;
 import net.daporkchop.lib.nbt.tag.ListTag;
-import net.daporkchop.lib.nbt.tag.StringTag;
-import net.daporkchop.lib.nbt.tag.Tag;
 import net.daporkchop.mcworldlib.block.BlockState;
 import net.daporkchop.mcworldlib.format.common.nibble.HeapNibbleArray;
 import net.daporkchop.mcworldlib.format.common.nibble.NibbleArray;
 import net.daporkchop.mcworldlib.format.common.section.flattened.SingleLayerFlattenedSection;
 import net.daporkchop.mcworldlib.format.common.storage.flattened.HeapPackedFlattenedBlockStorage;
+import net.daporkchop.mcworldlib.format.common.storage.flattened.UniformFlattenedBlockStorage;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
 import net.daporkchop.mcworldlib.format.java.decoder.JavaSectionDecoder;
+import net.daporkchop.mcworldlib.format.java.decoder.PaletteEntryCache;
 import net.daporkchop.mcworldlib.util.Identifier;
 import net.daporkchop.mcworldlib.util.nbt.AllocatedByteArrayTag;
 import net.daporkchop.mcworldlib.util.nbt.AllocatedLongArrayTag;
-import net.daporkchop.mcworldlib.util.palette.state.ArrayStatePalette;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
 import net.daporkchop.mcworldlib.version.java.JavaVersion;
 import net.daporkchop.mcworldlib.world.World;
 import net.daporkchop.mcworldlib.world.section.Section;
 import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author DaPorkchop_
@@ -53,41 +52,41 @@ import java.util.stream.Collectors;
 public class PackedFlattenedSectionDecoder implements JavaSectionDecoder {
     public static final JavaVersion VERSION = JavaVersion.fromName("1.15.2");
 
+    protected static final BlockState AIR = BlockState.of(Identifier.fromString("minecraft:air"), Collections.emptyMap());
+
     @Override
-    public Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z) {
+    public Section decode(@NonNull CompoundTag tag, @NonNull JavaVersion version, @NonNull World world, int x, int z, @NonNull DecodeProfile profile) {
         int y = tag.getByte("Y") & 0xFF;
-        FlattenedBlockStorage blocks = this.parseBlockStorage(tag);
+        FlattenedBlockStorage blocks = profile.blocks() ? this.parseBlockStorage(tag, version) : this.emptyBlockStorage(version);
 
-        NibbleArray blockLight = this.parseNibbleArray(tag, "BlockLight");
-        NibbleArray skyLight = this.parseNibbleArray(tag, "SkyLight");
+        NibbleArray blockLight = profile.light() ? this.parseNibbleArray(tag, "BlockLight") : null;
+        NibbleArray skyLight = profile.light() ? this.parseNibbleArray(tag, "SkyLight") : null;
         return new SingleLayerFlattenedSection(version, x, y, z, blocks, blockLight, skyLight);
     }
 
-    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag) {
+    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag, @NonNull JavaVersion version) {
         ListTag<CompoundTag> paletteTag = tag.getList("Palette", CompoundTag.class);
         AllocatedLongArrayTag blockStatesTag = tag.remove("BlockStates");
 
         int bits = Math.max(BinMath.getNumBitsNeededFor(Math.max(paletteTag.size() - 1, 0)), 4);
         StatePalette palette = this.parseBlockPalette(bits, paletteTag);
 
-        return new HeapPackedFlattenedBlockStorage(new PackedBitArray(bits, 4096, blockStatesTag.value(), blockStatesTag.alloc()), palette);
+        return new HeapPackedFlattenedBlockStorage(blockStatesTag.alloc(), version, bits, blockStatesTag.value(), palette);
     }
 
-    protected StatePalette parseBlockPalette(int bits, @NonNull ListTag<CompoundTag> paletteTag) {
-        return new ArrayStatePalette(1 << bits, paletteTag.stream().map(tag -> {
-            Identifier id = Identifier.fromString(tag.getString("Name"));
-
-            Map<String, String> propertiesMap = new HashMap<>();
-            CompoundTag properties = tag.getCompound("Properties", null);
-            if (properties != null) {
-                //set properties
-                for (Map.Entry<String, Tag> entry : properties) {
-                    propertiesMap.put(entry.getKey(), ((StringTag) entry.getValue()).value());
-                }
-            }
+    /**
+     * @return a block storage filled with air, used in place of the section's actual block data if it isn't being decoded
+     */
+    protected FlattenedBlockStorage emptyBlockStorage(@NonNull JavaVersion version) {
+        return new UniformFlattenedBlockStorage(null, version, AIR);
+    }
 
-            return BlockState.of(id, propertiesMap);
-        }).collect(Collectors.toList()));
+    protected StatePalette parseBlockPalette(int bits, @NonNull ListTag<CompoundTag> paletteTag) {
+        List<BlockState> states = new ArrayList<>(paletteTag.size());
+        for (CompoundTag tag : paletteTag) {
+            states.add(PaletteEntryCache.get(tag));
+        }
+        return StatePalette.create(1 << bits, states);
     }
 
     protected NibbleArray parseNibbleArray(@NonNull CompoundTag tag, @NonNull String name) {
@@ -21,7 +21,6 @@
 package net.daporkchop.mcworldlib.format.java.decoder.section;
 
 import lombok.NonNull;
-import net.daporkchop.lib.binary.bit.padded.PaddedBitArray;
 import net.daporkchop.lib.common.math.BinMath;
 import net.daporkchop.lib.nbt.tag.CompoundTag;
 import net.daporkchop.lib.nbt.tag.ListTag;
@@ -38,13 +37,13 @@ public class PaddedFlattenedSectionDecoder extends PackedFlattenedSectionDecoder
     public static final JavaVersion VERSION = JavaVersion.fromName("1.16.1");
 
     @Override
-    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag) {
+    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag, @NonNull JavaVersion version) {
         ListTag<CompoundTag> paletteTag = tag.getList("Palette", CompoundTag.class);
         AllocatedLongArrayTag blockStatesTag = tag.remove("BlockStates");
 
         int bits = Math.max(BinMath.getNumBitsNeededFor(paletteTag.size()), 4);
         StatePalette palette = this.parseBlockPalette(bits, paletteTag);
 
-        return new HeapPaddedFlattenedBlockStorage(new PaddedBitArray(bits, 4096, blockStatesTag.value(), blockStatesTag.alloc()), palette);
+        return new HeapPaddedFlattenedBlockStorage(blockStatesTag.alloc(), version, bits, blockStatesTag.value(), palette);
     }
 }
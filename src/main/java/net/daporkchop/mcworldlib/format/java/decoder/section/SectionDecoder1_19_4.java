@@ -9,7 +9,9 @@ import net.daporkchop.lib.nbt.tag.ListTag;
 import net.daporkchop.mcworldlib.format.common.nibble.NibbleArray;
 import net.daporkchop.mcworldlib.format.common.section.flattened.SingleLayerFlattenedSection;
 import net.daporkchop.mcworldlib.format.common.storage.flattened.HeapPaddedFlattenedBlockStorage;
-import net.daporkchop.mcworldlib.format.java.storage.NullablePaddedBitArray;
+import net.daporkchop.mcworldlib.format.common.storage.flattened.UniformFlattenedBlockStorage;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
+import net.daporkchop.mcworldlib.format.java.decoder.PaletteEntryCache;
 import net.daporkchop.mcworldlib.util.nbt.AllocatedLongArrayTag;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
 import net.daporkchop.mcworldlib.version.java.JavaVersion;
@@ -17,31 +19,37 @@ import net.daporkchop.mcworldlib.world.World;
 import net.daporkchop.mcworldlib.world.section.Section;
 import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
 
+import static net.daporkchop.lib.common.util.PValidation.*;
+
 public class SectionDecoder1_19_4 extends PackedFlattenedSectionDecoder {
     public static final JavaVersion VERSION = JavaVersion.fromName("1.19.4");
 
     @Override
-    public Section decode(CompoundTag tag, JavaVersion version, World world, int x, int z) {
+    public Section decode(CompoundTag tag, JavaVersion version, World world, int x, int z, DecodeProfile profile) {
         int y = tag.getByte("Y");
         if (y < 0) {
             y += 24;
         }
-        FlattenedBlockStorage blocks = this.parseBlockStorage(tag);
+        FlattenedBlockStorage blocks = profile.blocks() ? this.parseBlockStorage(tag, version) : this.emptyBlockStorage(version);
 
-        NibbleArray blockLight = this.parseNibbleArray(tag, "BlockLight");
-        NibbleArray skyLight = this.parseNibbleArray(tag, "SkyLight");
+        NibbleArray blockLight = profile.light() ? this.parseNibbleArray(tag, "BlockLight") : null;
+        NibbleArray skyLight = profile.light() ? this.parseNibbleArray(tag, "SkyLight") : null;
         return new SingleLayerFlattenedSection(version, x, y, z, blocks, blockLight, skyLight);
     }
 
     @Override
-    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag) {
+    protected FlattenedBlockStorage parseBlockStorage(@NonNull CompoundTag tag, @NonNull JavaVersion version) {
         CompoundTag block_states = tag.getCompound("block_states");
         ListTag<CompoundTag> paletteTag = block_states.getList("palette", CompoundTag.class);
         AllocatedLongArrayTag blockStatesTag = block_states.remove("data", null);
+        if (blockStatesTag == null) { //sections consisting of a single block state have no data array
+            checkState(paletteTag.size() == 1, "section has no data, but palette contains %d states!", paletteTag.size());
+            return new UniformFlattenedBlockStorage(null, version, PaletteEntryCache.get(paletteTag.list().get(0)));
+        }
 
         int bits = Math.max(BinMath.getNumBitsNeededFor(paletteTag.size()), 4);
         StatePalette palette = this.parseBlockPalette(bits, paletteTag);
 
-        return new HeapPaddedFlattenedBlockStorage(new NullablePaddedBitArray(bits, 4096, (blockStatesTag == null ? null : blockStatesTag.value()), (blockStatesTag == null ? null : blockStatesTag.alloc())), palette);
+        return new HeapPaddedFlattenedBlockStorage(blockStatesTag.alloc(), version, bits, blockStatesTag.value(), palette);
     }
 }
\ No newline at end of file
@@ -48,4 +48,24 @@ public class VanillaSaveOptions {
      * May not be negative.
      */
     public static final SaveOptions.Key<Long> MAX_CHUNK_CACHE_TIME = SaveOptions.key("vanilla_chunk_cache_time", TimeUnit.MINUTES.toMillis(15L));
+
+    /**
+     * The maximum total weight of all chunks whose data may be cached in memory at once.
+     * <p>
+     * A chunk's weight is an estimate of the number of bytes retained by its decoded data (or, for sections which haven't been decoded yet, by
+     * their parsed NBT tags), so this serves as a rough limit on the amount of memory used by the chunk cache. Whichever of this and {@link #CHUNK_CACHE_SIZE} is reached first will cause chunks to be evicted.
+     * <p>
+     * May not be negative.
+     */
+    public static final SaveOptions.Key<Long> CHUNK_CACHE_WEIGHT = SaveOptions.key("vanilla_chunk_cache_weight", 256L << 20L);
+
+    /**
+     * The maximum number of bytes of decompressed chunk data which may be cached in direct memory at once, in addition to the decoded chunk cache.
+     * <p>
+     * Chunks which are evicted from the decoded chunk cache and then requested again may be decoded from this cache without having to be read from disk
+     * and decompressed again. If {@code 0}, this cache is disabled.
+     * <p>
+     * May not be negative.
+     */
+    public static final SaveOptions.Key<Long> CHUNK_PAYLOAD_CACHE_SIZE = SaveOptions.key("vanilla_chunk_payload_cache_size", 0L);
 }
@@ -23,6 +23,7 @@ package net.daporkchop.mcworldlib.registry.java;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import net.daporkchop.lib.common.function.io.IOFunction;
@@ -35,11 +36,16 @@ import net.daporkchop.mcworldlib.util.Util;
 import net.daporkchop.mcworldlib.version.java.DataVersion;
 import net.daporkchop.mcworldlib.version.java.JavaVersion;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
 
 import static net.daporkchop.lib.common.util.PValidation.*;
 
@@ -57,20 +63,62 @@ public final class JavaRegistries implements Registries {
             versionIn = JavaVersion.fromName("1.12.2"); //1.12.2 is used as an intermediate translation point for all previous versions
         }
         return CACHE.computeIfAbsent(versionIn.name(), (IOFunction<String, Registries>) version -> {
-            Map<String, JsonRegistry> map = Util.parseJson(JavaRegistries.class, new TypeReference<Map<String, JsonRegistry>>() {}, version + ".json");
-
-            Map<Identifier, Registry> registries = new HashMap<>();
-            map.forEach((name, registry) -> {
-                Identifier id = Identifier.fromString(name);
-                DefaultRegistry.Builder builder = DefaultRegistry.builder(id);
-                registry.entries.forEach((entryName, entry) -> builder.register(Identifier.fromString(entryName), entry.protocol_id));
-                Registry r = builder.build();
-                registries.put(id, r);
-            });
+            Map<Identifier, Registry> registries = Util.readBinaryTable(JavaRegistries.class, version + ".bin", JavaRegistries::readBinary);
+            if (registries == null) { //the precompiled registries aren't available, fall back to parsing the json
+                Map<String, JsonRegistry> map = Util.parseJson(JavaRegistries.class, new TypeReference<Map<String, JsonRegistry>>() {}, version + ".json");
+
+                registries = new HashMap<>();
+                for (Map.Entry<String, JsonRegistry> registry : map.entrySet()) {
+                    Identifier id = Identifier.fromString(registry.getKey());
+                    DefaultRegistry.Builder builder = DefaultRegistry.builder(id);
+                    registry.getValue().entries.forEach((entryName, entry) -> builder.register(Identifier.fromString(entryName), entry.protocol_id));
+                    registries.put(id, builder.build());
+                }
+            }
             return new JavaRegistries(registries);
         });
     }
 
+    /**
+     * Reads registries in the binary form generated by the {@code compileDataTables} gradle task.
+     * <p>
+     * Format (big-endian):
+     * <ul>
+     *     <li>{@code int}: the format version, currently {@code 1}</li>
+     *     <li>{@code int}: the number of identifiers, followed by the mod ID and name of each identifier written using
+     *     {@link java.io.DataOutputStream#writeUTF(String)}</li>
+     *     <li>{@code int}: the number of registries, followed by the following for each registry:
+     *     <ul>
+     *         <li>{@code int}: the index of the registry's ID in the identifier table</li>
+     *         <li>{@code int}: the number of entries, followed by two {@code int}s for each entry: the index of the entry's ID in the identifier
+     *         table and the entry's protocol ID</li>
+     *     </ul>
+     *     </li>
+     * </ul>
+     * The entries of each registry are only decoded once the registry is first accessed.
+     */
+    private static Map<Identifier, Registry> readBinary(@NonNull DataInputStream data) throws IOException {
+        int format = data.readInt();
+        checkState(format == 1, "unsupported registry format: %d", format);
+
+        IdentifierTable identifiers = new IdentifierTable(data.readInt());
+        for (int i = 0; i < identifiers.modids.length; i++) {
+            identifiers.modids[i] = data.readUTF();
+            identifiers.names[i] = data.readUTF();
+        }
+
+        int count = data.readInt();
+        Map<Identifier, Registry> registries = new HashMap<>(count << 1);
+        for (int i = 0; i < count; i++) {
+            Identifier id = identifiers.get(data.readInt());
+            int size = data.readInt();
+            byte[] entries = new byte[size << 3];
+            data.readFully(entries);
+            registries.put(id, new LazyRegistry(id, size, identifiers, entries));
+        }
+        return registries;
+    }
+
     @NonNull
     private final Map<Identifier, Registry> registries;
 
@@ -106,6 +154,121 @@ public final class JavaRegistries implements Registries {
         return this.registries.values().spliterator();
     }
 
+    /**
+     * The identifiers referenced by a binary registry file. {@link Identifier}s are only created once they are actually needed.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class IdentifierTable {
+        private final String[] modids;
+        private final String[] names;
+        private final Identifier[] identifiers;
+
+        public IdentifierTable(int size) {
+            this.modids = new String[size];
+            this.names = new String[size];
+            this.identifiers = new Identifier[size];
+        }
+
+        public Identifier get(int index) {
+            Identifier identifier = this.identifiers[index];
+            if (identifier == null) { //this race is benign, Identifier.of always returns the same instance
+                identifier = this.identifiers[index] = Identifier.of(this.modids[index], this.names[index]);
+            }
+            return identifier;
+        }
+    }
+
+    /**
+     * A {@link Registry} whose entries are decoded on first access.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class LazyRegistry implements Registry {
+        @Getter
+        private final Identifier id;
+        private final int size;
+
+        private IdentifierTable identifiers;
+        private byte[] entries;
+
+        private volatile Registry delegate;
+
+        public LazyRegistry(@NonNull Identifier id, int size, @NonNull IdentifierTable identifiers, @NonNull byte[] entries) {
+            this.id = id;
+            this.size = size;
+            this.identifiers = identifiers;
+            this.entries = entries;
+        }
+
+        private Registry delegate() {
+            Registry delegate = this.delegate;
+            if (delegate == null) {
+                synchronized (this) {
+                    if ((delegate = this.delegate) == null) {
+                        DefaultRegistry.Builder builder = DefaultRegistry.builder(this.id);
+                        ByteBuffer entries = ByteBuffer.wrap(this.entries);
+                        while (entries.hasRemaining()) {
+                            Identifier identifier = this.identifiers.get(entries.getInt());
+                            builder.register(identifier, entries.getInt());
+                        }
+                        this.delegate = delegate = builder.build();
+
+                        //allow the encoded data to be garbage-collected
+                        this.identifiers = null;
+                        this.entries = null;
+                    }
+                }
+            }
+            return delegate;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public boolean contains(@NonNull Identifier identifier) {
+            return this.delegate().contains(identifier);
+        }
+
+        @Override
+        public int get(@NonNull Identifier identifier) {
+            return this.delegate().get(identifier);
+        }
+
+        @Override
+        public boolean contains(int id) {
+            return this.delegate().contains(id);
+        }
+
+        @Override
+        public Identifier get(int id) {
+            return this.delegate().get(id);
+        }
+
+        @Override
+        public Iterator<Identifier> iterator() {
+            return this.delegate().iterator();
+        }
+
+        @Override
+        public void forEach(@NonNull Consumer<? super Identifier> action) {
+            this.delegate().forEach(action);
+        }
+
+        @Override
+        public void forEach(@NonNull IntConsumer action) {
+            this.delegate().forEach(action);
+        }
+
+        @Override
+        public void forEach(@NonNull ObjIntConsumer<? super Identifier> action) {
+            this.delegate().forEach(action);
+        }
+    }
+
     private static class JsonRegistry {
         public final String def;
         public final Map<String, JsonRegistryEntry> entries;
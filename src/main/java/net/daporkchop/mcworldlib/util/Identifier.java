@@ -87,6 +87,59 @@ public final class Identifier implements Comparable<Identifier> {
         return fromString0(identifier, LENIENT_MATCHER);
     }
 
+    /**
+     * Gets the {@link Identifier} with the given mod ID and name.
+     * <p>
+     * This is significantly faster than {@link #fromString(String)}, as the identifier is already split into its components and no regex needs to
+     * be evaluated.
+     *
+     * @param modid the mod ID
+     * @param name  the name
+     * @return the {@link Identifier}
+     * @throws IllegalArgumentException if the given mod ID or name contain illegal characters
+     */
+    public static Identifier of(@NonNull String modid, @NonNull String name) {
+        String fullName = modid + ':' + name;
+
+        Identifier id;
+        READ_LOCK.lock();
+        try {
+            id = VALUES.get(fullName);
+        } finally {
+            READ_LOCK.unlock();
+        }
+
+        if (id == null) {
+            checkArg(isValidComponent(modid) && isValidComponent(name), "Invalid identifier: \"%s\"", fullName);
+            boolean defaultNamespace = "minecraft".equals(modid);
+
+            WRITE_LOCK.lock();
+            try {
+                //try get again in case identifier was created while obtaining write lock
+                if ((id = VALUES.get(fullName)) == null) {
+                    id = new Identifier(modid, name, fullName);
+                    if (defaultNamespace) {
+                        VALUES.put(name, id);
+                    }
+                    VALUES.put(fullName, id);
+                }
+            } finally {
+                WRITE_LOCK.unlock();
+            }
+        }
+        return id;
+    }
+
+    private static boolean isValidComponent(String component) { //equivalent to the character class used by STRICT_MATCHER
+        for (int i = 0, length = component.length(); i < length; i++) {
+            char c = component.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static Identifier fromString0(String identifier, Ref<Matcher> matcherRef) {
         if (identifier.isEmpty()) {
             //check for empty before using matcher
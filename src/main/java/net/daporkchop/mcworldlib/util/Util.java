@@ -28,6 +28,8 @@ import net.daporkchop.lib.common.function.io.IOFunction;
 import net.daporkchop.lib.common.misc.InstancePool;
 import net.daporkchop.lib.common.misc.string.PStrings;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -38,6 +40,13 @@ import java.io.InputStream;
  */
 @UtilityClass
 public class Util {
+    /**
+     * Whether or not to load data tables from the compact binary form generated at build time by the {@code compileDataTables} gradle task.
+     * <p>
+     * May be disabled using the system property {@code mcworldlib.disableBinaryTables}, in which case the bundled json is always parsed instead.
+     */
+    public final boolean BINARY_DATA_TABLES = !Boolean.getBoolean("mcworldlib.disableBinaryTables");
+
     public <T> T doWithResourceThrowing(@NonNull Class<?> fromClass, @NonNull String name, @NonNull IOFunction<InputStream, T> function) {
         return doWithResourceThrowing(fromClass, name, function, true);
     }
@@ -57,6 +66,20 @@ public class Util {
         }
     }
 
+    /**
+     * Reads a data table from the compact binary form generated at build time.
+     *
+     * @param fromClass the class to load the resource relative to
+     * @param name      the name of the resource
+     * @param function  the function to use for decoding the data table
+     * @return the decoded data table, or {@code null} if the binary form is not available or {@link #BINARY_DATA_TABLES} is disabled
+     */
+    public <T> T readBinaryTable(@NonNull Class<?> fromClass, @NonNull String name, @NonNull IOFunction<DataInputStream, T> function) {
+        return BINARY_DATA_TABLES
+                ? doWithResourceThrowing(fromClass, name, in -> function.applyThrowing(new DataInputStream(new BufferedInputStream(in))), false)
+                : null;
+    }
+
     public <T> T parseJson(@NonNull Class<T> type, @NonNull String name) {
         return parseJson(type, type, name);
     }
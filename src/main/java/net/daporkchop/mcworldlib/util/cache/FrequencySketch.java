@@ -0,0 +1,113 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.util.cache;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A probabilistic, aging frequency counter for {@code long} keys, used as the admission filter of TinyLFU-style caches.
+ * <p>
+ * This is a count-min sketch with four 4-bit counters per key. Once a certain number of increments have been recorded, all counters are halved,
+ * so that the estimated frequencies reflect recent history rather than growing forever.
+ * <p>
+ * This class is not strictly thread-safe: concurrent increments may occasionally be lost. This only affects the accuracy of the estimates, which are
+ * approximate to begin with, and avoids having to synchronize on every cache access.
+ *
+ * @author DaPorkchop_
+ */
+public final class FrequencySketch {
+    protected static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    protected static final long RESET_MASK = 0x7777777777777777L;
+
+    protected static long mix(long key) {
+        key = (key ^ (key >>> 33L)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33L)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33L);
+    }
+
+    protected final long[] table;
+    protected final int tableMask;
+    protected final int sampleSize;
+    protected int size;
+
+    /**
+     * @param capacity the maximum number of entries in the cache which this sketch is used for
+     */
+    public FrequencySketch(int capacity) {
+        notNegative(capacity, "capacity");
+        int length = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = Math.max(capacity, 16) * 10;
+    }
+
+    /**
+     * Gets the estimated number of times the given key has been recorded, up to a maximum of 15.
+     *
+     * @param key the key
+     * @return the estimated frequency
+     */
+    public int frequency(long key) {
+        long hash = mix(key);
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            long h = mix(hash + SEEDS[i]);
+            int shift = ((int) (h >>> 32L) & 0xF) << 2;
+            frequency = Math.min(frequency, (int) (this.table[(int) h & this.tableMask] >>> shift) & 0xF);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of the given key.
+     *
+     * @param key the key
+     */
+    public void increment(long key) {
+        long hash = mix(key);
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            long h = mix(hash + SEEDS[i]);
+            int index = (int) h & this.tableMask;
+            int shift = ((int) (h >>> 32L) & 0xF) << 2;
+            if (((this.table[index] >>> shift) & 0xFL) != 0xFL) {
+                this.table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++this.size >= this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    /**
+     * Halves every counter.
+     */
+    protected void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1L) & RESET_MASK;
+        }
+        this.size >>>= 1;
+    }
+}
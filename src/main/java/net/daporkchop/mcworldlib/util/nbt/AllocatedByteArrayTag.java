@@ -64,6 +64,11 @@ public class AllocatedByteArrayTag extends Tag<AllocatedByteArrayTag> implements
         return "Byte_Array";
     }
 
+    @Override
+    public long retainedBytes() {
+        return (long) this.value.length;
+    }
+
     @Override
     public void release() {
         if (this.alloc != null) {
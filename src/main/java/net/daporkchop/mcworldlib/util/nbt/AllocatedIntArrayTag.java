@@ -51,17 +51,13 @@ public class AllocatedIntArrayTag extends Tag<AllocatedIntArrayTag> implements A
             this.value = new int[this.length];
         }
 
-        for (int i = 0; i < this.length; i++) {
-            this.value[i] = in.readInt();
-        }
+        AllocatedNBTHelper.readInts(in, this.value, this.length);
     }
 
     @Override
     public void write(@NonNull DataOut out) throws IOException {
         out.writeInt(this.length);
-        for (int i = 0; i < this.length; i++) {
-            out.writeInt(this.value[i]);
-        }
+        AllocatedNBTHelper.writeInts(out, this.value, this.length);
     }
 
     @Override
@@ -69,6 +65,11 @@ public class AllocatedIntArrayTag extends Tag<AllocatedIntArrayTag> implements A
         return "Int_Array";
     }
 
+    @Override
+    public long retainedBytes() {
+        return (long) this.value.length << 2;
+    }
+
     @Override
     public void release() {
         if (this.alloc != null) {
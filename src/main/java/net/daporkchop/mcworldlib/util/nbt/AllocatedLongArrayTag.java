@@ -51,17 +51,13 @@ public class AllocatedLongArrayTag extends Tag<AllocatedLongArrayTag> implements
             this.value = new long[this.length];
         }
 
-        for (int i = 0; i < this.length; i++) {
-            this.value[i] = in.readLong();
-        }
+        AllocatedNBTHelper.readLongs(in, this.value, this.length);
     }
 
     @Override
     public void write(@NonNull DataOut out) throws IOException {
         out.writeInt(this.length);
-        for (int i = 0; i < this.length; i++) {
-            out.writeLong(this.value[i]);
-        }
+        AllocatedNBTHelper.writeLongs(out, this.value, this.length);
     }
 
     @Override
@@ -69,6 +65,11 @@ public class AllocatedLongArrayTag extends Tag<AllocatedLongArrayTag> implements
         return "Long_Array";
     }
 
+    @Override
+    public long retainedBytes() {
+        return (long) this.value.length << 3;
+    }
+
     @Override
     public void release() {
         if (this.alloc != null) {
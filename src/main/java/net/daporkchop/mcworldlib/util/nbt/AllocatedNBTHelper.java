@@ -22,10 +22,15 @@ package net.daporkchop.mcworldlib.util.nbt;
 
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
+import net.daporkchop.lib.binary.stream.DataIn;
+import net.daporkchop.lib.binary.stream.DataOut;
 import net.daporkchop.lib.nbt.tag.CompoundTag;
 import net.daporkchop.lib.nbt.tag.ListTag;
+import net.daporkchop.lib.nbt.tag.StringTag;
 import net.daporkchop.lib.nbt.tag.Tag;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -38,6 +43,94 @@ import static net.daporkchop.lib.common.util.PorkUtil.*;
  */
 @UtilityClass
 public class AllocatedNBTHelper {
+    /**
+     * The size of the scratch buffer used for bulk array reads and writes.
+     */
+    protected final int SCRATCH_BYTES = 1 << 13;
+
+    /**
+     * A rough estimate of the memory occupied by a single tag object (or compound entry), not including any array or string data.
+     */
+    protected final long TAG_OVERHEAD = 32L;
+
+    protected final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCRATCH_BYTES)); //big-endian by default
+
+    /**
+     * Reads a sequence of big-endian {@code long}s in bulk.
+     * <p>
+     * Rather than reading each element individually, this copies the raw bytes in large blocks and then converts them using a {@link java.nio.LongBuffer}
+     * view, which the JIT is able to turn into a simple memory copy with byte-swapping.
+     *
+     * @param in     the {@link DataIn} to read from
+     * @param dst    the array to read into
+     * @param length the number of elements to read
+     */
+    public void readLongs(@NonNull DataIn in, @NonNull long[] dst, int length) throws IOException {
+        ByteBuffer scratch = SCRATCH.get();
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, SCRATCH_BYTES >> 3);
+            in.readFully(scratch.array(), 0, count << 3);
+            scratch.clear();
+            scratch.asLongBuffer().get(dst, i, count);
+            i += count;
+        }
+    }
+
+    /**
+     * Reads a sequence of big-endian {@code int}s in bulk.
+     *
+     * @param in     the {@link DataIn} to read from
+     * @param dst    the array to read into
+     * @param length the number of elements to read
+     * @see #readLongs(DataIn, long[], int)
+     */
+    public void readInts(@NonNull DataIn in, @NonNull int[] dst, int length) throws IOException {
+        ByteBuffer scratch = SCRATCH.get();
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, SCRATCH_BYTES >> 2);
+            in.readFully(scratch.array(), 0, count << 2);
+            scratch.clear();
+            scratch.asIntBuffer().get(dst, i, count);
+            i += count;
+        }
+    }
+
+    /**
+     * Writes a sequence of big-endian {@code long}s in bulk.
+     *
+     * @param out    the {@link DataOut} to write to
+     * @param src    the array to write from
+     * @param length the number of elements to write
+     */
+    public void writeLongs(@NonNull DataOut out, @NonNull long[] src, int length) throws IOException {
+        ByteBuffer scratch = SCRATCH.get();
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, SCRATCH_BYTES >> 3);
+            scratch.clear();
+            scratch.asLongBuffer().put(src, i, count);
+            out.write(scratch.array(), 0, count << 3);
+            i += count;
+        }
+    }
+
+    /**
+     * Writes a sequence of big-endian {@code int}s in bulk.
+     *
+     * @param out    the {@link DataOut} to write to
+     * @param src    the array to write from
+     * @param length the number of elements to write
+     */
+    public void writeInts(@NonNull DataOut out, @NonNull int[] src, int length) throws IOException {
+        ByteBuffer scratch = SCRATCH.get();
+        for (int i = 0; i < length; ) {
+            int count = Math.min(length - i, SCRATCH_BYTES >> 2);
+            scratch.clear();
+            scratch.asIntBuffer().put(src, i, count);
+            out.write(scratch.array(), 0, count << 2);
+            i += count;
+        }
+    }
+
     public void release(@NonNull Tag<?> tag) {
         if (tag instanceof CompoundTag) {
             ((CompoundTag) tag).forEach((name, childTag) -> release(childTag));
@@ -48,6 +141,33 @@ public class AllocatedNBTHelper {
         }
     }
 
+    /**
+     * Estimates the amount of memory retained by the given tag and all of its children.
+     * <p>
+     * Array and string data is counted exactly, every other tag is assumed to cost a fixed {@link #TAG_OVERHEAD}.
+     *
+     * @param tag the tag
+     * @return the approximate number of bytes retained by the tag
+     */
+    public long retainedBytes(@NonNull Tag<?> tag) {
+        long bytes = TAG_OVERHEAD;
+        if (tag instanceof CompoundTag) {
+            for (Iterator<Map.Entry<String, Tag>> itr = ((CompoundTag) tag).iterator(); itr.hasNext(); ) {
+                Map.Entry<String, Tag> entry = itr.next();
+                bytes += TAG_OVERHEAD + (entry.getKey().length() << 1) + retainedBytes(entry.getValue());
+            }
+        } else if (tag instanceof ListTag) {
+            for (Tag<?> childTag : ((ListTag<?>) tag).list()) {
+                bytes += retainedBytes(childTag);
+            }
+        } else if (tag instanceof AllocatedTag) {
+            bytes += ((AllocatedTag) tag).retainedBytes();
+        } else if (tag instanceof StringTag) {
+            bytes += ((StringTag) tag).value().length() << 1;
+        }
+        return bytes;
+    }
+
     public <T extends Tag> T toNormalAndRelease(@NonNull Tag<?> tag) {
         if (tag instanceof CompoundTag) {
             for (Iterator<Map.Entry<String, Tag>> itr = ((CompoundTag) tag).iterator(); itr.hasNext(); ) {
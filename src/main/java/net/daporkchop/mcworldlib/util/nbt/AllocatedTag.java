@@ -34,6 +34,11 @@ public interface AllocatedTag {
      */
     void release();
 
+    /**
+     * @return the amount of memory (in bytes) retained by this tag's data
+     */
+    long retainedBytes();
+
     /**
      * Converts this tag to the ordinary, non-allocated equivalent, and subsequently releases this tag's data back to the parent allocator.
      *
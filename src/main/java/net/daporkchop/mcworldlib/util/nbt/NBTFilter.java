@@ -0,0 +1,56 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.util.nbt;
+
+import lombok.NonNull;
+
+/**
+ * Decides which parts of a compound tag should be kept when filtering NBT data using {@link NBTStreamReader#filterRoot(NBTFilter)}.
+ *
+ * @author DaPorkchop_
+ */
+@FunctionalInterface
+public interface NBTFilter {
+    /**
+     * A filter which keeps everything.
+     */
+    NBTFilter KEEP_ALL = reader -> true;
+
+    /**
+     * Checks whether or not the reader's current entry should be kept.
+     *
+     * @param reader the {@link NBTStreamReader}, positioned at the entry in question
+     * @return whether or not the entry should be kept
+     */
+    boolean keep(@NonNull NBTStreamReader reader);
+
+    /**
+     * Gets the filter to apply to the value of the reader's current entry, if it is a compound tag or a list of compound tags.
+     * <p>
+     * If a list of compound tags, the returned filter will be applied to each of the list's elements.
+     *
+     * @param reader the {@link NBTStreamReader}, positioned at the entry in question
+     * @return the filter to apply to the entry's value. If {@link #KEEP_ALL}, the value will be copied in bulk without being parsed
+     */
+    default NBTFilter child(@NonNull NBTStreamReader reader) {
+        return KEEP_ALL;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.util.nbt;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+
+import static net.daporkchop.lib.nbt.tag.Tag.*;
+
+/**
+ * A pull-style reader for binary NBT data stored in a {@link ByteBuf}.
+ * <p>
+ * Unlike {@link net.daporkchop.lib.nbt.NBTFormat}, this does not build a tree of tag objects. Entries of a compound tag are visited one at a time
+ * using {@link #next()}, and the value of each entry may either be read or skipped entirely. Skipping relies on the length prefixes of arrays, strings
+ * and lists of fixed-size elements wherever possible, so skipping a subtree never allocates anything.
+ * <p>
+ * Names and strings are decoded as modified UTF-8, exactly like {@link java.io.DataInput#readUTF()}.
+ * <p>
+ * Only big-endian NBT data is supported.
+ *
+ * @author DaPorkchop_
+ */
+public final class NBTStreamReader {
+    /**
+     * Skips the value of a tag with the given type.
+     *
+     * @param buf the {@link ByteBuf} to read from
+     * @param id  the tag type
+     */
+    public static void skip(@NonNull ByteBuf buf, int id) throws IOException {
+        switch (id) {
+            case TAG_BYTE:
+                buf.skipBytes(1);
+                break;
+            case TAG_SHORT:
+                buf.skipBytes(2);
+                break;
+            case TAG_INT:
+            case TAG_FLOAT:
+                buf.skipBytes(4);
+                break;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                buf.skipBytes(8);
+                break;
+            case TAG_ARRAY_BYTE:
+                buf.skipBytes(checkLength(buf.readInt()));
+                break;
+            case TAG_STRING:
+                buf.skipBytes(buf.readUnsignedShort());
+                break;
+            case TAG_LIST: {
+                int elementId = buf.readUnsignedByte();
+                int length = checkLength(buf.readInt());
+                int elementSize = fixedSize(elementId);
+                if (elementSize >= 0) {
+                    buf.skipBytes(Math.multiplyExact(length, elementSize));
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        skip(buf, elementId);
+                    }
+                }
+                break;
+            }
+            case TAG_COMPOUND:
+                for (int childId; (childId = buf.readUnsignedByte()) != TAG_END; ) {
+                    buf.skipBytes(buf.readUnsignedShort());
+                    skip(buf, childId);
+                }
+                break;
+            case TAG_ARRAY_INT:
+                buf.skipBytes(Math.multiplyExact(checkLength(buf.readInt()), 4));
+                break;
+            case TAG_ARRAY_LONG:
+                buf.skipBytes(Math.multiplyExact(checkLength(buf.readInt()), 8));
+                break;
+            default:
+                throw new IOException("Unknown tag id: " + id);
+        }
+    }
+
+    /**
+     * Gets the size of the value of a tag with the given type, if it has a fixed size.
+     *
+     * @param id the tag type
+     * @return the size of the tag's value, or {@code -1} if it is variable
+     */
+    public static int fixedSize(int id) {
+        switch (id) {
+            case TAG_END:
+                return 0;
+            case TAG_BYTE:
+                return 1;
+            case TAG_SHORT:
+                return 2;
+            case TAG_INT:
+            case TAG_FLOAT:
+                return 4;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    protected static int checkLength(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Negative length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decodes a modified UTF-8 string, using the same rules as {@link java.io.DataInput#readUTF()}.
+     *
+     * @param buf    the {@link ByteBuf} containing the encoded string
+     * @param offset the index of the first byte of the encoded string
+     * @param length the length of the encoded string (in bytes)
+     * @return the decoded string
+     * @throws UTFDataFormatException if the bytes do not represent a valid modified UTF-8 string
+     */
+    public static String decodeUTF(@NonNull ByteBuf buf, int offset, int length) throws UTFDataFormatException {
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = offset, end = offset + length; i < end; ) {
+            int c = buf.getByte(i) & 0xFF;
+            switch (c >> 4) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                case 5:
+                case 6:
+                case 7: //0xxxxxxx
+                    chars[count++] = (char) c;
+                    i++;
+                    break;
+                case 12:
+                case 13: { //110xxxxx 10xxxxxx
+                    if (i + 2 > end) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+                    int c2 = buf.getByte(i + 1);
+                    if ((c2 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+                    }
+                    chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                    i += 2;
+                    break;
+                }
+                case 14: { //1110xxxx 10xxxxxx 10xxxxxx
+                    if (i + 3 > end) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+                    int c2 = buf.getByte(i + 1);
+                    int c3 = buf.getByte(i + 2);
+                    if ((c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+                    }
+                    chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                    i += 3;
+                    break;
+                }
+                default: //10xxxxxx, 1111xxxx
+                    throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    @Getter
+    protected final ByteBuf buf;
+
+    /**
+     * The type of the current entry.
+     */
+    @Getter
+    protected int id;
+    /**
+     * The position of the current entry (i.e. the position of its type byte).
+     */
+    @Getter
+    protected int entryStart;
+    protected int nameOffset;
+    protected int nameLength;
+
+    /**
+     * The index that the next kept range will be moved to while filtering in place.
+     */
+    protected int writerIndex;
+
+    /**
+     * @param buf the {@link ByteBuf} to read from. Reading will start at the buffer's current reader index, and will advance it
+     */
+    public NBTStreamReader(@NonNull ByteBuf buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * Reads the header of the root tag, which must be a compound tag.
+     * <p>
+     * After this method returns, the root tag's entries may be visited using {@link #next()}.
+     *
+     * @return the root tag's name
+     */
+    public String readRoot() throws IOException {
+        if (this.next() != TAG_COMPOUND) {
+            throw new IOException("Root tag must be a compound tag, but found " + this.id);
+        }
+        return this.name();
+    }
+
+    /**
+     * Advances to the next entry of the compound tag which is currently being read.
+     * <p>
+     * The entry's value must be completely read or skipped before this method is called again.
+     *
+     * @return the type of the next entry, or {@link net.daporkchop.lib.nbt.tag.Tag#TAG_END} if the end of the compound tag has been reached
+     */
+    public int next() {
+        this.entryStart = this.buf.readerIndex();
+        if ((this.id = this.buf.readUnsignedByte()) != TAG_END) {
+            this.nameLength = this.buf.readUnsignedShort();
+            this.nameOffset = this.buf.readerIndex();
+            this.buf.skipBytes(this.nameLength);
+        } else {
+            this.nameLength = 0;
+        }
+        return this.id;
+    }
+
+    /**
+     * @return the name of the current entry
+     */
+    public String name() throws IOException {
+        return decodeUTF(this.buf, this.nameOffset, this.nameLength);
+    }
+
+    /**
+     * Checks whether or not the name of the current entry is equal to the given name, without decoding it.
+     *
+     * @param name the name to compare against
+     * @return whether or not the name of the current entry is equal to the given name
+     */
+    public boolean nameEquals(@NonNull String name) {
+        int length = name.length();
+        if (length != this.nameLength) {
+            //this can only match if the name contains NUL or non-ASCII characters, which are encoded using more than one byte
+            return length < this.nameLength && this.decodedNameEquals(name);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c == 0 || c >= 0x80) {
+                return this.decodedNameEquals(name);
+            } else if (c != this.buf.getByte(this.nameOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean decodedNameEquals(@NonNull String name) {
+        try {
+            return this.name().equals(name);
+        } catch (IOException e) { //a malformed name can't be equal to anything
+            return false;
+        }
+    }
+
+    /**
+     * Skips the value of the current entry.
+     */
+    public void skip() throws IOException {
+        skip(this.buf, this.id);
+    }
+
+    public byte readByte() {
+        return this.buf.readByte();
+    }
+
+    public short readShort() {
+        return this.buf.readShort();
+    }
+
+    public int readInt() {
+        return this.buf.readInt();
+    }
+
+    public long readLong() {
+        return this.buf.readLong();
+    }
+
+    public float readFloat() {
+        return this.buf.readFloat();
+    }
+
+    public double readDouble() {
+        return this.buf.readDouble();
+    }
+
+    public String readString() throws IOException {
+        int length = this.buf.readUnsignedShort();
+        String value = decodeUTF(this.buf, this.buf.readerIndex(), length);
+        this.buf.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * Reads the header of a list tag.
+     * <p>
+     * The list's elements must then be read or skipped in order. If the elements are compound tags, their entries may be visited using {@link #next()}.
+     *
+     * @return the type of the list's elements
+     */
+    public int readListType() {
+        return this.buf.readUnsignedByte();
+    }
+
+    /**
+     * Reads the length of a list tag or array tag.
+     *
+     * @return the length
+     */
+    public int readLength() throws IOException {
+        return checkLength(this.buf.readInt());
+    }
+
+    /**
+     * Filters the root compound tag in place, omitting any subtrees which are rejected by the given {@link NBTFilter}.
+     * <p>
+     * Every kept range is moved down to directly follow the previously kept range, so the filtered NBT data ends up at the start of the region that
+     * was read, and no additional buffer is needed. Ranges which follow no omitted data are already in the right place and aren't touched at all, and
+     * subtrees which are kept in their entirety are moved in bulk without being parsed.
+     * <p>
+     * The contents of the buffer beyond the returned index are undefined once this method returns.
+     *
+     * @param filter the {@link NBTFilter} to apply to the root tag
+     * @return the index directly after the end of the filtered NBT data
+     */
+    public int filterRoot(@NonNull NBTFilter filter) throws IOException {
+        this.writerIndex = this.buf.readerIndex();
+        this.readRoot();
+        this.keep(this.entryStart);
+        this.filterCompound(filter);
+        return this.writerIndex;
+    }
+
+    protected void filterCompound(@NonNull NBTFilter filter) throws IOException {
+        for (int id; (id = this.next()) != TAG_END; ) {
+            if (!filter.keep(this)) {
+                this.skip();
+                continue;
+            }
+
+            int entryStart = this.entryStart;
+            NBTFilter child = id == TAG_COMPOUND || id == TAG_LIST ? filter.child(this) : NBTFilter.KEEP_ALL;
+            if (child == NBTFilter.KEEP_ALL) { //keep the entire entry in bulk
+                this.skip();
+                this.keep(entryStart);
+            } else if (id == TAG_COMPOUND) {
+                this.keep(entryStart);
+                this.filterCompound(child);
+            } else { //list
+                int elementId = this.readListType();
+                int length = this.readLength();
+                this.keep(entryStart);
+                if (elementId == TAG_COMPOUND) {
+                    for (int i = 0; i < length; i++) {
+                        this.filterCompound(child);
+                    }
+                } else {
+                    int start = this.buf.readerIndex();
+                    for (int i = 0; i < length; i++) {
+                        skip(this.buf, elementId);
+                    }
+                    this.keep(start);
+                }
+            }
+        }
+        this.keep(this.entryStart); //TAG_END
+    }
+
+    /**
+     * Keeps all the bytes between the given index and the current reader index, moving them down to the current writer index.
+     * <p>
+     * The writer index never exceeds the start of the range, so this never overwrites anything which hasn't been read yet.
+     *
+     * @param start the index of the first byte to keep
+     */
+    protected void keep(int start) {
+        int length = this.buf.readerIndex() - start;
+        int dst = this.writerIndex;
+        this.writerIndex += length;
+        if (dst != start) {
+            //copy in steps no longer than the distance between source and destination, so that each copy's ranges never overlap
+            for (int src = start, gap = start - dst, n; length > 0; src += n, dst += n, length -= n) {
+                this.buf.setBytes(dst, this.buf, src, n = Math.min(length, gap));
+            }
+        }
+    }
+}
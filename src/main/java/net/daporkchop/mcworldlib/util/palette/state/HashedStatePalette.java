@@ -0,0 +1,88 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.mcworldlib.util.palette.state;
+
+import lombok.NonNull;
+import net.daporkchop.mcworldlib.block.BlockState;
+
+import static net.daporkchop.lib.common.math.PMath.*;
+
+/**
+ * Implementation of {@link StatePalette} which additionally maintains an open-addressed hash table mapping states back to their IDs.
+ * <p>
+ * This makes {@link #stateToId(BlockState)} run in constant time rather than having to scan the entire palette, at the cost of a small {@code int[]}.
+ *
+ * @author DaPorkchop_
+ */
+public class HashedStatePalette extends ArrayStatePalette {
+    /**
+     * The hash table. Each slot contains either {@code 0} if it is empty, or the ID of the state in the slot plus one.
+     */
+    protected final int[] table;
+    protected final int mask;
+
+    public HashedStatePalette(int capacity) {
+        super(capacity);
+
+        //keep the load factor at or below 50%
+        this.table = new int[Math.max(Integer.highestOneBit(Math.max(capacity, 1) - 1) << 2, 4)];
+        this.mask = this.table.length - 1;
+    }
+
+    public HashedStatePalette(int capacity, @NonNull Iterable<BlockState> initialContents) {
+        this(capacity);
+
+        for (BlockState state : initialContents) {
+            int id = this.nextId++;
+            this.values[id] = state;
+            this.insert(state, id);
+        }
+    }
+
+    @Override
+    public int stateToId(@NonNull BlockState state) {
+        int slot = mix32(state.hashCode()) & this.mask;
+        for (int entry; (entry = this.table[slot]) != 0; slot = (slot + 1) & this.mask) {
+            if (this.values[entry - 1] == state) {
+                return entry - 1;
+            }
+        }
+
+        if (this.values.length > this.nextId) { //the slot we ended up at is empty, so we can insert the new state there
+            int id = this.nextId++;
+            this.values[id] = state;
+            this.table[slot] = id + 1;
+            return id;
+        }
+        return -1;
+    }
+
+    protected void insert(@NonNull BlockState state, int id) {
+        int slot = mix32(state.hashCode()) & this.mask;
+        while (this.table[slot] != 0) {
+            if (this.values[this.table[slot] - 1] == state) { //duplicate state, keep the lowest ID
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.table[slot] = id + 1;
+    }
+}
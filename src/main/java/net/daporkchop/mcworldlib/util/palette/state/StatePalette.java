@@ -29,6 +29,32 @@ import net.daporkchop.mcworldlib.block.BlockState;
  * @author DaPorkchop_
  */
 public interface StatePalette {
+    /**
+     * Palettes with a capacity above this are backed by a hash table, smaller ones are simply scanned linearly.
+     */
+    int HASH_THRESHOLD = 16;
+
+    /**
+     * Creates a new, empty {@link StatePalette}, automatically choosing the best implementation for the given capacity.
+     *
+     * @param capacity the maximum number of states in the palette
+     * @return the new palette
+     */
+    static StatePalette create(int capacity) {
+        return capacity > HASH_THRESHOLD ? new HashedStatePalette(capacity) : new ArrayStatePalette(capacity);
+    }
+
+    /**
+     * Creates a new {@link StatePalette} with the given initial contents, automatically choosing the best implementation for the given capacity.
+     *
+     * @param capacity        the maximum number of states in the palette
+     * @param initialContents the states to add to the palette, in order of their IDs
+     * @return the new palette
+     */
+    static StatePalette create(int capacity, @NonNull Iterable<BlockState> initialContents) {
+        return capacity > HASH_THRESHOLD ? new HashedStatePalette(capacity, initialContents) : new ArrayStatePalette(capacity, initialContents);
+    }
+
     /**
      * Gets the ID mapped to the given block state.
      * <p>
@@ -33,6 +33,8 @@ import net.daporkchop.mcworldlib.util.Util;
 import net.daporkchop.mcworldlib.version.MinecraftEdition;
 import net.daporkchop.mcworldlib.version.MinecraftVersion;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -49,7 +51,10 @@ public class JavaVersion extends MinecraftVersion {
     private static final IntObjMap<JavaVersion> DATA_VERSION_CACHE = new IntObjOpenHashMap<>();
 
     static {
-        JavaVersion[] versions = Util.parseJson(JavaVersion[].class, "versions.json");
+        JavaVersion[] versions = Util.readBinaryTable(JavaVersion.class, "versions.bin", JavaVersion::readBinary);
+        if (versions == null) { //the precompiled version list isn't available, fall back to parsing the json
+            versions = Util.parseJson(JavaVersion[].class, "versions.json");
+        }
         for (JavaVersion version : versions) {
             checkState(NAME_CACHE.putIfAbsent(version.name, version) == null, "duplicate version name: %s", version.name);
 
@@ -58,6 +63,27 @@ public class JavaVersion extends MinecraftVersion {
         }
     }
 
+    /**
+     * Reads the version list in the binary form generated by the {@code compileDataTables} gradle task.
+     * <p>
+     * Format (big-endian):
+     * <ul>
+     *     <li>{@code int}: the format version, currently {@code 1}</li>
+     *     <li>{@code int}: the number of versions, followed by the name (written using {@link java.io.DataOutputStream#writeUTF(String)}), protocol
+     *     version and data version (as {@code int}s) of each version, in the same order as in {@code versions.json}</li>
+     * </ul>
+     */
+    private static JavaVersion[] readBinary(@NonNull DataInputStream data) throws IOException {
+        int format = data.readInt();
+        checkState(format == 1, "unsupported version list format: %d", format);
+
+        JavaVersion[] versions = new JavaVersion[data.readInt()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = new JavaVersion(data.readUTF(), data.readInt(), data.readInt());
+        }
+        return versions;
+    }
+
     public static JavaVersion fromName(@NonNull String nameIn) {
         return NAME_CACHE.getOrDefault(nameIn, pre15w32a());
     }
@@ -23,12 +23,14 @@ package net.daporkchop.mcworldlib.world;
 import lombok.NonNull;
 import net.daporkchop.lib.common.misc.refcount.RefCounted;
 import net.daporkchop.lib.concurrent.PFuture;
+import net.daporkchop.lib.math.vector.i.Vec2i;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
 import net.daporkchop.mcworldlib.world.section.Section;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Spliterator;
+import java.util.stream.StreamSupport;
 
 /**
  * Interface for loading/saving chunks/sections.
@@ -227,6 +229,57 @@ public interface WorldStorage extends RefCounted {
      */
     Spliterator<Section> allSections() throws IOException;
 
+    /**
+     * Gets a {@link Spliterator} over the positions of all the chunks in the world which have been modified since the given time.
+     * <p>
+     * Implementations should answer this using as little I/O as possible (e.g. without loading any of the chunks), so that the cost of incremental
+     * processing is proportional to the number of modified chunks rather than the size of the world.
+     * <p>
+     * The result may include chunks which were modified slightly before the given time (for instance, if the implementation only stores modification
+     * times with a resolution of one second), but will never miss a chunk which was modified at or after it. Implementations which don't record
+     * modification times at all may simply return every chunk in the world, which is what the default implementation does.
+     *
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return a {@link Spliterator} over the X,Z coordinates of all the chunks in the world which have been modified since the given time
+     */
+    default Spliterator<Vec2i> chunksModifiedSince(long timestamp) throws IOException {
+        return StreamSupport.stream(this.allChunks(), false)
+                .map(chunk -> {
+                    try {
+                        return new Vec2i(chunk.x(), chunk.z());
+                    } finally {
+                        chunk.release();
+                    }
+                })
+                .spliterator();
+    }
+
+    /**
+     * Gets a {@link Spliterator} over all the {@link Chunk}s in the world which have been modified since the given time.
+     * <p>
+     * Behaves like {@link #allChunks()}, except that chunks which haven't been modified since the given time are skipped without being loaded. The
+     * same rules as for {@link #chunksModifiedSince(long)} apply.
+     *
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return a {@link Spliterator} over all the {@link Chunk}s in the world which have been modified since the given time
+     */
+    default Spliterator<Chunk> allChunksModifiedSince(long timestamp) throws IOException {
+        return this.allChunks();
+    }
+
+    /**
+     * Gets a {@link Spliterator} over all the {@link Section}s in the world which belong to chunks that have been modified since the given time.
+     * <p>
+     * Behaves like {@link #allSections()}, except that chunks which haven't been modified since the given time are skipped without being loaded. The
+     * same rules as for {@link #chunksModifiedSince(long)} apply.
+     *
+     * @param timestamp the time, in milliseconds since the UNIX epoch
+     * @return a {@link Spliterator} over all the {@link Section}s in the world which belong to chunks that have been modified since the given time
+     */
+    default Spliterator<Section> allSectionsModifiedSince(long timestamp) throws IOException {
+        return this.allSections();
+    }
+
     @Override
     WorldStorage retain() throws AlreadyReleasedException;
 }
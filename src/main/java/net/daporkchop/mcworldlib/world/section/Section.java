@@ -118,6 +118,11 @@ public interface Section extends LightAccess, IntHolderXYZ, RefCounted {
      */
     Collection<CompoundTag> entities();
 
+    /**
+     * @return an estimate of the amount of memory (in bytes) retained by this section's block data, light data, tile entities and entities
+     */
+    long retainedBytes();
+
     @Override
     Section retain() throws AlreadyReleasedException;
 }
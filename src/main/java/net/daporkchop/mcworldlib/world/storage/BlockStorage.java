@@ -43,6 +43,11 @@ public interface BlockStorage extends Cloneable<BlockStorage>, RefCounted {
         checkIndex(z >= 0 && z < 16, "z");
     }
 
+    /**
+     * @return an estimate of the amount of memory (in bytes) retained by this storage's data
+     */
+    long retainedBytes();
+
     @Override
     BlockStorage retain() throws AlreadyReleasedException;
 }
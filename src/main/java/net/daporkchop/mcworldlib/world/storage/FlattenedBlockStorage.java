@@ -20,11 +20,15 @@
 
 package net.daporkchop.mcworldlib.world.storage;
 
+import lombok.NonNull;
 import net.daporkchop.lib.binary.bit.BitArray;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
+import net.daporkchop.mcworldlib.block.BlockState;
 import net.daporkchop.mcworldlib.block.access.FlattenedBlockAccess;
 import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
 
+import static net.daporkchop.lib.common.util.PValidation.*;
+
 /**
  * A block storage using flattened block IDs.
  *
@@ -33,9 +37,89 @@ import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
 public interface FlattenedBlockStorage extends FlattenedBlockAccess, BlockStorage {
     FlattenedBlockStorage clone();
 
+    /**
+     * Checks whether every block in this storage is known to have the same state.
+     * <p>
+     * This is a cheap check intended to allow e.g. scanners to skip entire sections of air or stone, and may return {@code false} even if the
+     * storage happens to contain only a single block state.
+     *
+     * @return whether every block in this storage is known to have the same state
+     */
+    default boolean isUniform() {
+        return false;
+    }
+
+    /**
+     * @return the block state of every block in this storage if {@link #isUniform()} is {@code true}, otherwise {@code null}
+     */
+    default BlockState uniformState() {
+        return null;
+    }
+
     @Override
     FlattenedBlockStorage retain() throws AlreadyReleasedException;
 
+    /**
+     * Unpacks the palette IDs of every block in this storage into the given array.
+     * <p>
+     * The IDs are relative to {@link Internal#palette()}, and are written in YZX order (i.e. the ID of the block at the given coordinates is at
+     * index {@code (y << 8) | (z << 4) | x}). This is significantly faster than calling {@link #getBlockState(int, int, int)} for every block.
+     *
+     * @param dst the array to unpack the IDs into. Must have at least {@link #NUM_BLOCKS} elements
+     */
+    default void getPaletteIds(@NonNull int[] dst) {
+        checkArg(dst.length >= NUM_BLOCKS, "dst (%d) must be at least %d entries!", dst.length, NUM_BLOCKS);
+        BitArray data = this.internal().data();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            dst[i] = data.get(i);
+        }
+    }
+
+    /**
+     * Unpacks the palette IDs of every block in this storage into the given array.
+     * <p>
+     * Behaves like {@link #getPaletteIds(int[])}, except that the IDs are stored as unsigned {@code short}s.
+     *
+     * @param dst the array to unpack the IDs into. Must have at least {@link #NUM_BLOCKS} elements
+     */
+    default void getPaletteIds(@NonNull short[] dst) {
+        checkArg(dst.length >= NUM_BLOCKS, "dst (%d) must be at least %d entries!", dst.length, NUM_BLOCKS);
+        BitArray data = this.internal().data();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            dst[i] = (short) data.get(i);
+        }
+    }
+
+    /**
+     * Packs the palette IDs of every block in this storage from the given array.
+     * <p>
+     * This is the reverse of {@link #getPaletteIds(int[])}. The palette is not modified, so the caller must ensure that every ID is valid for it.
+     *
+     * @param src the array to pack the IDs from. Must have at least {@link #NUM_BLOCKS} elements
+     */
+    default void setPaletteIds(@NonNull int[] src) {
+        checkArg(src.length >= NUM_BLOCKS, "src (%d) must be at least %d entries!", src.length, NUM_BLOCKS);
+        BitArray data = this.internal().data();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            data.set(i, src[i]);
+        }
+    }
+
+    /**
+     * Packs the palette IDs of every block in this storage from the given array.
+     * <p>
+     * Behaves like {@link #setPaletteIds(int[])}, except that the IDs are read as unsigned {@code short}s.
+     *
+     * @param src the array to pack the IDs from. Must have at least {@link #NUM_BLOCKS} elements
+     */
+    default void setPaletteIds(@NonNull short[] src) {
+        checkArg(src.length >= NUM_BLOCKS, "src (%d) must be at least %d entries!", src.length, NUM_BLOCKS);
+        BitArray data = this.internal().data();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            data.set(i, src[i] & 0xFFFF);
+        }
+    }
+
     Internal internal();
 
     /**
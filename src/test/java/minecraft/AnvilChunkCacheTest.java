@@ -0,0 +1,196 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import net.daporkchop.mcworldlib.format.anvil.storage.AnvilCachedChunk;
+import net.daporkchop.mcworldlib.format.anvil.storage.AnvilChunkCache;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class AnvilChunkCacheTest {
+    @Test
+    public void testWeightBound() {
+        AtomicInteger released = new AtomicInteger();
+        AnvilChunkCache cache = new AnvilChunkCache(1000, 10L * 100L, Long.MAX_VALUE);
+
+        AnvilChunkCache.Entry held = null;
+        for (long key = 0L; key < 100L; key++) {
+            AnvilChunkCache.Entry entry = cache.acquire(key, loader(released, 100L));
+            if (key == 50L) { //keep a lease on one chunk which won't be admitted
+                held = entry;
+            } else {
+                entry.release();
+            }
+            checkState(cache.weight() <= 10L * 100L, "weight %d exceeds the limit", cache.weight());
+        }
+        checkState(cache.size() == 10, "size is %d", cache.size());
+        checkState(cache.evictions() == 90L, "evictions: %d", cache.evictions());
+
+        //chunk 50 has been evicted, but it mustn't be released while we still hold a lease on it
+        checkState(cache.acquireIfPresent(50L) == null);
+        checkState(released.get() == 89, "released: %d", released.get());
+        held.release();
+        checkState(released.get() == 90, "released: %d", released.get());
+
+        cache.clear();
+        checkState(cache.size() == 0 && cache.weight() == 0L);
+        checkState(released.get() == 100, "released: %d", released.get());
+    }
+
+    @Test
+    public void testScanResistance() {
+        AtomicInteger released = new AtomicInteger();
+        AnvilChunkCache cache = new AnvilChunkCache(100, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        //a working set which is accessed repeatedly
+        for (int i = 0; i < 10; i++) {
+            for (long key = 0L; key < 50L; key++) {
+                cache.acquire(key, loader(released, 1L)).release();
+            }
+        }
+        checkState(cache.hits() == 450L && cache.misses() == 50L);
+
+        //a scan over lots of chunks which are only accessed once
+        for (long key = 1000L; key < 1200L; key++) {
+            cache.acquire(key, loader(released, 1L)).release();
+        }
+        checkState(cache.size() == 100, "size is %d", cache.size());
+
+        //the scan must not have been admitted at the expense of the working set
+        for (long key = 0L; key < 50L; key++) {
+            AnvilChunkCache.Entry entry = cache.acquireIfPresent(key);
+            checkState(entry != null, "chunk %d was evicted", key);
+            entry.release();
+        }
+        checkState(released.get() == cache.evictions());
+        cache.clear();
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        AtomicInteger released = new AtomicInteger();
+        AnvilChunkCache cache = new AnvilChunkCache(4, Long.MAX_VALUE, 50L);
+
+        for (long key = 0L; key < 4L; key++) {
+            cache.acquire(key, loader(released, 1L)).release();
+        }
+        checkState(cache.size() == 4);
+
+        Thread.sleep(100L);
+
+        //the sweep for expired chunks also runs when the cache is over capacity
+        cache.acquire(4L, loader(released, 1L)).release();
+        checkState(cache.size() == 1, "size is %d", cache.size());
+        checkState(released.get() == 4, "released: %d", released.get());
+        for (long key = 0L; key < 4L; key++) {
+            checkState(cache.acquireIfPresent(key) == null, "chunk %d didn't expire", key);
+        }
+        cache.clear();
+    }
+
+    @Test
+    public void testExpiryUnderCapacity() throws InterruptedException {
+        AtomicInteger released = new AtomicInteger();
+        AnvilChunkCache cache = new AnvilChunkCache(100, Long.MAX_VALUE, 50L);
+
+        for (long key = 0L; key < 4L; key++) {
+            cache.acquire(key, loader(released, 1L)).release();
+        }
+        checkState(cache.size() == 4);
+
+        Thread.sleep(100L);
+
+        //the cache is nowhere near full, but a plain hit must still expire every chunk that hasn't been accessed recently
+        AnvilChunkCache.Entry entry = cache.acquireIfPresent(0L);
+        checkState(entry != null);
+        entry.release();
+        checkState(cache.size() == 1, "size is %d", cache.size());
+        checkState(released.get() == 3, "released: %d", released.get());
+        for (long key = 1L; key < 4L; key++) {
+            checkState(cache.acquireIfPresent(key) == null, "chunk %d didn't expire", key);
+        }
+        cache.clear();
+        checkState(released.get() == 4, "released: %d", released.get());
+    }
+
+    @Test
+    public void testConcurrentLoad() throws InterruptedException {
+        AtomicInteger released = new AtomicInteger();
+        AtomicInteger loads = new AtomicInteger();
+        AnvilChunkCache cache = new AnvilChunkCache(100, Long.MAX_VALUE, Long.MAX_VALUE);
+        LongFunction<AnvilCachedChunk> loader = loader(released, 1L);
+
+        //every thread looks up the same chunk at once, it must only be loaded once and every thread must get the same entry
+        Thread[] threads = new Thread[8];
+        AnvilChunkCache.Entry[] entries = new AnvilChunkCache.Entry[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> entries[index] = cache.acquire(0L, key -> {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return loader.apply(key);
+            }));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        checkState(loads.get() == 1, "loaded %d times", loads.get());
+        for (AnvilChunkCache.Entry entry : entries) {
+            checkState(entry == entries[0]);
+            entry.release();
+        }
+        cache.clear();
+        checkState(released.get() == 1, "released: %d", released.get());
+    }
+
+    @Test
+    public void testLoaderReturnsNull() {
+        AnvilChunkCache cache = new AnvilChunkCache(4, Long.MAX_VALUE, Long.MAX_VALUE);
+        checkState(cache.acquire(0L, key -> null) == null);
+        checkState(cache.size() == 0 && cache.acquireIfPresent(0L) == null);
+    }
+
+    private static LongFunction<AnvilCachedChunk> loader(AtomicInteger released, long weight) {
+        return key -> {
+            AnvilCachedChunk chunk = new AnvilCachedChunk.ReadOnlyEmpty() {
+                @Override
+                protected void doRelease() {
+                    released.incrementAndGet();
+                }
+            };
+            chunk.weight(weight);
+            return chunk;
+        };
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import lombok.NonNull;
+import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.block.BlockStateTable;
+import net.daporkchop.mcworldlib.format.common.storage.flattened.HeapPackedFlattenedBlockStorage;
+import net.daporkchop.mcworldlib.format.common.storage.flattened.HeapPaddedFlattenedBlockStorage;
+import net.daporkchop.mcworldlib.util.Identifier;
+import net.daporkchop.mcworldlib.util.palette.state.ArrayStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.HashedStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.IdentityStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import net.daporkchop.mcworldlib.world.storage.FlattenedBlockStorage;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class FlattenedBlockStorageTest {
+    private static final int GLOBAL_STATES = 1000;
+    private static final BlockStateTable TABLE = new TestTable(GLOBAL_STATES);
+
+    private static BlockState state(int i) {
+        return BlockState.of(Identifier.fromString("test:storage"), Collections.singletonMap("i", String.valueOf(i)));
+    }
+
+    private static BlockState unknownState(int i) {
+        return BlockState.of(Identifier.fromString("test:unknown"), Collections.singletonMap("i", String.valueOf(i)));
+    }
+
+    @Test
+    public void testPaddedTiers() {
+        this.testTiers(new HeapPaddedFlattenedBlockStorage() {
+            @Override
+            protected BlockStateTable globalTable() {
+                return TABLE;
+            }
+        });
+    }
+
+    @Test
+    public void testPackedTiers() {
+        this.testTiers(new HeapPackedFlattenedBlockStorage() {
+            @Override
+            protected BlockStateTable globalTable() {
+                return TABLE;
+            }
+        });
+    }
+
+    private void testTiers(@NonNull FlattenedBlockStorage storage) {
+        BlockState[] expected = new BlockState[4096];
+        for (int i = 0; i < 257; i++) {
+            set(storage, expected, i, state(i));
+
+            int distinct = i + 1;
+            StatePalette palette = storage.internal().palette();
+            int bits = storage.internal().data().bits();
+            if (distinct <= StatePalette.HASH_THRESHOLD) {
+                checkState(palette instanceof ArrayStatePalette && !(palette instanceof HashedStatePalette), "%d states: %s", distinct, palette);
+                checkState(bits == 4, "%d states: %d bits", distinct, bits);
+            } else if (distinct <= 256) {
+                checkState(palette instanceof HashedStatePalette, "%d states: %s", distinct, palette);
+                checkState(bits == 32 - Integer.numberOfLeadingZeros(distinct - 1), "%d states: %d bits", distinct, bits);
+            } else { //every state is present in the global table
+                checkState(palette instanceof IdentityStatePalette, "%d states: %s", distinct, palette);
+                checkState(bits == 10, "%d states: %d bits", distinct, bits);
+            }
+            check(storage, expected);
+        }
+
+        //a state which is missing from the global table forces the storage back to a large local palette
+        set(storage, expected, 300, unknownState(0));
+        checkState(storage.internal().palette() instanceof HashedStatePalette, "%s", storage.internal().palette());
+        checkState(storage.internal().data().bits() == 9, "%d bits", storage.internal().data().bits());
+        check(storage, expected);
+
+        storage.release();
+    }
+
+    @Test
+    public void testUnknownStatesStayLocal() {
+        FlattenedBlockStorage storage = new HeapPaddedFlattenedBlockStorage() {
+            @Override
+            protected BlockStateTable globalTable() {
+                return TABLE;
+            }
+        };
+
+        BlockState[] expected = new BlockState[4096];
+        set(storage, expected, 0, unknownState(0));
+        for (int i = 1; i < 257; i++) {
+            set(storage, expected, i, state(i));
+        }
+        checkState(storage.internal().palette() instanceof HashedStatePalette, "%s", storage.internal().palette());
+        checkState(storage.internal().data().bits() == 9, "%d bits", storage.internal().data().bits());
+        check(storage, expected);
+
+        storage.release();
+    }
+
+    private static void set(@NonNull FlattenedBlockStorage storage, @NonNull BlockState[] expected, int index, @NonNull BlockState state) {
+        storage.setBlockState(index & 0xF, index >>> 8, (index >>> 4) & 0xF, state);
+        if (expected[0] == null) { //every block which hasn't been set yet has palette ID 0, which is the first state to be added
+            for (int i = 0; i < expected.length; i++) {
+                if (expected[i] == null) {
+                    expected[i] = state;
+                }
+            }
+        }
+        expected[index] = state;
+    }
+
+    private static void check(@NonNull FlattenedBlockStorage storage, @NonNull BlockState[] expected) {
+        int[] ids = new int[4096];
+        storage.getPaletteIds(ids);
+        StatePalette palette = storage.internal().palette();
+        for (int i = 0; i < 4096; i++) {
+            checkState(storage.getBlockState(i & 0xF, i >>> 8, (i >>> 4) & 0xF) == expected[i], "block %d", i);
+            checkState(palette.idToState(ids[i]) == expected[i], "palette ID of block %d", i);
+        }
+    }
+
+    /**
+     * A global palette containing only {@code test:storage} states.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class TestTable implements BlockStateTable {
+        private final BlockState[] states;
+        private final Map<BlockState, Integer> ids = new IdentityHashMap<>();
+
+        public TestTable(int size) {
+            this.states = new BlockState[size];
+            for (int i = 0; i < size; i++) {
+                this.ids.put(this.states[i] = state(i), i);
+            }
+        }
+
+        @Override
+        public int stateToId(@NonNull BlockState state) {
+            return this.ids.getOrDefault(state, -1);
+        }
+
+        @Override
+        public BlockState idToState(int id) {
+            return id >= 0 && id < this.states.length ? this.states[id] : null;
+        }
+
+        @Override
+        public int size() {
+            return this.states.length;
+        }
+    }
+}
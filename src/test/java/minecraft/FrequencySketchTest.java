@@ -0,0 +1,69 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import net.daporkchop.mcworldlib.util.cache.FrequencySketch;
+import org.junit.Test;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class FrequencySketchTest {
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        checkState(sketch.frequency(1L) == 0);
+
+        for (int i = 1; i <= 10; i++) {
+            sketch.increment(1L);
+            checkState(sketch.frequency(1L) >= i, "frequency is %d after %d increments", sketch.frequency(1L), i);
+        }
+        sketch.increment(2L);
+        checkState(sketch.frequency(1L) > sketch.frequency(2L));
+        checkState(sketch.frequency(3L) == 0);
+    }
+
+    @Test
+    public void testSaturation() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(1L);
+        }
+        checkState(sketch.frequency(1L) == 15, "frequency is %d", sketch.frequency(1L));
+    }
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(16); //counters are halved every 160 increments
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(1L);
+        }
+        checkState(sketch.frequency(1L) == 15);
+
+        //records of other keys eventually cause the old frequencies to decay
+        for (long key = 100L; key < 300L; key++) {
+            sketch.increment(key);
+        }
+        checkState(sketch.frequency(1L) < 15, "frequency is %d", sketch.frequency(1L));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import net.daporkchop.mcworldlib.block.BlockState;
+import net.daporkchop.mcworldlib.util.Identifier;
+import net.daporkchop.mcworldlib.util.palette.state.ArrayStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.HashedStatePalette;
+import net.daporkchop.mcworldlib.util.palette.state.StatePalette;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class HashedStatePaletteTest {
+    private static BlockState state(int i) {
+        return BlockState.of(Identifier.fromString("test:palette"), Collections.singletonMap("i", String.valueOf(i)));
+    }
+
+    @Test
+    public void testInsertLookup() {
+        for (int capacity : new int[]{1, 17, 64, 4096}) {
+            StatePalette palette = new HashedStatePalette(capacity);
+            for (int i = 0; i < capacity; i++) {
+                checkState(palette.stateToId(state(i)) == i, "capacity=%d, i=%d", capacity, i);
+            }
+            checkState(palette.size() == capacity);
+
+            //every state must still be found, with the same ID
+            for (int i = 0; i < capacity; i++) {
+                checkState(palette.stateToId(state(i)) == i, "capacity=%d, i=%d", capacity, i);
+                checkState(palette.idToState(i) == state(i), "capacity=%d, i=%d", capacity, i);
+            }
+
+            //the palette is full
+            checkState(palette.stateToId(state(capacity)) == -1, "capacity=%d", capacity);
+            checkState(palette.size() == capacity);
+            checkState(palette.idToState(capacity) == null);
+        }
+    }
+
+    @Test
+    public void testInitialContents() {
+        List<BlockState> contents = Arrays.asList(state(0), state(1), state(0), state(2));
+        StatePalette palette = new HashedStatePalette(32, contents);
+        checkState(palette.size() == 4);
+        checkState(palette.stateToId(state(0)) == 0, "duplicate states must resolve to the lowest ID");
+        checkState(palette.stateToId(state(1)) == 1);
+        checkState(palette.stateToId(state(2)) == 3);
+        checkState(palette.idToState(2) == state(0));
+        checkState(palette.stateToId(state(3)) == 4);
+    }
+
+    @Test
+    public void testGrow() {
+        //fill a small palette, then move its contents into a larger one, as block storages do when they run out of palette space
+        StatePalette small = StatePalette.create(StatePalette.HASH_THRESHOLD);
+        checkState(small instanceof ArrayStatePalette && !(small instanceof HashedStatePalette));
+        for (int i = 0; i < StatePalette.HASH_THRESHOLD; i++) {
+            checkState(small.stateToId(state(i)) == i);
+        }
+        checkState(small.stateToId(state(StatePalette.HASH_THRESHOLD)) == -1);
+
+        List<BlockState> contents = new ArrayList<>();
+        for (int i = 0; i < small.size(); i++) {
+            contents.add(small.idToState(i));
+        }
+        StatePalette large = StatePalette.create(StatePalette.HASH_THRESHOLD << 1, contents);
+        checkState(large instanceof HashedStatePalette);
+        for (int i = 0; i < StatePalette.HASH_THRESHOLD; i++) {
+            checkState(large.stateToId(state(i)) == i, "IDs must be preserved when growing, i=%d", i);
+        }
+        for (int i = StatePalette.HASH_THRESHOLD; i < StatePalette.HASH_THRESHOLD << 1; i++) {
+            checkState(large.stateToId(state(i)) == i);
+        }
+        checkState(large.stateToId(state(StatePalette.HASH_THRESHOLD << 1)) == -1);
+    }
+}
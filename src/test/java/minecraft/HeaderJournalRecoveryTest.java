@@ -0,0 +1,140 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import net.daporkchop.mcworldlib.format.anvil.region.RawChunk;
+import net.daporkchop.mcworldlib.format.anvil.region.RegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.AsyncRegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.HeaderJournal;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.MappedWindowCache;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.MemoryMappedRegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.OverclockedRegionFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class HeaderJournalRecoveryTest {
+    private static final ByteBufAllocator ALLOC = UnpooledByteBufAllocator.DEFAULT;
+    private static final long SAVED_AT = 1600000000000L;
+    private static final long JOURNALED_AT = 1700000000000L;
+
+    @Test
+    public void testTornRecord() throws IOException {
+        this.test(false);
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException {
+        this.test(true);
+    }
+
+    private void test(boolean corrupt) throws IOException {
+        File file = File.createTempFile("r.0.0", ".mca");
+        File journalFile = HeaderJournal.journalFile(file);
+        file.deleteOnExit();
+        journalFile.deleteOnExit();
+        try {
+            byte[] payload = new byte[5000];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = (byte) (i * 31);
+            }
+            try (RegionFile region = new OverclockedRegionFile(file, ALLOC, false)) {
+                checkState(region.write(3, 5, Unpooled.wrappedBuffer(payload), ID_ZLIB, SAVED_AT, false));
+            }
+
+            int offset;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(getOffsetIndex(3, 5));
+                offset = raf.readInt();
+            }
+
+            //a committed record which moves the chunk from 3,5 to 1,2, as if the region had crashed before its headers were forced.
+            // it's followed by a second record, which is then damaged and must therefore be ignored
+            try (HeaderJournal journal = new HeaderJournal(file)) {
+                journal.append(new int[]{ getOffsetIndex(3, 5), getOffsetIndex(1, 2) }, new int[]{ 0, offset }, new int[]{ 0, (int) (JOURNALED_AT / 1000L) }, 2);
+                journal.append(new int[]{ getOffsetIndex(7, 7) }, new int[]{ offset }, new int[]{ (int) (JOURNALED_AT / 1000L) }, 1);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                if (corrupt) { //flip a bit in the last record's checksum
+                    raf.seek(raf.length() - 1L);
+                    int b = raf.read();
+                    raf.seek(raf.length() - 1L);
+                    raf.write(b ^ 1);
+                } else { //cut the last record off partway through, as if the crash happened while it was being written
+                    raf.setLength(raf.length() - 6L);
+                }
+            }
+            long journalLength = journalFile.length();
+
+            //every read-only backend must replay the journal without modifying it
+            checkRecovered(new OverclockedRegionFile(file, ALLOC, true), payload);
+            checkRecovered(new MemoryMappedRegionFile(file, false), payload);
+            checkRecovered(new MemoryMappedRegionFile(file, false, new MappedWindowCache(1L << 20L, 1 << 16)), payload);
+            checkRecovered(new AsyncRegionFile(file, ALLOC, ForkJoinPool.commonPool()), payload);
+            checkState(journalFile.length() == journalLength, "a read-only region modified the journal");
+
+            //opening the region for writing must apply the journal to the region itself and then discard it
+            new OverclockedRegionFile(file, ALLOC, false).close();
+            checkState(!HeaderJournal.hasPendingEntries(file), "the journal was not discarded");
+            checkRecovered(new OverclockedRegionFile(file, ALLOC, true), payload);
+            checkRecovered(new MemoryMappedRegionFile(file, false), payload);
+        } finally {
+            journalFile.delete();
+            file.delete();
+        }
+    }
+
+    private static void checkRecovered(RegionFile region, byte[] payload) throws IOException {
+        try {
+            checkState(!region.contains(3, 5), "the committed record was not replayed");
+            checkState(!region.contains(7, 7), "the damaged record was replayed");
+            checkState(region.timestamp(1, 2) == JOURNALED_AT);
+
+            RawChunk chunk = region.read(1, 2);
+            try {
+                checkState(chunk.timestamp() == JOURNALED_AT);
+                ByteBuf data = chunk.data();
+                checkState(data.readByte() == ID_ZLIB);
+                byte[] read = new byte[data.readableBytes()];
+                data.readBytes(read);
+                checkState(Arrays.equals(read, payload), "chunk data differs");
+            } finally {
+                chunk.release();
+            }
+        } finally {
+            region.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import net.daporkchop.mcworldlib.format.common.storage.flattened.PaletteIdPacking;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.world.storage.BlockStorage.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class PaletteIdPackingTest {
+    @Test
+    public void testPadded() {
+        for (int bits = 1; bits <= 16; bits++) {
+            int[] ids = randomIds(bits);
+            long[] words = new long[PaletteIdPacking.paddedLength(bits)];
+            PaletteIdPacking.packPadded(ids, bits, words);
+
+            int perWord = Long.SIZE / bits;
+            for (int i = 0; i < NUM_BLOCKS; i++) { //check the layout against a naive implementation
+                checkState(((words[i / perWord] >>> ((i % perWord) * bits)) & ((1L << bits) - 1L)) == ids[i], "bits=%d, i=%d", bits, i);
+            }
+
+            long[] shortWords = new long[words.length];
+            PaletteIdPacking.packPadded(toShorts(ids), bits, shortWords);
+            checkState(Arrays.equals(words, shortWords), "bits=%d", bits);
+
+            int[] intDst = new int[NUM_BLOCKS];
+            PaletteIdPacking.unpackPadded(words, bits, intDst);
+            checkState(Arrays.equals(ids, intDst), "bits=%d", bits);
+
+            short[] shortDst = new short[NUM_BLOCKS];
+            PaletteIdPacking.unpackPadded(words, bits, shortDst);
+            checkState(Arrays.equals(toShorts(ids), shortDst), "bits=%d", bits);
+        }
+    }
+
+    @Test
+    public void testPacked() {
+        for (int bits = 1; bits <= 16; bits++) {
+            int[] ids = randomIds(bits);
+            long[] words = new long[PaletteIdPacking.packedLength(bits)];
+            PaletteIdPacking.packPacked(ids, bits, words);
+
+            for (int i = 0; i < NUM_BLOCKS; i++) { //check the layout against a naive implementation
+                int bit = i * bits;
+                long value = words[bit >>> 6] >>> (bit & 63);
+                if ((bit & 63) + bits > Long.SIZE) {
+                    value |= words[(bit >>> 6) + 1] << (Long.SIZE - (bit & 63));
+                }
+                checkState((value & ((1L << bits) - 1L)) == ids[i], "bits=%d, i=%d", bits, i);
+            }
+
+            long[] shortWords = new long[words.length];
+            PaletteIdPacking.packPacked(toShorts(ids), bits, shortWords);
+            checkState(Arrays.equals(words, shortWords), "bits=%d", bits);
+
+            int[] intDst = new int[NUM_BLOCKS];
+            PaletteIdPacking.unpackPacked(words, bits, intDst);
+            checkState(Arrays.equals(ids, intDst), "bits=%d", bits);
+
+            short[] shortDst = new short[NUM_BLOCKS];
+            PaletteIdPacking.unpackPacked(words, bits, shortDst);
+            checkState(Arrays.equals(toShorts(ids), shortDst), "bits=%d", bits);
+        }
+    }
+
+    private static int[] randomIds(int bits) {
+        int[] ids = new int[NUM_BLOCKS];
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            ids[i] = r.nextInt(1 << bits);
+        }
+        ids[0] = (1 << bits) - 1; //make sure the highest bit is set at least once
+        return ids;
+    }
+
+    private static short[] toShorts(int[] ids) {
+        short[] shorts = new short[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            shorts[i] = (short) ids[i];
+        }
+        return shorts;
+    }
+}
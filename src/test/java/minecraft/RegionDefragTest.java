@@ -0,0 +1,158 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import net.daporkchop.mcworldlib.format.anvil.region.RawChunk;
+import net.daporkchop.mcworldlib.format.anvil.region.RegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.HeaderJournal;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.OverclockedRegionFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class RegionDefragTest {
+    private static final ByteBufAllocator ALLOC = UnpooledByteBufAllocator.DEFAULT;
+    private static final long BASE_TIMESTAMP = 1600000000000L;
+
+    @Test
+    public void testDefrag() throws IOException {
+        this.test(false);
+    }
+
+    @Test
+    public void testWriteMany() throws IOException {
+        this.test(true);
+    }
+
+    private void test(boolean writeMany) throws IOException {
+        File file = File.createTempFile("r.0.0", ".mca");
+        File journalFile = HeaderJournal.journalFile(file);
+        file.deleteOnExit();
+        journalFile.deleteOnExit();
+        try {
+            Random r = new Random(12345L);
+            byte[][] payloads = new byte[1024][];
+            long[] timestamps = new long[1024];
+
+            try (RegionFile region = new OverclockedRegionFile(file, ALLOC, false)) {
+                //write chunks of varying sizes, then delete and grow some of them to leave holes all over the file
+                this.write(region, r, payloads, timestamps, 0, 512, writeMany);
+                for (int i = 0; i < 512; i += 3) {
+                    checkState(region.delete(i & 0x1F, i >> 5));
+                    payloads[i] = null;
+                }
+                this.write(region, r, payloads, timestamps, 256, 640, writeMany);
+                checkContents(region, payloads, timestamps);
+
+                //defrag a few chunks at a time, the region must remain intact after every step
+                for (int steps = 0; region.defrag(7) == 7; steps++) {
+                    checkState(steps < 1024, "defrag never finished");
+                    checkContents(region, payloads, timestamps);
+                }
+                checkContents(region, payloads, timestamps);
+                checkState(region.defrag(7) == 0, "region was not fully defragmented");
+
+                //every chunk should now be packed directly after the headers, with nothing after the last one
+                checkState(file.length() == (long) (HEADER_SECTORS + usedSectors(payloads)) * SECTOR_BYTES, "region was not truncated");
+            }
+
+            checkState(!HeaderJournal.hasPendingEntries(file), "the journal was not discarded");
+            try (RegionFile region = new OverclockedRegionFile(file, ALLOC, true)) {
+                checkContents(region, payloads, timestamps);
+            }
+        } finally {
+            journalFile.delete();
+            file.delete();
+        }
+    }
+
+    private void write(RegionFile region, Random r, byte[][] payloads, long[] timestamps, int from, int to, boolean writeMany) throws IOException {
+        long timestamp = BASE_TIMESTAMP + r.nextInt(1000000) * 1000L;
+        int[] coords = new int[(to - from) << 1];
+        ByteBuf[] data = new ByteBuf[to - from];
+        for (int i = from; i < to; i++) {
+            byte[] payload = new byte[r.nextInt(3 * SECTOR_BYTES)];
+            r.nextBytes(payload);
+            payloads[i] = payload;
+            coords[((i - from) << 1) + 0] = i & 0x1F;
+            coords[((i - from) << 1) + 1] = i >> 5;
+            data[i - from] = Unpooled.wrappedBuffer(payload);
+
+            if (writeMany) {
+                timestamps[i] = timestamp;
+            } else {
+                timestamps[i] = timestamp + i * 1000L;
+                checkState(region.write(i & 0x1F, i >> 5, data[i - from], ID_ZLIB, timestamps[i], true));
+            }
+        }
+
+        if (writeMany) { //all of the chunks are written as a single commit group
+            checkState(region.writeMany(coords, data, ID_ZLIB, timestamp, true) == to - from);
+        }
+    }
+
+    private static int usedSectors(byte[][] payloads) {
+        int sectors = 0;
+        for (byte[] payload : payloads) {
+            if (payload != null) {
+                sectors += getRequiredSectors(Unpooled.wrappedBuffer(payload));
+            }
+        }
+        return sectors;
+    }
+
+    private static void checkContents(RegionFile region, byte[][] payloads, long[] timestamps) throws IOException {
+        for (int i = 0; i < 1024; i++) {
+            int x = i & 0x1F;
+            int z = i >> 5;
+            if (payloads[i] == null) {
+                checkState(!region.contains(x, z), "chunk %d,%d should not exist", x, z);
+                continue;
+            }
+
+            checkState(region.timestamp(x, z) == timestamps[i], "chunk %d,%d has the wrong timestamp", x, z);
+            RawChunk chunk = region.read(x, z);
+            try {
+                checkState(chunk.timestamp() == timestamps[i], "chunk %d,%d has the wrong timestamp", x, z);
+                ByteBuf data = chunk.data();
+                checkState(data.readByte() == ID_ZLIB, "chunk %d,%d has the wrong version", x, z);
+                byte[] read = new byte[data.readableBytes()];
+                data.readBytes(read);
+                checkState(Arrays.equals(read, payloads[i]), "chunk %d,%d has the wrong data", x, z);
+            } finally {
+                chunk.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import net.daporkchop.mcworldlib.format.anvil.region.RegionFile;
+import net.daporkchop.mcworldlib.format.anvil.region.impl.OverclockedRegionFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class RegionModifiedSinceTest {
+    private static final long SAVED_AT = 1600000000500L;
+
+    @Test
+    public void testBoundary() {
+        int seconds = (int) (SAVED_AT / 1000L);
+        checkState(isModifiedSince(seconds, SAVED_AT - 1000L));
+        checkState(isModifiedSince(seconds, SAVED_AT));
+        checkState(isModifiedSince(seconds, seconds * 1000L)); //exactly on the second
+        checkState(isModifiedSince(seconds, seconds * 1000L + 999L)); //saved earlier during the same second
+        checkState(!isModifiedSince(seconds, (seconds + 1) * 1000L));
+        checkState(isModifiedSince(seconds, Long.MIN_VALUE));
+        checkState(isModifiedSince(-1, 0L)); //timestamps are unsigned
+    }
+
+    @Test
+    public void testRegion() throws IOException {
+        File file = File.createTempFile("r.0.0", ".mca");
+        file.deleteOnExit();
+        try (RegionFile region = new OverclockedRegionFile(file, UnpooledByteBufAllocator.DEFAULT, false)) {
+            checkState(region.write(3, 5, Unpooled.wrappedBuffer(new byte[100]), ID_ZLIB, SAVED_AT, false));
+            int index = (5 << 5) | 3;
+
+            //a query for a later time within the same second must still report the chunk
+            checkState((region.modifiedSince(SAVED_AT + 200L)[index >> 6] & (1L << index)) != 0L);
+            checkState((region.modifiedSince(SAVED_AT - 500L)[index >> 6] & (1L << index)) != 0L);
+            checkState((region.modifiedSince(SAVED_AT + 500L)[index >> 6] & (1L << index)) == 0L);
+        } finally {
+            new File(file.getPath() + ".journal").delete();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft;
+
+import net.daporkchop.mcworldlib.format.anvil.region.SectorAllocator;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class SectorAllocatorTest {
+    private static BitSet used(int... runs) {
+        BitSet bitSet = new BitSet();
+        for (int i = 0; i < runs.length; i += 2) {
+            bitSet.set(runs[i], runs[i] + runs[i + 1]);
+        }
+        return bitSet;
+    }
+
+    @Test
+    public void testInit() {
+        SectorAllocator allocator = new SectorAllocator(used(0, 2, 4, 1, 8, 2), SectorAllocator.Policy.BEST_FIT);
+        checkState(allocator.end() == 10);
+        checkState(allocator.freeSectors() == 5);
+        checkState(allocator.freeExtents() == 2);
+        checkState(allocator.largestFreeExtent() == 3);
+    }
+
+    @Test
+    public void testBestFit() {
+        SectorAllocator allocator = new SectorAllocator(used(0, 2, 4, 1, 8, 2), SectorAllocator.Policy.BEST_FIT);
+        checkState(allocator.allocate(2) == 2); //exact fit
+        checkState(allocator.allocate(1) == 5); //smallest remaining extent is 5-7
+        checkState(allocator.allocate(3) == 10); //nothing large enough, append
+        checkState(allocator.end() == 13);
+        checkState(allocator.freeSectors() == 2);
+    }
+
+    @Test
+    public void testAppend() {
+        SectorAllocator allocator = new SectorAllocator(used(0, 2, 4, 1, 8, 2), SectorAllocator.Policy.APPEND);
+        checkState(allocator.allocate(2) == 10);
+        checkState(allocator.allocate(1) == 12);
+        checkState(allocator.freeSectors() == 5);
+    }
+
+    @Test
+    public void testFreeCoalesces() {
+        SectorAllocator allocator = new SectorAllocator(used(0, 2, 4, 1, 8, 2), SectorAllocator.Policy.BEST_FIT);
+        allocator.free(4, 1);
+        checkState(allocator.freeExtents() == 1);
+        checkState(allocator.largestFreeExtent() == 6);
+        checkState(allocator.fragmentation() == 0.0d);
+
+        //freeing the last run should shrink the file rather than creating an extent at the end
+        allocator.free(8, 2);
+        checkState(allocator.end() == 2);
+        checkState(allocator.freeExtents() == 0);
+        checkState(allocator.freeSectors() == 0);
+    }
+
+    @Test
+    public void testReserve() {
+        SectorAllocator allocator = new SectorAllocator(used(0, 2, 8, 2), SectorAllocator.Policy.BEST_FIT);
+        allocator.reserve(3, 2);
+        checkState(allocator.freeExtents() == 2);
+        checkState(allocator.freeSectors() == 4);
+        allocator.reserve(12, 1);
+        checkState(allocator.end() == 13);
+        checkState(allocator.freeSectors() == 6);
+    }
+}
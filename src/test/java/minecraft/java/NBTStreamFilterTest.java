@@ -0,0 +1,324 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2020 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package minecraft.java;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.daporkchop.lib.binary.stream.DataIn;
+import net.daporkchop.lib.nbt.NBTFormat;
+import net.daporkchop.lib.nbt.tag.CompoundTag;
+import net.daporkchop.lib.nbt.tag.ListTag;
+import net.daporkchop.lib.nbt.tag.Tag;
+import net.daporkchop.mcworldlib.format.java.decoder.ChunkNBTFilter;
+import net.daporkchop.mcworldlib.format.java.decoder.DecodeProfile;
+import net.daporkchop.mcworldlib.util.nbt.NBTFilter;
+import net.daporkchop.mcworldlib.util.nbt.NBTStreamReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.lib.nbt.tag.Tag.*;
+import static net.daporkchop.mcworldlib.format.anvil.region.RegionConstants.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class NBTStreamFilterTest {
+    public static final String[] VERSIONS = {
+            "1_12_2",
+            "1_13_2",
+            "1_19_4"
+    };
+
+    public static final DecodeProfile[] PROFILES = {
+            DecodeProfile.ALL,
+            DecodeProfile.BLOCKS_ONLY,
+            DecodeProfile.of(DecodeProfile.Component.LIGHT, DecodeProfile.Component.BIOMES),
+            DecodeProfile.of()
+    };
+
+    //names which need more than one byte per character in modified UTF-8
+    public static final String[] NON_ASCII_NAMES = {
+            "Sektionsüberschrift",
+            "日本語",
+            "a\0b",
+            "😀",
+            "\0"
+    };
+
+    private static final Map<String, List<byte[]>> CHUNKS = new HashMap<>();
+
+    @BeforeClass
+    public static void loadChunks() throws IOException {
+        for (String version : VERSIONS) {
+            List<byte[]> chunks = new ArrayList<>();
+            try (ZipInputStream in = new ZipInputStream(NBTStreamFilterTest.class.getResourceAsStream(version + ".zip"))) {
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    if (entry.getName().startsWith(version + "/region/") && entry.getName().endsWith(".mca")) {
+                        readRegion(readFully(in), chunks);
+                    }
+                    in.closeEntry();
+                }
+            }
+            checkState(!chunks.isEmpty(), "no chunks found in %s", version);
+            CHUNKS.put(version, chunks);
+        }
+    }
+
+    private static void readRegion(byte[] region, List<byte[]> chunks) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(region);
+        for (int i = 0; i < SECTOR_BYTES; i += 4) {
+            int offset = buf.getInt(i);
+            if (offset != 0) {
+                int pos = (offset >>> 8) * SECTOR_BYTES;
+                int length = buf.getInt(pos);
+                InputStream in = new ByteArrayInputStream(region, pos + 5, length - 1);
+                chunks.add(readFully(region[pos + 4] == ID_GZIP ? new GZIPInputStream(in) : new InflaterInputStream(in)));
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int i; (i = in.read(buf)) > 0; ) {
+            out.write(buf, 0, i);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testKeepAll() throws IOException {
+        for (String version : VERSIONS) {
+            for (byte[] chunk : CHUNKS.get(version)) {
+                ByteBuf buf = Unpooled.wrappedBuffer(chunk.clone());
+                checkState(new NBTStreamReader(buf).filterRoot(NBTFilter.KEEP_ALL) == chunk.length);
+                checkState(Arrays.equals(buf.array(), chunk), "keeping everything modified the data");
+            }
+        }
+    }
+
+    @Test
+    public void testChunkFilter() throws IOException {
+        for (String version : VERSIONS) {
+            for (DecodeProfile profile : PROFILES) {
+                NBTFilter filter = new ChunkNBTFilter(profile);
+                for (byte[] chunk : CHUNKS.get(version)) {
+                    checkFilter(chunk, filter);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNestedSkips() throws IOException {
+        //descends into every compound tag and list tag, and drops roughly half of all entries at every level of nesting
+        NBTFilter filter = new NBTFilter() {
+            @Override
+            public boolean keep(NBTStreamReader reader) {
+                return (name(reader).hashCode() & 1) == 0;
+            }
+
+            @Override
+            public NBTFilter child(NBTStreamReader reader) {
+                return this;
+            }
+        };
+
+        for (String version : VERSIONS) {
+            for (byte[] chunk : CHUNKS.get(version)) {
+                checkFilter(chunk, filter);
+            }
+        }
+    }
+
+    @Test
+    public void testModifiedUTF8() throws IOException {
+        for (String name : NON_ASCII_NAMES) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new DataOutputStream(baos).writeUTF(name);
+            byte[] encoded = baos.toByteArray();
+            checkState(encoded.length - 2 > name.length(), "\"%s\" doesn't need more than one byte per character", name);
+
+            String decoded = NBTStreamReader.decodeUTF(Unpooled.wrappedBuffer(encoded), 2, encoded.length - 2);
+            checkState(name.equals(decoded), "\"%s\" was decoded as \"%s\"", name, decoded);
+
+            NBTStreamReader reader = readerAt(name, TAG_BYTE);
+            checkState(reader.nameEquals(name), "nameEquals(\"%s\") failed", name);
+            checkState(!reader.nameEquals(name + 'x'));
+            checkState(!reader.nameEquals(name.substring(1)));
+        }
+
+        //a lone continuation byte, a truncated sequence and a standard UTF-8 four-byte sequence are all invalid in modified UTF-8
+        for (byte[] malformed : new byte[][]{ { (byte) 0x80 }, { (byte) 0xE6, (byte) 0x97 }, { (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80 } }) {
+            try {
+                NBTStreamReader.decodeUTF(Unpooled.wrappedBuffer(malformed), 0, malformed.length);
+                throw new IllegalStateException("decoded malformed input " + Arrays.toString(malformed));
+            } catch (UTFDataFormatException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testNonAsciiKeys() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeByte(TAG_COMPOUND);
+        out.writeUTF("");
+        for (String name : NON_ASCII_NAMES) {
+            out.writeByte(TAG_STRING);
+            out.writeUTF(name);
+            out.writeUTF(name);
+
+            out.writeByte(TAG_COMPOUND); //a nested compound containing every name again
+            out.writeUTF(name + "/compound");
+            for (String childName : NON_ASCII_NAMES) {
+                out.writeByte(TAG_INT);
+                out.writeUTF(childName);
+                out.writeInt(childName.hashCode());
+            }
+            out.writeByte(TAG_END);
+
+            out.writeByte(TAG_LIST); //a list of compounds, each of which contains a nested list
+            out.writeUTF(name + "/list");
+            out.writeByte(TAG_COMPOUND);
+            out.writeInt(2);
+            for (int i = 0; i < 2; i++) {
+                out.writeByte(TAG_LIST);
+                out.writeUTF(name);
+                out.writeByte(TAG_STRING);
+                out.writeInt(1);
+                out.writeUTF(name);
+                out.writeByte(TAG_END);
+            }
+        }
+        out.writeByte(TAG_END);
+        byte[] data = baos.toByteArray();
+
+        for (String rejected : NON_ASCII_NAMES) {
+            //drop the given name at every level of nesting, using the fast comparison
+            checkFilter(data, new NBTFilter() {
+                @Override
+                public boolean keep(NBTStreamReader reader) {
+                    return !reader.nameEquals(rejected) && !reader.nameEquals(rejected + "/list");
+                }
+
+                @Override
+                public NBTFilter child(NBTStreamReader reader) {
+                    return this;
+                }
+            });
+        }
+    }
+
+    /**
+     * Filters the given NBT data in place, and checks that the result is well-formed and identical to filtering the parsed tag tree.
+     */
+    private static void checkFilter(byte[] data, NBTFilter filter) throws IOException {
+        CompoundTag expected = NBTFormat.BIG_ENDIAN.readCompound(DataIn.wrap(Unpooled.wrappedBuffer(data), false));
+        filterTree(expected, filter);
+
+        ByteBuf buf = Unpooled.wrappedBuffer(data.clone());
+        int end = new NBTStreamReader(buf).filterRoot(filter);
+        checkState(end <= data.length);
+        buf.setIndex(0, end);
+        CompoundTag actual = NBTFormat.BIG_ENDIAN.readCompound(DataIn.wrap(buf, false));
+        checkState(!buf.isReadable(), "%d trailing bytes after filtered data", buf.readableBytes());
+        checkState(expected.equals(actual), "filtered data differs from filtered tree");
+    }
+
+    /**
+     * Applies an {@link NBTFilter} to a parsed tag tree, removing everything it rejects.
+     */
+    private static void filterTree(CompoundTag tag, NBTFilter filter) throws IOException {
+        List<String> rejected = new ArrayList<>();
+        for (Iterator<Map.Entry<String, Tag>> itr = tag.iterator(); itr.hasNext(); ) {
+            Map.Entry<String, Tag> entry = itr.next();
+            Tag<?> value = entry.getValue();
+            NBTStreamReader reader = readerAt(entry.getKey(), value.id());
+            if (!filter.keep(reader)) {
+                rejected.add(entry.getKey());
+                continue;
+            }
+
+            NBTFilter child = value instanceof CompoundTag || value instanceof ListTag ? filter.child(reader) : NBTFilter.KEEP_ALL;
+            if (child == NBTFilter.KEEP_ALL) {
+                continue;
+            } else if (value instanceof CompoundTag) {
+                filterTree((CompoundTag) value, child);
+            } else {
+                for (Object element : ((ListTag<?>) value).list()) {
+                    if (element instanceof CompoundTag) {
+                        filterTree((CompoundTag) element, child);
+                    }
+                }
+            }
+        }
+        for (String name : rejected) {
+            tag.remove(name);
+        }
+    }
+
+    /**
+     * Gets an {@link NBTStreamReader} positioned at an entry with the given name and type, for passing to an {@link NBTFilter}.
+     */
+    private static NBTStreamReader readerAt(String name, int id) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeByte(TAG_COMPOUND);
+        out.writeUTF("");
+        out.writeByte(id);
+        out.writeUTF(name);
+
+        NBTStreamReader reader = new NBTStreamReader(Unpooled.wrappedBuffer(baos.toByteArray()));
+        reader.readRoot();
+        reader.next();
+        return reader;
+    }
+
+    private static String name(NBTStreamReader reader) {
+        try {
+            return reader.name();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}